@@ -0,0 +1,92 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares copying a response body with the read-only views on it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderAndBodyBenchmark {
+
+    @Param({ "256", "16384", "1048576" })
+    public int bodySize;
+
+    private byte[] body;
+    private Map<String, Object> headers;
+    private HeaderAndBody response;
+    private byte[] readBuffer;
+
+    @Setup
+    public void setUp() {
+        body = new byte[bodySize];
+        headers = new HashMap<String, Object>();
+        headers.put("Content-Type", "application/json");
+        response = HeaderAndBody.wrap(body, headers);
+        readBuffer = new byte[8192];
+    }
+
+    @Benchmark
+    public HeaderAndBody copyingConstructor() {
+        return new HeaderAndBody(body, headers);
+    }
+
+    @Benchmark
+    public HeaderAndBody wrap() {
+        return HeaderAndBody.wrap(body, headers);
+    }
+
+    @Benchmark
+    public byte[] getBody() {
+        return response.getBody();
+    }
+
+    @Benchmark
+    public int readBodyAsStream() throws IOException {
+        InputStream in = response.getBodyAsStream();
+        int total = 0;
+        int read;
+        while ((read = in.read(readBuffer)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+}
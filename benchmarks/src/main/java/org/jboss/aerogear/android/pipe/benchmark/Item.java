@@ -0,0 +1,86 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The payload of the benchmarks, shaped like a typical record of a pipe.
+ */
+public class Item {
+
+    private Long id;
+    private String name;
+    private String description;
+    private double price;
+    private List<String> tags;
+
+    public Item() {
+    }
+
+    public Item(long id) {
+        this.id = id;
+        this.name = "item " + id;
+        this.description = "A description of item " + id + " which is long enough to be realistic.";
+        this.price = id * 1.25;
+        this.tags = new ArrayList<String>();
+        this.tags.add("tag" + (id % 7));
+        this.tags.add("tag" + (id % 13));
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public void setPrice(double price) {
+        this.price = price;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<String> tags) {
+        this.tags = tags;
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.android.pipe.rest.gson.GsonRequestBuilder;
+import org.jboss.aerogear.android.pipe.rest.multipart.MultipartRequestBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serializes request bodies as JSON and as multipart forms with an
+ * attachment of several sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBuilderBenchmark {
+
+    @Param({ "1024", "65536", "1048576" })
+    public int attachmentSize;
+
+    private GsonRequestBuilder<Item> jsonBuilder;
+    private MultipartRequestBuilder<Upload> multipartBuilder;
+    private Item item;
+    private Upload upload;
+
+    @Setup
+    public void setUp() {
+        jsonBuilder = new GsonRequestBuilder<Item>();
+        multipartBuilder = new MultipartRequestBuilder<Upload>();
+        item = new Item(42);
+        upload = new Upload("photo", new byte[attachmentSize]);
+    }
+
+    @Benchmark
+    public byte[] gsonGetBody() {
+        return jsonBuilder.getBody(item);
+    }
+
+    @Benchmark
+    public byte[] multipartGetBody() {
+        return multipartBuilder.getBody(upload);
+    }
+
+    public static class Upload {
+
+        private String name;
+        private byte[] attachment;
+
+        public Upload(String name, byte[] attachment) {
+            this.name = name;
+            this.attachment = attachment;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public byte[] getAttachment() {
+            return attachment;
+        }
+
+        public void setAttachment(byte[] attachment) {
+            this.attachment = attachment;
+        }
+
+    }
+
+}
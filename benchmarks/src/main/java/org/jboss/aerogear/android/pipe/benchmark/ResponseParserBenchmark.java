@@ -0,0 +1,91 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.benchmark;
+
+import com.google.gson.Gson;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
+import org.jboss.aerogear.android.pipe.rest.gson.GsonResponseParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses responses of several sizes whose records are nested at several
+ * depths, both with the streaming and the tree parser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParserBenchmark {
+
+    @Param({ "1", "100", "10000" })
+    public int items;
+
+    @Param({ "", "result", "result.page.data" })
+    public String dataRoot;
+
+    @Param({ "true", "false" })
+    public boolean streaming;
+
+    private GsonResponseParser<Item> parser;
+    private HeaderAndBody response;
+
+    @Setup
+    public void setUp() {
+        List<Item> records = new ArrayList<Item>(items);
+        for (int i = 0; i < items; i++) {
+            records.add(new Item(i));
+        }
+
+        String json = new Gson().toJson(records);
+        if (!dataRoot.isEmpty()) {
+            String[] path = dataRoot.split("\\.");
+            for (int i = path.length - 1; i >= 0; i--) {
+                json = "{\"meta\":{\"count\":" + items + "},\"" + path[i] + "\":" + json + "}";
+            }
+        }
+
+        response = new HeaderAndBody(json.getBytes(Charset.forName("UTF-8")), new HashMap<String, Object>());
+        parser = new GsonResponseParser<Item>();
+        parser.getMarshallingConfig().setDataRoot(dataRoot);
+        parser.setStreaming(streaming);
+    }
+
+    @Benchmark
+    public List<Item> handleResponse() {
+        return parser.handleResponse(response, Item.class);
+    }
+
+}
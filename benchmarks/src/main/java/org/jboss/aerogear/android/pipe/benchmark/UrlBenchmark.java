@@ -0,0 +1,77 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.benchmark;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.android.pipe.paging.WebLink;
+import org.jboss.aerogear.android.pipe.util.ParseException;
+import org.jboss.aerogear.android.pipe.util.UrlUtils;
+import org.jboss.aerogear.android.pipe.util.WebLinkParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses paging links and builds the urls of requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlBenchmark {
+
+    private static final String LINK_HEADER = "<http://example.com/cars?offset=0&limit=10>; rel=\"first\", "
+            + "<http://example.com/cars?offset=10&limit=10>; rel=\"previous\", "
+            + "<http://example.com/cars?offset=30&limit=10>; rel=\"next\", "
+            + "<http://example.com/cars?offset=90&limit=10>; rel=\"last\"";
+
+    private URL baseURL;
+
+    @Setup
+    public void setUp() throws MalformedURLException {
+        baseURL = new URL("http://example.com/api/v1/cars");
+    }
+
+    @Benchmark
+    public List<WebLink> parseWebLinks() throws ParseException {
+        return WebLinkParser.parse(LINK_HEADER);
+    }
+
+    @Benchmark
+    public URL appendToBaseURL() {
+        return UrlUtils.appendToBaseURL(baseURL, "42");
+    }
+
+    @Benchmark
+    public URL appendQueryToBaseURL() {
+        return UrlUtils.appendQueryToBaseURL(baseURL, "?offset=10&limit=10&color=red");
+    }
+
+}
@@ -0,0 +1,55 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.webkit;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Knows the handful of types the benchmarks upload.
+ */
+public final class MimeTypeMap {
+
+    private static final MimeTypeMap SINGLETON = new MimeTypeMap();
+
+    private final Map<String, String> types = new HashMap<String, String>();
+
+    private MimeTypeMap() {
+        types.put("bin", "application/octet-stream");
+        types.put("jpg", "image/jpeg");
+        types.put("png", "image/png");
+        types.put("txt", "text/plain");
+    }
+
+    public static MimeTypeMap getSingleton() {
+        return SINGLETON;
+    }
+
+    public static String getFileExtensionFromUrl(String url) {
+        int dot = url.lastIndexOf('.');
+        if (dot < 0 || dot < url.lastIndexOf('/')) {
+            return "";
+        }
+        return url.substring(dot + 1).toLowerCase(Locale.US);
+    }
+
+    public String getMimeTypeFromExtension(String extension) {
+        return types.get(extension);
+    }
+
+}
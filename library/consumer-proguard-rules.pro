@@ -0,0 +1,11 @@
+# Rules applied to the apps which depend on this library.
+
+# GeneratedAdapters finds the code generated by aerogear-android-pipe-processor
+# by the name of the model class, with Class.forName.
+-keepnames @org.jboss.aerogear.android.pipe.rest.gson.GenerateTypeAdapter class *
+-keep class **_GsonTypeAdapter {
+    public <init>(com.google.gson.Gson);
+}
+-keep class **_GsonTypeAdapter$RecordId {
+    public <init>();
+}
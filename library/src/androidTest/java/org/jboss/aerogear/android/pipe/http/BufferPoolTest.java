@@ -0,0 +1,69 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.http;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(AndroidJUnit4.class)
+public class BufferPoolTest {
+
+    @Test
+    public void reusesReleasedChunks() {
+        BufferPool pool = new BufferPool(16, 2);
+
+        byte[] chunk = pool.acquire();
+        pool.release(chunk);
+
+        assertSame(chunk, pool.acquire());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+        assertEquals(16, pool.getAllocatedBytes());
+    }
+
+    @Test
+    public void keepsAtMostMaxPooledChunks() {
+        BufferPool pool = new BufferPool(16, 2);
+
+        byte[] first = pool.acquire();
+        byte[] second = pool.acquire();
+        byte[] third = pool.acquire();
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        assertEquals(2, pool.getPooledCount());
+    }
+
+    @Test
+    public void ignoresForeignArrays() {
+        BufferPool pool = new BufferPool(16, 2);
+
+        pool.release(new byte[8]);
+        pool.release(pool.allocate(32));
+
+        assertEquals(0, pool.getPooledCount());
+        assertEquals(1, pool.getAllocationCount());
+        assertEquals(32, pool.getAllocatedBytes());
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.http;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class DiskResponseCacheTest {
+
+    private static final String KEY = "http://server.com/cars?limit=10";
+
+    @Test
+    public void responsesSurviveReopeningTheCache() throws Exception {
+        File directory = createDirectory();
+        Map<String, Object> headers = new HashMap<String, Object>();
+        headers.put("Cache-Control", "max-age=60");
+        headers.put(null, "HTTP/1.1 200 OK");
+        new DiskResponseCache(directory, 1024).put(KEY, new HeaderAndBody("[1,2]".getBytes("UTF-8"), headers), 0);
+
+        DiskResponseCache reopened = new DiskResponseCache(directory, 1024);
+        assertTrue(reopened.isFresh(KEY));
+        HeaderAndBody cached = reopened.get(KEY);
+        assertArrayEquals("[1,2]".getBytes("UTF-8"), cached.getBody());
+        assertEquals("max-age=60", cached.getHeader("Cache-Control"));
+        assertEquals(1, reopened.getFreshHitCount());
+        assertNull(reopened.get("http://server.com/cars"));
+
+        for (File file : directory.listFiles()) {
+            String content = new String(readAll(file), "ISO-8859-1");
+            assertFalse(file.getName(), content.contains("server.com"));
+            assertFalse(file.getName(), file.getName().contains("server.com"));
+        }
+    }
+
+    @Test
+    public void freshnessFollowsTheHeadersOfTheResponse() {
+        long now = 1000000;
+        Map<String, Object> headers = new HashMap<String, Object>();
+        assertEquals(now + 500, DiskResponseCache.getExpiresAt(headers, now, 500));
+
+        headers.put("Expires", "Thu, 01 Jan 1970 00:10:00 GMT");
+        headers.put("Date", "Thu, 01 Jan 1970 00:09:00 GMT");
+        assertEquals(now + 60000, DiskResponseCache.getExpiresAt(headers, now, 500));
+
+        headers.put("cache-control", "public, max-age=30");
+        assertEquals(now + 30000, DiskResponseCache.getExpiresAt(headers, now, 500));
+
+        headers.put("cache-control", "no-cache");
+        assertEquals(now, DiskResponseCache.getExpiresAt(headers, now, 500));
+
+        headers.put("cache-control", "max-age=60, no-cache");
+        assertEquals(now, DiskResponseCache.getExpiresAt(headers, now, 500));
+        assertTrue(DiskResponseCache.isStorable(headers));
+
+        headers.put("cache-control", "no-store");
+        assertFalse(DiskResponseCache.isStorable(headers));
+    }
+
+    @Test
+    public void leastRecentlyUsedResponsesAreEvicted() throws Exception {
+        DiskResponseCache cache = new DiskResponseCache(createDirectory(), 300);
+        byte[] body = new byte[100];
+        cache.put("a", new HeaderAndBody(body, new HashMap<String, Object>()), 60000);
+        cache.put("b", new HeaderAndBody(body, new HashMap<String, Object>()), 60000);
+        cache.get("a");
+        cache.put("c", new HeaderAndBody(body, new HashMap<String, Object>()), 60000);
+
+        assertTrue(cache.getSize() <= 300);
+        assertTrue(cache.isFresh("a"));
+        assertFalse(cache.isFresh("b"));
+        assertTrue(cache.isFresh("c"));
+        assertEquals(2, cache.getDirectory().list().length - 1);
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            in.readFully(content);
+        } finally {
+            in.close();
+        }
+        return content;
+    }
+
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("responses", "");
+        directory.delete();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.http;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class HttpConnectionPoolTest {
+
+    @Test
+    public void testReleasedConnectionIsKeptOpen() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool();
+        URL url = new URL("http://server.com/context/");
+
+        StubConnection connection = new StubConnection(url, new byte[] { 1, 2, 3 });
+        pool.release(connection);
+
+        assertFalse(connection.disconnected);
+        assertEquals(1, pool.getReleaseCount());
+        assertEquals(0, pool.getDiscardCount());
+    }
+
+    @Test
+    public void testUndrainableConnectionIsDisconnected() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool();
+        URL url = new URL("http://server.com/context/");
+
+        StubConnection connection = new StubConnection(url, new byte[128 * 1024]);
+        pool.release(connection);
+
+        assertTrue(connection.disconnected);
+        assertEquals(1, pool.getDiscardCount());
+        assertEquals(0, pool.getReleaseCount());
+    }
+
+    @Test
+    public void testPlatformKeepAliveIsOnlyConfiguredOnRequest() {
+        String[] names = { "http.keepAlive", "http.maxConnections", "http.keepAliveDuration" };
+        String[] values = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = System.getProperty(names[i]);
+        }
+        try {
+            HttpConnectionPool.getDefault();
+            assertEquals(values[1], System.getProperty("http.maxConnections"));
+
+            HttpConnectionPool.configurePlatformKeepAlive(3, 1000);
+            assertEquals("3", System.getProperty("http.maxConnections"));
+            assertEquals("1000", System.getProperty("http.keepAliveDuration"));
+        } finally {
+            for (int i = 0; i < names.length; i++) {
+                if (values[i] == null) {
+                    System.clearProperty(names[i]);
+                } else {
+                    System.setProperty(names[i], values[i]);
+                }
+            }
+        }
+    }
+
+    private static class StubConnection extends HttpURLConnection {
+
+        private final InputStream body;
+        private boolean disconnected = false;
+
+        StubConnection(URL url, byte[] body) {
+            super(url);
+            this.body = new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return body;
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected = true;
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public void connect() throws IOException {
+        }
+    }
+
+}
@@ -17,10 +17,15 @@
 package org.jboss.aerogear.android.pipe.http;
 
 import android.support.test.runner.AndroidJUnit4;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.util.HashMap;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
 import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
 import org.jboss.aerogear.android.pipe.http.HttpException;
 import org.junit.Test;
@@ -58,4 +63,40 @@ public class HttpHelperTest {
         assertEquals(SAMPLE_MESSAGE, headerAndBody.getHeader(SAMPLE_HEADER));
     }
 
+    @Test
+    public void headerAndBodyViewsShareTheBody() throws Exception {
+        byte[] data = SIMPLE_DATA.clone();
+        HeaderAndBody headerAndBody = HeaderAndBody.wrap(data, new HashMap<String, Object>());
+
+        assertEquals(SIMPLE_DATA.length, headerAndBody.getBodyLength());
+        data[0] = 42;
+        assertEquals(42, headerAndBody.getBodyAsByteBuffer().get(0));
+
+        InputStream stream = headerAndBody.getBodyAsStream();
+        byte[] streamed = new byte[SIMPLE_DATA.length];
+        assertEquals(SIMPLE_DATA.length, stream.read(streamed));
+        assertEquals(-1, stream.read());
+        assertEquals(42, streamed[0]);
+        for (int i = 1; i < SIMPLE_DATA.length; i++) {
+            assertEquals(SIMPLE_DATA[i], streamed[i]);
+        }
+
+        byte[] copy = headerAndBody.getBody();
+        assertNotSame(data, copy);
+        assertEquals(42, copy[0]);
+    }
+
+    @Test
+    public void headerAndBodyViewsAreReadOnly() {
+        HeaderAndBody headerAndBody = new HeaderAndBody(SIMPLE_DATA, new HashMap<String, Object>());
+        ByteBuffer view = headerAndBody.getBodyAsByteBuffer();
+        try {
+            view.put(0, (byte) 1);
+        } catch (ReadOnlyBufferException expected) {
+            assertEquals(SIMPLE_DATA[0], headerAndBody.getBody()[0]);
+            return;
+        }
+        fail("Expected ReadOnlyBufferException");
+    }
+
 }
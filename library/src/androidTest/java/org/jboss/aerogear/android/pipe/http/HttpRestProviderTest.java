@@ -35,16 +35,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.jboss.aerogear.android.pipe.util.UnitTestUtils.setPrivateField;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(AndroidJUnit4.class)
@@ -225,6 +229,89 @@ public class HttpRestProviderTest {
         assertEquals(id, providerProvider.id);
     }
 
+    @Test
+    public void testGetDecodesGzip() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(RESPONSE_DATA);
+        gzip.close();
+
+        HttpURLConnection connection = mock(HttpURLConnection.class);
+        HttpRestProvider provider = new HttpRestProvider(SIMPLE_URL);
+        provider.setAcceptCompressedResponses(true);
+        setPrivateField(provider, "connectionPreparer",
+                new HttpUrlConnectionProvider(connection));
+
+        doReturn(200).when(connection).getResponseCode();
+        doReturn(-1).when(connection).getContentLength();
+        doReturn("gzip").when(connection).getContentEncoding();
+        when(connection.getInputStream()).thenReturn(
+                new ByteArrayInputStream(compressed.toByteArray()));
+        when(connection.getHeaderFields()).thenReturn(RESPONSE_HEADERS);
+
+        HeaderAndBody result = provider.get();
+
+        verify(connection).setRequestProperty("Accept-Encoding", "gzip, deflate");
+        assertEquals(RESPONSE_DATA.length, result.getBodyLength());
+        for (int i = 0; i < RESPONSE_DATA.length; i++) {
+            assertEquals(RESPONSE_DATA[i], result.getBody()[i]);
+        }
+        CompressionStatistics statistics = provider.getCompressionStatistics();
+        assertEquals(1, statistics.getCompressedResponseCount());
+        assertEquals(compressed.size(), statistics.getResponseBytesReceived());
+        assertEquals(RESPONSE_DATA.length, statistics.getResponseBytesDecoded());
+    }
+
+    @Test
+    public void testHugeContentLengthIsNotPresized() throws Exception {
+        HttpURLConnection connection = mock(HttpURLConnection.class);
+        BufferPool bufferPool = new BufferPool(BufferPool.DEFAULT_CHUNK_SIZE, 2);
+        HttpRestProvider provider = new HttpRestProvider(SIMPLE_URL, 60000, HttpConnectionPool.getDefault(), bufferPool);
+        setPrivateField(provider, "connectionPreparer",
+                new HttpUrlConnectionProvider(connection));
+
+        doReturn(200).when(connection).getResponseCode();
+        doReturn(Integer.MAX_VALUE).when(connection).getContentLength();
+        when(connection.getInputStream()).thenReturn(
+                new ByteArrayInputStream(RESPONSE_DATA));
+        when(connection.getHeaderFields()).thenReturn(RESPONSE_HEADERS);
+
+        HeaderAndBody result = provider.get();
+
+        assertEquals(RESPONSE_DATA.length, result.getBodyLength());
+        assertTrue(bufferPool.getAllocatedBytes() < HttpRestProvider.MAX_PRESIZED_BODY_BYTES);
+    }
+
+    @Test
+    public void testPostCompressesLargeBodies() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        HttpURLConnection connection = mock(HttpURLConnection.class);
+        HttpRestProvider provider = new HttpRestProvider(SIMPLE_URL);
+        provider.setRequestCompressionThreshold(REQUEST_DATA.length());
+        setPrivateField(provider, "connectionPreparer",
+                new HttpUrlConnectionProvider(connection));
+
+        doReturn(200).when(connection).getResponseCode();
+        when(connection.getInputStream()).thenReturn(
+                new ByteArrayInputStream(RESPONSE_DATA));
+        when(connection.getOutputStream()).thenReturn(outputStream);
+        when(connection.getHeaderFields()).thenReturn(RESPONSE_HEADERS);
+
+        provider.post(REQUEST_DATA);
+
+        verify(connection).setRequestProperty("Content-Encoding", "gzip");
+        GZIPInputStream sent = new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+        byte[] decoded = new byte[REQUEST_DATA.length()];
+        int total = 0;
+        int read;
+        while (total < decoded.length && (read = sent.read(decoded, total, decoded.length - total)) != -1) {
+            total += read;
+        }
+        assertEquals(REQUEST_DATA, new String(decoded, 0, total));
+        assertEquals(1, provider.getCompressionStatistics().getCompressedRequestCount());
+        assertEquals(outputStream.size(), provider.getCompressionStatistics().getRequestBytesSent());
+    }
+
     static class HttpUrlConnectionProvider
             implements
             Provider<HttpURLConnection> {
@@ -0,0 +1,110 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.http;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(AndroidJUnit4.class)
+public class RevalidationCacheTest {
+
+    private static final String KEY = "http://localhost/data";
+    private static final byte[] BODY = "[{\"id\":1}]".getBytes();
+
+    @Test
+    public void returnsCachedResponseOnNotModified() throws Exception {
+        RevalidationCache cache = new RevalidationCache(1024);
+        ConditionalProvider first = new ConditionalProvider("\"v1\"");
+        cache.get(KEY, first);
+        assertNull(first.ifNoneMatch);
+
+        ConditionalProvider second = new ConditionalProvider("\"v1\"");
+        HeaderAndBody response = cache.get(KEY, second);
+
+        assertEquals("\"v1\"", second.ifNoneMatch);
+        assertEquals(BODY.length, response.getBodyLength());
+        assertEquals(new String(BODY), new String(response.getBody()));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void replacesChangedResponse() throws Exception {
+        RevalidationCache cache = new RevalidationCache(1024);
+        cache.get(KEY, new ConditionalProvider("\"v1\""));
+        cache.get(KEY, new ConditionalProvider("\"v2\""));
+
+        ConditionalProvider third = new ConditionalProvider("\"v2\"");
+        cache.get(KEY, third);
+
+        assertEquals("\"v2\"", third.ifNoneMatch);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void evictsWhenFull() throws Exception {
+        RevalidationCache cache = new RevalidationCache(BODY.length);
+        cache.get(KEY, new ConditionalProvider("\"v1\""));
+        cache.get(KEY + "/other", new ConditionalProvider("\"v1\""));
+
+        ConditionalProvider provider = new ConditionalProvider("\"v1\"");
+        cache.get(KEY, provider);
+
+        assertNull(provider.ifNoneMatch);
+        assertEquals(BODY.length, cache.getSize());
+    }
+
+    private static class ConditionalProvider extends HttpStubProvider {
+
+        private final String etag;
+        private String ifNoneMatch;
+
+        ConditionalProvider(String etag) throws Exception {
+            super(new URL(KEY));
+            this.etag = etag;
+        }
+
+        @Override
+        public void setDefaultHeader(String headerName, String headerValue) {
+            if ("If-None-Match".equals(headerName)) {
+                ifNoneMatch = headerValue;
+            }
+        }
+
+        @Override
+        public HeaderAndBody get() {
+            if (etag.equals(ifNoneMatch)) {
+                throw new HttpException(new byte[0], HttpURLConnection.HTTP_NOT_MODIFIED);
+            }
+            Map<String, Object> headers = new HashMap<String, Object>();
+            headers.put("ETag", etag);
+            return new HeaderAndBody(BODY, headers);
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.http;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class TimeoutsTest {
+
+    @Test
+    public void timeoutsNeverExceedTheRemainingTime() {
+        assertEquals(5000, Timeouts.bound(5000, Long.MAX_VALUE));
+        assertEquals(0, Timeouts.bound(0, Long.MAX_VALUE));
+        assertEquals(200, Timeouts.bound(5000, 200));
+        assertEquals(200, Timeouts.bound(0, 200));
+        assertEquals(1, Timeouts.bound(5000, 0));
+    }
+
+    @Test
+    public void timeoutsAreEqualByValue() {
+        assertEquals(new Timeouts(1000, 2000, 3000), new Timeouts(1000, 2000, 3000));
+        assertEquals(new Timeouts(1000, 2000, 3000).hashCode(), new Timeouts(1000, 2000, 3000).hashCode());
+        assertFalse(new Timeouts(1000, 2000, 3000).equals(new Timeouts(1000, 2000, 0)));
+    }
+
+    @Test
+    public void negativeTimeoutsAreRejected() {
+        try {
+            new Timeouts(-1, 0, 0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void deadlineDisconnectsAttachedConnections() throws Exception {
+        RequestCancellation operation = new RequestCancellation();
+        assertTrue(operation.setTimeouts(new Timeouts(0, 0, 50)));
+        assertFalse(operation.setTimeouts(new Timeouts(0, 0, 10000)));
+        FakeConnection connection = new FakeConnection();
+        operation.attach(connection);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!connection.disconnected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(connection.disconnected);
+        assertTrue(operation.isExpired());
+        assertFalse(operation.isCancelled());
+        assertEquals(0, operation.getRemainingMillis());
+        try {
+            operation.attach(new FakeConnection());
+            fail("Expected DeadlineExceededException");
+        } catch (DeadlineExceededException expected) {
+        }
+    }
+
+    @Test
+    public void finishedOperationIsNotExpiredEarly() throws Exception {
+        RequestCancellation operation = new RequestCancellation();
+        operation.setTimeouts(new Timeouts(0, 0, 10000));
+        FakeConnection connection = new FakeConnection();
+        operation.attach(connection);
+        operation.detach(connection);
+        operation.finish();
+
+        assertFalse(operation.isExpired());
+        assertFalse(connection.disconnected);
+        assertTrue(operation.getRemainingMillis() > 0);
+    }
+
+    private static final class FakeConnection extends HttpURLConnection {
+
+        private volatile boolean disconnected = false;
+
+        FakeConnection() throws IOException {
+            super(new URL("http://server.com/"));
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected = true;
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+    }
+
+}
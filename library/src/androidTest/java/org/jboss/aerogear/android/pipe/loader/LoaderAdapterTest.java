@@ -47,6 +47,9 @@ import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
 import org.jboss.aerogear.android.pipe.http.HttpProvider;
 import org.jboss.aerogear.android.pipe.http.HttpProviderFactory;
 import org.jboss.aerogear.android.pipe.http.HttpStubProvider;
+import org.jboss.aerogear.android.pipe.http.Timeouts;
+import org.jboss.aerogear.android.pipe.paging.PageConfig;
+import org.jboss.aerogear.android.pipe.paging.WrappingPagedList;
 import org.jboss.aerogear.android.pipe.rest.RestfulPipeConfiguration;
 import org.jboss.aerogear.android.pipe.rest.gson.GsonRequestBuilder;
 import org.jboss.aerogear.android.pipe.rest.multipart.MultipartRequestBuilder;
@@ -85,6 +88,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -422,6 +426,92 @@ public class LoaderAdapterTest {
 
     }
 
+    @Test
+    public void testReadLoaderParsesInBackground() throws Exception {
+        GsonBuilder builder = new GsonBuilder().registerTypeAdapter(
+                Point.class, new PointTypeAdapter());
+        Map<String, Object> headers = new HashMap<String, Object>();
+        headers.put("Link", "<http://server.com/context/ListClassId?offset=1>; rel=\"next\"");
+        HeaderAndBody response = new HeaderAndBody(SERIALIZED_POINTS.getBytes(), headers);
+        final HttpStubProvider provider = new HttpStubProvider(listUrl, response);
+        RestfulPipeConfiguration config = PipeManager.config("ParsedListClassId", RestfulPipeConfiguration.class);
+
+        Pipe<ListClassId> restPipe = config.withUrl(listUrl)
+                .requestBuilder(new GsonRequestBuilder(builder.create()))
+                .pageConfig(new PageConfig())
+                .forClass(ListClassId.class);
+
+        Object restRunner = UnitTestUtils.getPrivateField(restPipe,
+                "restRunner");
+        UnitTestUtils.setPrivateField(restRunner, "httpProviderFactory",
+                new Provider<HttpProvider>() {
+                    @Override
+                    public HttpProvider get(Object... in) {
+                        return provider;
+                    }
+                });
+
+        LoaderAdapter<ListClassId> adapter = (LoaderAdapter<ListClassId>) PipeManager.getPipe(config.getName(), getActivity());
+        ReadLoader<ListClassId> loader = new ReadLoader<ListClassId>(getActivity(), null,
+                restPipe.getHandler(), new ReadFilter(), adapter);
+        loader.setAdapter(adapter);
+        HeaderAndBody retained = loader.loadInBackground();
+
+        assertTrue(loader.isParsed());
+        Assert.assertEquals(0, retained.getBodyLength());
+        List<ListClassId> result = (List<ListClassId>) loader.getParsedResult();
+        assertTrue(result instanceof WrappingPagedList);
+        Assert.assertEquals(10, result.get(0).points.size());
+    }
+
+    @Test
+    public void testLargeResultIsDeliveredAgainAfterRotation() throws Exception {
+        StringBuilder padded = new StringBuilder(SERIALIZED_POINTS);
+        while (padded.length() <= LoaderAdapter.DEFAULT_MAX_RETAINED_BYTES) {
+            padded.append("        ");
+        }
+        PipeHandler handler = mock(PipeHandler.class);
+        when(handler.onRawReadWithFilter((ReadFilter) any(), (Pipe) any()))
+                .thenReturn(new HeaderAndBody(padded.toString().getBytes(), new HashMap<String, Object>()));
+        RestfulPipeConfiguration config = PipeManager.config("LargeListClassId", RestfulPipeConfiguration.class);
+        config.withUrl(listUrl).forClass(ListClassId.class);
+
+        LoaderAdapter<ListClassId> adapter = (LoaderAdapter<ListClassId>) PipeManager.getPipe(config.getName(), getActivity());
+        final CountDownLatch delivered = new CountDownLatch(2);
+        final List<List<ListClassId>> results = new ArrayList<List<ListClassId>>();
+        Callback<List<ListClassId>> callback = new Callback<List<ListClassId>>() {
+            @Override
+            public void onSuccess(List<ListClassId> data) {
+                results.add(data);
+                delivered.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+            }
+        };
+        ReadLoader<ListClassId> loader = new ReadLoader<ListClassId>(getActivity(), callback,
+                handler, new ReadFilter(), adapter);
+        loader.setAdapter(adapter);
+        HeaderAndBody retained = loader.loadInBackground();
+        assertTrue(retained.getBodyLength() > LoaderAdapter.DEFAULT_MAX_RETAINED_BYTES);
+
+        adapter.onLoadFinished(loader, retained);
+        Assert.assertFalse(loader.isParsed());
+        Assert.assertNull(loader.getParsedResult());
+
+        // a rotation loads again, which parses the kept body in the
+        // background instead of requesting it again
+        retained = loader.loadInBackground();
+        assertTrue(loader.isParsed());
+        adapter.onLoadFinished(loader, retained);
+
+        assertTrue(delivered.await(2, TimeUnit.SECONDS));
+        Assert.assertEquals(2, results.size());
+        Assert.assertEquals(10, results.get(1).get(0).points.size());
+        verify(handler, times(1)).onRawReadWithFilter((ReadFilter) any(), (Pipe) any());
+    }
+
     @Test
     public void testMultipleCallsToLoadCallDeliver() {
         PipeHandler handler = mock(PipeHandler.class);
@@ -654,7 +744,7 @@ public class LoaderAdapterTest {
         });
         latch.await(60, TimeUnit.SECONDS);
 
-        verify(factory).get(Mockito.argThat(new ObjectVarArgsMatcher(new URL("http://server.com/context?limit=10&model=BMW"), 60000)));
+        verify(factory).get(Mockito.argThat(new ObjectVarArgsMatcher(new URL("http://server.com/context?limit=10&model=BMW"), new Timeouts(Timeouts.DEFAULT_TIMEOUT, Timeouts.DEFAULT_TIMEOUT, 0))));
 
     }
 
@@ -0,0 +1,79 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.metrics;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class PipeMetricsTest {
+
+    @Test
+    public void histogramBucketsByPowersOfTwo() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(10000, snapshot.getMaxMicros());
+        assertEquals((99 * 100 + 10000) / 100, snapshot.getMeanMicros());
+
+        long p50 = snapshot.getPercentileMicros(50);
+        assertTrue(p50 >= 100 && p50 < 200);
+        assertEquals(10000, snapshot.getPercentileMicros(100));
+        assertEquals(0, new LatencyHistogram().snapshot().getPercentileMicros(99));
+    }
+
+    @Test
+    public void snapshotCopiesCounters() {
+        PipeMetrics metrics = new PipeMetrics("cars");
+        metrics.recordRequest();
+        metrics.recordRequest();
+        metrics.recordStatusCode(200);
+        metrics.recordStatusCode(404);
+        metrics.recordStatusCode(200);
+        metrics.recordFailure();
+        metrics.recordBytesSent(10);
+        metrics.recordBytesReceived(20);
+        metrics.record(PipeMetrics.Stage.PARSE, 1000);
+
+        PipeMetricsSnapshot snapshot = metrics.snapshot();
+        metrics.recordRequest();
+
+        assertEquals("cars", snapshot.getName());
+        assertEquals(2, snapshot.getRequestCount());
+        assertEquals(1, snapshot.getFailureCount());
+        assertEquals(2, snapshot.getStatusCodeCount(200));
+        assertEquals(1, snapshot.getStatusCodeCount(404));
+        assertEquals(0, snapshot.getStatusCodeCount(500));
+        assertEquals(10, snapshot.getBytesSent());
+        assertEquals(20, snapshot.getBytesReceived());
+        assertEquals(1, snapshot.getLatency(PipeMetrics.Stage.PARSE).getCount());
+        assertEquals(0, snapshot.getLatency(PipeMetrics.Stage.CONNECT).getCount());
+    }
+
+}
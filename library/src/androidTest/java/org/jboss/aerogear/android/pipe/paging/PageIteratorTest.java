@@ -0,0 +1,150 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.paging;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.aerogear.android.core.Callback;
+import org.jboss.aerogear.android.core.ReadFilter;
+import org.jboss.aerogear.android.pipe.Pipe;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class PageIteratorTest {
+
+    @Test
+    public void iteratesOverAllPagesInOrder() {
+        PagesPipe pages = new PagesPipe(3, 2);
+        PageIterator<Integer> iterator = new PageIterator<Integer>(pages.pipe, null, 2);
+
+        List<Integer> items = new ArrayList<Integer>();
+        while (iterator.hasNext()) {
+            items.add(iterator.next());
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), items);
+        assertEquals(3, pages.reads);
+        assertEquals(0, iterator.getResidentPages());
+    }
+
+    @Test
+    public void readsAheadNoMoreThanMaxResidentPages() {
+        PagesPipe pages = new PagesPipe(10, 5);
+        PageIterator<Integer> iterator = new PageIterator<Integer>(pages.pipe, null, 2);
+
+        assertEquals(0, pages.reads);
+        assertEquals(Integer.valueOf(0), iterator.next());
+        assertEquals(2, pages.reads);
+        assertEquals(2, iterator.getResidentPages());
+
+        for (int i = 1; i < 5; i++) {
+            iterator.next();
+        }
+        assertEquals(2, pages.reads);
+
+        iterator.next();
+        assertEquals(3, pages.reads);
+        assertEquals(2, iterator.getResidentPages());
+
+        iterator.close();
+        assertFalse(iterator.hasNext());
+        assertEquals(0, iterator.getResidentPages());
+    }
+
+    @Test
+    public void failedReadIsThrown() {
+        PagesPipe pages = new PagesPipe(3, 1);
+        pages.failAt = 1;
+        PageIterator<Integer> iterator = new PageIterator<Integer>(pages.pipe, null, 1);
+
+        assertEquals(Integer.valueOf(0), iterator.next());
+        try {
+            iterator.hasNext();
+            fail("The failure of the read should be thrown");
+        } catch (RuntimeException e) {
+            assertSame(pages.failure, e.getCause());
+        }
+    }
+
+    /**
+     * A pipe which answers reads at once with numbered pages linked like
+     * web linked pages.
+     */
+    private static final class PagesPipe implements InvocationHandler {
+
+        final Pipe<Integer> pipe;
+        final int pageCount;
+        final int pageSize;
+        final Exception failure = new Exception("read failed");
+        int failAt = -1;
+        int reads = 0;
+
+        @SuppressWarnings("unchecked")
+        PagesPipe(int pageCount, int pageSize) {
+            this.pageCount = pageCount;
+            this.pageSize = pageSize;
+            this.pipe = (Pipe<Integer>) Proxy.newProxyInstance(Pipe.class.getClassLoader(),
+                    new Class<?>[]{Pipe.class}, this);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (!"read".equals(method.getName()) || args.length != 2) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+
+            ReadFilter filter = (ReadFilter) args[0];
+            Callback<List<Integer>> callback = (Callback<List<Integer>>) args[1];
+            int page = filter.getLinkUri() == null ? 0 : Integer.parseInt(filter.getLinkUri().toString());
+            reads++;
+
+            if (page == failAt) {
+                callback.onFailure(failure);
+                return null;
+            }
+
+            List<Integer> items = new ArrayList<Integer>();
+            for (int i = 0; i < pageSize; i++) {
+                items.add(page * pageSize + i);
+            }
+            ReadFilter next = null;
+            if (page + 1 < pageCount) {
+                next = new ReadFilter();
+                next.setLinkUri(URI.create(String.valueOf(page + 1)));
+            }
+            callback.onSuccess(new WrappingPagedList<Integer>(pipe, items, next, null));
+            return null;
+        }
+
+    }
+
+}
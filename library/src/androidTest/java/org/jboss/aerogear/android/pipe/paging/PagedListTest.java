@@ -17,9 +17,13 @@
 package org.jboss.aerogear.android.pipe.paging;
 
 import android.support.test.runner.AndroidJUnit4;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.net.URI;
@@ -33,6 +37,7 @@ import org.jboss.aerogear.android.pipe.Pipe;
 import org.jboss.aerogear.android.pipe.paging.WrappingPagedList;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 
 @RunWith(AndroidJUnit4.class)
 public class PagedListTest {
@@ -57,4 +62,90 @@ public class PagedListTest {
 
     }
 
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Test
+    public void testNextIsServedFromPrefetchedPage() {
+        Pipe pipe = mock(Pipe.class);
+        ReadFilter next = new ReadFilter();
+        next.setLinkUri(URI.create("./next"));
+        PageConfig config = new PageConfig();
+        config.setPrefetch(PageConfig.Prefetch.NEXT);
+        PagePrefetcher prefetcher = new PagePrefetcher(config);
+
+        WrappingPagedList list = new WrappingPagedList(pipe, new ArrayList(), next, null, prefetcher);
+        list.prefetch();
+        list.prefetch();
+
+        ArgumentCaptor<Callback> prefetch = ArgumentCaptor.forClass(Callback.class);
+        verify(pipe, times(1)).read(eq(next), prefetch.capture());
+        assertEquals(1, prefetcher.size());
+
+        Callback callback = mock(Callback.class);
+        list.next(callback);
+        List page = new ArrayList();
+        prefetch.getValue().onSuccess(page);
+
+        verify(callback).onSuccess(page);
+        verify(pipe, times(1)).read(eq(next), any(Callback.class));
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Test
+    public void testDiscardedPageIsReadAgain() {
+        Pipe pipe = mock(Pipe.class);
+        ReadFilter next = new ReadFilter();
+        ReadFilter previous = new ReadFilter();
+        next.setLinkUri(URI.create("./next"));
+        previous.setLinkUri(URI.create("./previous"));
+        PageConfig config = new PageConfig();
+        config.setPrefetch(PageConfig.Prefetch.NEXT);
+        PagePrefetcher prefetcher = new PagePrefetcher(config);
+
+        WrappingPagedList list = new WrappingPagedList(pipe, new ArrayList(), next, previous, prefetcher);
+        list.prefetch();
+        verify(pipe, never()).read(eq(previous), any(Callback.class));
+
+        list.discard();
+        assertEquals(0, prefetcher.size());
+
+        Callback callback = mock(Callback.class);
+        list.next(callback);
+        ArgumentCaptor<Callback> read = ArgumentCaptor.forClass(Callback.class);
+        verify(pipe, times(2)).read(eq(next), read.capture());
+        assertSame(callback, read.getValue());
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Test
+    public void testDiscardingACopyKeepsThePagesOfTheOriginal() {
+        Pipe pipe = mock(Pipe.class);
+        ReadFilter next = new ReadFilter();
+        next.setLinkUri(URI.create("./next"));
+        PageConfig config = new PageConfig();
+        config.setPrefetch(PageConfig.Prefetch.NEXT);
+        PagePrefetcher prefetcher = new PagePrefetcher(config);
+        List items = new ArrayList();
+        items.add("item");
+
+        WrappingPagedList list = new WrappingPagedList(pipe, items, next, null, prefetcher);
+        WrappingPagedList copy = list.copy();
+        assertEquals(items, copy);
+        assertSame(next, copy.getNextFilter());
+
+        list.prefetch();
+        copy.prefetch();
+        copy.discard();
+        assertEquals(1, prefetcher.size());
+
+        ArgumentCaptor<Callback> prefetch = ArgumentCaptor.forClass(Callback.class);
+        verify(pipe, times(2)).read(eq(next), prefetch.capture());
+        Callback callback = mock(Callback.class);
+        list.next(callback);
+        List page = new ArrayList();
+        prefetch.getAllValues().get(0).onSuccess(page);
+
+        verify(callback).onSuccess(page);
+        verify(pipe, times(2)).read(eq(next), any(Callback.class));
+    }
+
 }
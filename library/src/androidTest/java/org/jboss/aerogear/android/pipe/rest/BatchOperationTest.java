@@ -0,0 +1,134 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.jboss.aerogear.android.core.Callback;
+import org.jboss.aerogear.android.pipe.BatchResult;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class BatchOperationTest {
+
+    @Test
+    public void reportsResultsAndFailuresInOrder() throws Exception {
+        PipeExecutor executor = new PipeExecutor(4, 16, PipeExecutor.OverflowPolicy.FAIL_FAST);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        ResultCallback<String> callback = new ResultCallback<String>();
+        try {
+            new BatchOperation<Integer, String>(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8), callback) {
+                @Override
+                String process(Integer item) throws Exception {
+                    int now = running.incrementAndGet();
+                    if (now > maxRunning.get()) {
+                        maxRunning.set(now);
+                    }
+                    Thread.sleep(10);
+                    running.decrementAndGet();
+                    if (item % 3 == 0) {
+                        throw new IllegalStateException("item " + item);
+                    }
+                    return "item " + item;
+                }
+            }.start(executor, 2);
+
+            BatchResult<String> result = callback.await();
+            assertEquals(8, result.size());
+            assertEquals(6, result.getSuccessCount());
+            assertEquals(2, result.getFailureCount());
+            assertEquals("item 1", result.getResult(0));
+            assertFalse(result.isSuccess(2));
+            assertEquals("item 3", result.getFailure(2).getMessage());
+            assertEquals("item 8", result.getResult(7));
+            assertTrue(maxRunning.get() <= 2);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void failsItemsWhenEveryWorkerIsRejected() throws Exception {
+        ResultCallback<String> callback = new ResultCallback<String>();
+        new BatchOperation<String, String>(Arrays.asList("a", "b", "c"), callback) {
+            @Override
+            String process(String item) {
+                return item;
+            }
+        }.start(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException("full");
+            }
+        }, 2);
+
+        BatchResult<String> result = callback.await();
+        assertEquals(3, result.getFailureCount());
+        assertTrue(result.getFailure(0) instanceof RejectedExecutionException);
+    }
+
+    @Test
+    public void emptyBatchCompletesImmediately() throws Exception {
+        ResultCallback<String> callback = new ResultCallback<String>();
+        new BatchOperation<String, String>(Arrays.<String>asList(), callback) {
+            @Override
+            String process(String item) {
+                return item;
+            }
+        }.start(PipeExecutor.getDefault(), 4);
+
+        assertEquals(0, callback.await().size());
+    }
+
+    private static class ResultCallback<R> implements Callback<BatchResult<R>> {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private final AtomicReference<BatchResult<R>> result = new AtomicReference<BatchResult<R>>();
+
+        @Override
+        public void onSuccess(BatchResult<R> data) {
+            result.set(data);
+            latch.countDown();
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            throw new AssertionError(e);
+        }
+
+        BatchResult<R> await() throws InterruptedException {
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+            return result.get();
+        }
+
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.jboss.aerogear.android.pipe.http.HttpException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class CircuitBreakerTest {
+
+    private static final CircuitBreaker.Call<String> SUCCESS = new CircuitBreaker.Call<String>() {
+        @Override
+        public String call() {
+            return "ok";
+        }
+    };
+
+    private static final CircuitBreaker.Call<String> SERVER_ERROR = new CircuitBreaker.Call<String>() {
+        @Override
+        public String call() {
+            throw new HttpException(new byte[0], 503);
+        }
+    };
+
+    private static final CircuitBreaker.Call<String> NOT_FOUND = new CircuitBreaker.Call<String>() {
+        @Override
+        public String call() {
+            throw new HttpException(new byte[0], 404);
+        }
+    };
+
+    @Test
+    public void opensOnFailureRateAndFailsFast() {
+        final List<CircuitBreaker.State> transitions = new ArrayList<CircuitBreaker.State>();
+        CircuitBreakerRegistry registry = new CircuitBreakerRegistry().window(4, 4).openDuration(60000)
+                .addListener(new CircuitBreaker.Listener() {
+                    @Override
+                    public void onStateChanged(CircuitBreaker breaker, CircuitBreaker.State from, CircuitBreaker.State to) {
+                        transitions.add(to);
+                    }
+                });
+        CircuitBreaker breaker = registry.get("host");
+
+        call(breaker, SUCCESS);
+        call(breaker, NOT_FOUND);
+        call(breaker, SERVER_ERROR);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        call(breaker, SERVER_ERROR);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(0.5, breaker.getFailureRate(), 0.0001);
+
+        try {
+            breaker.execute(SUCCESS);
+            fail("Expected CircuitBreakerOpenException");
+        } catch (CircuitBreakerOpenException expected) {
+            assertEquals("host", expected.getCircuit());
+        }
+        assertEquals(1, breaker.getRejectedCount());
+        assertEquals(1, transitions.size());
+        assertEquals(CircuitBreaker.State.OPEN, transitions.get(0));
+    }
+
+    @Test
+    public void halfOpenProbeClosesOrReopens() {
+        CircuitBreaker breaker = new CircuitBreakerRegistry().window(2, 2).openDuration(0).get("pipe");
+
+        call(breaker, SERVER_ERROR);
+        call(breaker, SERVER_ERROR);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        call(breaker, SERVER_ERROR);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getOpenCount());
+
+        assertEquals("ok", breaker.execute(SUCCESS));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getCallCount());
+    }
+
+    @Test
+    public void slowCallsOpenTheCircuit() {
+        CircuitBreaker breaker = new CircuitBreakerRegistry().window(2, 2).slowCallThreshold(0, 1.0).get("slow");
+
+        breaker.execute(SUCCESS);
+        breaker.execute(SUCCESS);
+        assertEquals(1.0, breaker.getSlowCallRate(), 0.0001);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void breakersAreSharedPerHost() throws Exception {
+        CircuitBreakerRegistry registry = new CircuitBreakerRegistry();
+        URL cars = new URL("http://example.com/cars");
+        URL bikes = new URL("http://example.com:80/bikes");
+
+        assertSame(registry.get(cars, new URL(cars, "cars/1")), registry.get(bikes, bikes));
+        registry.scope(CircuitBreakerRegistry.Scope.PIPE);
+        assertEquals("http://example.com/cars", registry.get(cars, new URL(cars, "cars/1")).getName());
+    }
+
+    private static void call(CircuitBreaker breaker, CircuitBreaker.Call<String> call) {
+        try {
+            breaker.execute(call);
+        } catch (HttpException ignore) {
+        }
+    }
+
+}
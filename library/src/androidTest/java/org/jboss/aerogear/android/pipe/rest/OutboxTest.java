@@ -0,0 +1,231 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.android.core.Callback;
+import org.jboss.aerogear.android.pipe.PipeHandler;
+import org.jboss.aerogear.android.pipe.helper.Data;
+import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
+import org.jboss.aerogear.android.pipe.rest.gson.GsonRequestBuilder;
+import org.jboss.aerogear.android.pipe.rest.gson.GsonResponseParser;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class OutboxTest {
+
+    @Test
+    public void journalReplaysPendingOperationsAndCutsOffATornRecord() throws Exception {
+        File file = createJournalFile();
+        OutboxJournal journal = new OutboxJournal(file, new OutboxStatistics());
+        OutboxJournal.Entry saved = journal.append(Outbox.Operation.SAVE, "1", "{\"id\":1}".getBytes("UTF-8"));
+        journal.append(Outbox.Operation.REMOVE, "2", null);
+        journal.acknowledge(saved.sequence);
+        journal.close();
+
+        long length = file.length();
+        FileOutputStream torn = new FileOutputStream(file, true);
+        try {
+            torn.write(new byte[] { 1, 0, 0, 0 });
+        } finally {
+            torn.close();
+        }
+
+        OutboxJournal replayed = new OutboxJournal(file, new OutboxStatistics());
+        List<OutboxJournal.Entry> pending = replayed.getPending();
+        assertEquals(1, pending.size());
+        assertEquals(Outbox.Operation.REMOVE, pending.get(0).operation);
+        assertEquals("2", pending.get(0).id);
+        assertNull(pending.get(0).body);
+        assertEquals(length, file.length());
+        assertEquals(3, replayed.append(Outbox.Operation.REMOVE, "3", null).sequence);
+        replayed.close();
+    }
+
+    @Test
+    public void compactionKeepsOnlyPendingOperations() throws Exception {
+        File file = createJournalFile();
+        OutboxStatistics statistics = new OutboxStatistics();
+        OutboxJournal journal = new OutboxJournal(file, statistics);
+        byte[] body = new byte[1024];
+        List<OutboxJournal.Entry> entries = new ArrayList<OutboxJournal.Entry>();
+        for (int i = 0; i < 100; i++) {
+            entries.add(journal.append(Outbox.Operation.SAVE, String.valueOf(i), body));
+        }
+        for (int i = 0; i < 99; i++) {
+            journal.acknowledge(entries.get(i).sequence);
+        }
+
+        long before = journal.getLength();
+        assertTrue(journal.compactIfNeeded());
+        assertTrue(journal.getLength() < before / 50);
+        assertEquals(1, statistics.getCompactionCount());
+        assertEquals(before - journal.getLength(), statistics.getCompactedBytes());
+        journal.close();
+
+        OutboxJournal replayed = new OutboxJournal(file, new OutboxStatistics());
+        assertEquals(1, replayed.getPendingCount());
+        assertEquals("99", replayed.getPending().get(0).id);
+        replayed.close();
+    }
+
+    @Test
+    public void operationsWaitWhileOfflineAndAreCoalescedWhenFlushed() throws Exception {
+        PipeExecutor executor = new PipeExecutor(2, 16, PipeExecutor.OverflowPolicy.FAIL_FAST);
+        RecordingHandler handler = new RecordingHandler();
+        Outbox<Data> outbox = createOutbox(executor, handler);
+        CountDownLatch delivered = new CountDownLatch(3);
+        List<Object> results = new ArrayList<Object>();
+        try {
+            outbox.save(new Data(1, "first", ""), new RecordingCallback<Data>(results, delivered));
+            outbox.save(new Data(1, "second", ""), new RecordingCallback<Data>(results, delivered));
+            outbox.remove("2", new RecordingCallback<Void>(results, delivered));
+            drain(executor);
+
+            assertEquals(3, outbox.getPendingCount());
+            assertEquals(3, delivered.getCount());
+
+            handler.online = true;
+            outbox.flush();
+            assertTrue(delivered.await(10, TimeUnit.SECONDS));
+            // operations are acknowledged after their callback
+            drain(executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(0, outbox.getPendingCount());
+        synchronized (handler.sent) {
+            assertEquals(2, handler.sent.size());
+            assertTrue(handler.sent.contains("remove 2"));
+            assertTrue(handler.sent.contains("save 1 second"));
+        }
+        synchronized (results) {
+            int seconds = 0;
+            for (Object result : results) {
+                if (result instanceof Data && "second".equals(((Data) result).getName())) {
+                    seconds++;
+                }
+            }
+            assertEquals(2, seconds);
+        }
+        assertEquals(1, outbox.getStatistics().getCoalescedCount());
+        assertEquals(3, outbox.getStatistics().getJournaledCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Outbox<Data> createOutbox(PipeExecutor executor, RecordingHandler handler) throws IOException {
+        PipeHandler<Data> pipeHandler = (PipeHandler<Data>) Proxy.newProxyInstance(PipeHandler.class.getClassLoader(),
+                new Class<?>[] { PipeHandler.class }, handler);
+        return new Outbox<Data>(createJournalFile(), Data.class, pipeHandler, new GsonRequestBuilder<Data>(),
+                new GsonResponseParser<Data>(), executor, 2);
+    }
+
+    private static File createJournalFile() throws IOException {
+        File file = File.createTempFile("outbox", ".journal");
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void drain(PipeExecutor executor) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((executor.getActiveThreadCount() > 0 || executor.getQueueDepth() > 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Fails like an unreachable server until it is online, then echoes
+     * saves and records what was sent.
+     */
+    private static final class RecordingHandler implements InvocationHandler {
+
+        private final List<String> sent = new ArrayList<String>();
+        private volatile boolean online = false;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!online) {
+                throw new RuntimeException(new IOException("offline"));
+            }
+            if ("onRawSave".equals(method.getName())) {
+                byte[] body = (byte[]) args[1];
+                String name = new GsonResponseParser<Data>()
+                        .handleResponse(new HeaderAndBody(body, new HashMap<String, Object>()), Data.class).get(0).getName();
+                synchronized (sent) {
+                    sent.add("save " + args[0] + " " + name);
+                }
+                return new HeaderAndBody(body, new HashMap<String, Object>());
+            }
+            synchronized (sent) {
+                sent.add("remove " + args[0]);
+            }
+            return null;
+        }
+
+    }
+
+    private static final class RecordingCallback<T> implements Callback<T> {
+
+        private static final long serialVersionUID = 1L;
+        private final List<Object> results;
+        private final CountDownLatch delivered;
+
+        RecordingCallback(List<Object> results, CountDownLatch delivered) {
+            this.results = results;
+            this.delivered = delivered;
+        }
+
+        @Override
+        public void onSuccess(T data) {
+            synchronized (results) {
+                results.add(data);
+            }
+            delivered.countDown();
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            synchronized (results) {
+                results.add(e);
+            }
+            delivered.countDown();
+        }
+
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class PipeExecutorTest {
+
+    @Test
+    public void failFastRejectsWhenQueueIsFull() throws Exception {
+        PipeExecutor executor = new PipeExecutor(1, 1, PipeExecutor.OverflowPolicy.FAIL_FAST);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(new Blocker(release));
+            executor.execute(new Blocker(release));
+            try {
+                executor.execute(new Blocker(release));
+                fail("Expected RejectedExecutionException");
+            } catch (RejectedExecutionException expected) {
+                assertEquals(1, executor.getRejectedCount());
+                assertEquals(1, executor.getQueueDepth());
+            }
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void dropOldestRejectsQueuedTask() throws Exception {
+        PipeExecutor executor = new PipeExecutor(1, 1, PipeExecutor.OverflowPolicy.DROP_OLDEST);
+        CountDownLatch release = new CountDownLatch(1);
+        final AtomicReference<RejectedExecutionException> rejection = new AtomicReference<RejectedExecutionException>();
+        try {
+            executor.execute(new Blocker(release));
+            executor.execute(new PipeExecutor.RejectableTask() {
+                @Override
+                public void run() {
+                }
+
+                @Override
+                public void onRejected(RejectedExecutionException exception) {
+                    rejection.set(exception);
+                }
+            });
+            executor.execute(new Blocker(release));
+
+            assertNotNull(rejection.get());
+            assertEquals(1, executor.getRejectedCount());
+            assertEquals(1, executor.getQueueDepth());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void callerRunsWhenQueueIsFull() throws Exception {
+        PipeExecutor executor = new PipeExecutor(1, 1, PipeExecutor.OverflowPolicy.CALLER_RUNS);
+        CountDownLatch release = new CountDownLatch(1);
+        final AtomicReference<Thread> runner = new AtomicReference<Thread>();
+        try {
+            executor.execute(new Blocker(release));
+            executor.execute(new Blocker(release));
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runner.set(Thread.currentThread());
+                }
+            });
+
+            assertEquals(Thread.currentThread(), runner.get());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    private static class Blocker implements Runnable {
+
+        private final CountDownLatch release;
+
+        Blocker(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void run() {
+            try {
+                assertTrue(release.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+}
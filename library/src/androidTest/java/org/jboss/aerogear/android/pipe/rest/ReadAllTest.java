@@ -0,0 +1,90 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.aerogear.android.core.ReadFilter;
+import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
+import org.jboss.aerogear.android.pipe.paging.PageConfig;
+import org.jboss.aerogear.android.pipe.paging.TotalCountParser;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ReadAllTest {
+
+    @Test
+    public void remainingPagesFollowTheFirstPage() {
+        ReadFilter first = new ReadFilter();
+        first.setOffset(10);
+        first.setLimit(20);
+
+        List<ReadFilter> filters = RestAdapter.getRemainingPageFilters(first, 75);
+
+        assertEquals(3, filters.size());
+        assertEquals(Integer.valueOf(30), filters.get(0).getOffset());
+        assertEquals(Integer.valueOf(50), filters.get(1).getOffset());
+        assertEquals(Integer.valueOf(70), filters.get(2).getOffset());
+        for (ReadFilter filter : filters) {
+            assertEquals(Integer.valueOf(20), filter.getLimit());
+        }
+    }
+
+    @Test
+    public void singlePageHasNoRemainingPages() {
+        ReadFilter first = new ReadFilter();
+        first.setOffset(0);
+        first.setLimit(20);
+
+        assertTrue(RestAdapter.getRemainingPageFilters(first, 20).isEmpty());
+        assertTrue(RestAdapter.getRemainingPageFilters(first, 0).isEmpty());
+    }
+
+    @Test
+    public void totalCountIsReadFromHeader() {
+        PageConfig config = new PageConfig();
+        config.setMetadataLocation(PageConfig.MetadataLocations.HEADERS);
+        config.setTotalCountIdentifier("X-Total-Count");
+        Map<String, Object> headers = new HashMap<String, Object>();
+        headers.put("X-Total-Count", " 42");
+
+        TotalCountParser parser = new TotalCountParser();
+        assertEquals(Integer.valueOf(42), parser.getTotalCount(new HeaderAndBody(new byte[0], headers), config));
+        assertNull(parser.getTotalCount(new HeaderAndBody(new byte[0], new HashMap<String, Object>()), config));
+    }
+
+    @Test
+    public void totalCountIsReadFromBody() {
+        PageConfig config = new PageConfig();
+        config.setMetadataLocation(PageConfig.MetadataLocations.BODY);
+        config.setTotalCountIdentifier("paging.total");
+        byte[] body = "{\"paging\":{\"total\":1234},\"data\":[]}".getBytes();
+
+        TotalCountParser parser = new TotalCountParser();
+        assertEquals(Integer.valueOf(1234), parser.getTotalCount(new HeaderAndBody(body, new HashMap<String, Object>()), config));
+    }
+
+}
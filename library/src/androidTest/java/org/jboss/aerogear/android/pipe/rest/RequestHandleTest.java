@@ -0,0 +1,235 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.aerogear.android.core.Callback;
+import org.jboss.aerogear.android.pipe.PipeHandler;
+import org.jboss.aerogear.android.pipe.RequestHandle;
+import org.jboss.aerogear.android.pipe.ResponseParser;
+import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
+import org.jboss.aerogear.android.pipe.http.RequestCancellation;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class RequestHandleTest {
+
+    private static final HeaderAndBody RESPONSE = new HeaderAndBody(new byte[0], new HashMap<String, Object>());
+
+    @Test
+    public void cancelDisconnectsAttachedConnections() throws Exception {
+        RequestCancellation cancellation = new RequestCancellation();
+        FakeConnection attached = new FakeConnection();
+        FakeConnection detached = new FakeConnection();
+        cancellation.attach(attached);
+        cancellation.attach(detached);
+        cancellation.detach(detached);
+
+        cancellation.cancel();
+
+        assertTrue(cancellation.isCancelled());
+        assertTrue(attached.disconnected);
+        assertFalse(detached.disconnected);
+
+        FakeConnection late = new FakeConnection();
+        try {
+            cancellation.attach(late);
+            fail("Expected CancellationException");
+        } catch (CancellationException expected) {
+            assertTrue(late.disconnected);
+        }
+    }
+
+    @Test
+    public void cancelledQueuedReadIsRemovedFromTheQueue() throws Exception {
+        PipeExecutor executor = new PipeExecutor(1, 4, PipeExecutor.OverflowPolicy.FAIL_FAST);
+        final CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger reads = new AtomicInteger();
+        AtomicInteger delivered = new AtomicInteger();
+        try {
+            RestAdapter<String> pipe = createPipe(executor, new BlockingHandler(reads, null), new AtomicInteger());
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+
+            RequestHandle handle = pipe.read(new CountingCallback(delivered));
+            assertEquals(1, executor.getQueueDepth());
+            handle.cancel();
+
+            assertTrue(handle.isCancelled());
+            assertEquals(0, executor.getQueueDepth());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        drain(executor);
+        assertEquals(0, reads.get());
+        assertEquals(0, delivered.get());
+    }
+
+    @Test
+    public void cancelledRunningReadIsNeitherParsedNorDelivered() throws Exception {
+        PipeExecutor executor = new PipeExecutor(1, 4, PipeExecutor.OverflowPolicy.FAIL_FAST);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger reads = new AtomicInteger();
+        AtomicInteger parses = new AtomicInteger();
+        AtomicInteger delivered = new AtomicInteger();
+        try {
+            RestAdapter<String> pipe = createPipe(executor, new BlockingHandler(reads, started), parses);
+            RequestHandle handle = pipe.read(new CountingCallback(delivered));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            handle.cancel();
+        } finally {
+            executor.shutdown();
+        }
+        drain(executor);
+        assertEquals(1, reads.get());
+        assertEquals(0, parses.get());
+        assertEquals(0, delivered.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RestAdapter<String> createPipe(PipeExecutor executor, InvocationHandler handler, final AtomicInteger parses) throws Exception {
+        ResponseParser<String> parser = (ResponseParser<String>) Proxy.newProxyInstance(ResponseParser.class.getClassLoader(),
+                new Class<?>[] { ResponseParser.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        parses.incrementAndGet();
+                        return null;
+                    }
+                });
+        RestfulPipeConfiguration config = new RestfulPipeConfiguration()
+                .pipeHandler((PipeHandler<String>) Proxy.newProxyInstance(PipeHandler.class.getClassLoader(),
+                        new Class<?>[] { PipeHandler.class }, handler))
+                .responseParser(parser)
+                .executor(executor);
+        config.setName("cancellable");
+        return new RestAdapter<String>(String.class, new URL("http://server.com/cancellable"), config);
+    }
+
+    private static void drain(PipeExecutor executor) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((executor.getActiveThreadCount() > 0 || executor.getQueueDepth() > 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Answers reads once the request bound to the reading thread is
+     * cancelled, like a transfer which is disconnected.
+     */
+    private static final class BlockingHandler implements InvocationHandler {
+
+        private final AtomicInteger reads;
+        private final CountDownLatch started;
+
+        BlockingHandler(AtomicInteger reads, CountDownLatch started) {
+            this.reads = reads;
+            this.started = started;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            reads.incrementAndGet();
+            if (started != null) {
+                started.countDown();
+            }
+            RequestCancellation cancellation = RequestCancellation.current();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!cancellation.isCancelled() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            return RESPONSE;
+        }
+
+    }
+
+    private static final class CountingCallback implements Callback<List<String>> {
+
+        private static final long serialVersionUID = 1L;
+        private final AtomicInteger delivered;
+
+        CountingCallback(AtomicInteger delivered) {
+            this.delivered = delivered;
+        }
+
+        @Override
+        public void onSuccess(List<String> data) {
+            delivered.incrementAndGet();
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            delivered.incrementAndGet();
+        }
+
+    }
+
+    private static final class FakeConnection extends HttpURLConnection {
+
+        private volatile boolean disconnected = false;
+
+        FakeConnection() throws IOException {
+            super(new URL("http://server.com/"));
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected = true;
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+    }
+
+}
@@ -41,6 +41,7 @@ import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
 import org.jboss.aerogear.android.pipe.http.HttpProvider;
 import org.jboss.aerogear.android.pipe.http.HttpProviderFactory;
 import org.jboss.aerogear.android.pipe.http.HttpStubProvider;
+import org.jboss.aerogear.android.pipe.http.Timeouts;
 import org.jboss.aerogear.android.pipe.module.ModuleFields;
 import org.jboss.aerogear.android.pipe.module.PipeModule;
 import org.jboss.aerogear.android.pipe.paging.PageConfig;
@@ -60,6 +61,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -71,7 +73,9 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -366,7 +370,7 @@ public class RestAdapterTest {
         });
         latch.await(500, TimeUnit.MILLISECONDS);
 
-        verify(factory).get(Mockito.argThat(new ObjectVarArgsMatcher(new URL(url.toString() + "rail%2Ftrails?limit=10&where=%7B%22model%22:%22BMW%22%7D"), 60000)));
+        verify(factory).get(Mockito.argThat(new ObjectVarArgsMatcher(new URL(url.toString() + "rail%2Ftrails?limit=10&where=%7B%22model%22:%22BMW%22%7D"), new Timeouts(Timeouts.DEFAULT_TIMEOUT, Timeouts.DEFAULT_TIMEOUT, 0))));
     }
 
     @Test
@@ -399,7 +403,7 @@ public class RestAdapterTest {
         latch.await(500, TimeUnit.MILLISECONDS);
 
         verify(factory).get(Mockito.argThat(new ObjectVarArgsMatcher(new URL(url.toString() + "metrics/gauges/MI~R~%5Bacbfe3d2-fd73-43b0-"
-                + "94ad-c38f32abba1f%2FHolu~~%5D~MT~WildFly%20Memory%20Metrics~Heap%20Max/data?start=1463907826698&end=1466586226698"), 60000)));
+                + "94ad-c38f32abba1f%2FHolu~~%5D~MT~WildFly%20Memory%20Metrics~Heap%20Max/data?start=1463907826698&end=1466586226698"), new Timeouts(Timeouts.DEFAULT_TIMEOUT, Timeouts.DEFAULT_TIMEOUT, 0))));
     }
 
     public void runReadWithFilter() throws Exception {
@@ -534,6 +538,51 @@ public class RestAdapterTest {
         assertEquals(new URI("http://example.com/TheBook/chapter2"), pagedList.getPreviousFilter().getLinkUri());
     }
 
+    /**
+     * A stale first page in the response cache must not be handed to the
+     * iterator, which would hold the page of the cache as well as the page of
+     * the network.
+     */
+    @Test
+    public void testIterateOverStaleResponseCache() throws Exception {
+        File directory = File.createTempFile("responses", "");
+        directory.delete();
+        directory.deleteOnExit();
+
+        RestfulPipeConfiguration pipeConfig = PipeManager.config("staleData", RestfulPipeConfiguration.class).withUrl(url);
+        pipeConfig.pageConfig(new PageConfig());
+        pipeConfig.responseCache(directory, 1024 * 1024);
+
+        RestAdapter<Data> dataPipe = (RestAdapter<Data>) pipeConfig.forClass(Data.class);
+        RestRunner<Data> restRunner = (RestRunner<Data>) UnitTestUtils.getPrivateField(dataPipe, "restRunner");
+        UnitTestUtils.setPrivateField(restRunner, "httpProviderFactory", new Provider<HttpProvider>() {
+            @Override
+            public HttpProvider get(Object... in) {
+                URL pageUrl = (URL) in[0];
+                HashMap<String, Object> headers = new HashMap<String, Object>(1);
+                if (pageUrl.toString().contains("page=2")) {
+                    return new HttpStubProvider(pageUrl, new HeaderAndBody(
+                            "[{\"id\":3,\"name\":\"c\"}]".getBytes(), headers));
+                }
+                headers.put("Link", "<http://server.com/context/?page=2>; rel=\"next\"");
+                return new HttpStubProvider(pageUrl, new HeaderAndBody(
+                        "[{\"id\":1,\"name\":\"a\"},{\"id\":2,\"name\":\"b\"}]".getBytes(), headers));
+            }
+        });
+
+        ReadFilter filter = new ReadFilter();
+        restRunner.getResponseCache().put(restRunner.getReadKey(filter),
+                new HeaderAndBody("[{\"id\":9,\"name\":\"x\"}]".getBytes(), new HashMap<String, Object>()), 0);
+
+        List<Integer> ids = new ArrayList<Integer>();
+        Iterator<Data> iterator = dataPipe.iterate(filter);
+        while (iterator.hasNext()) {
+            ids.add(iterator.next().getId());
+        }
+
+        assertEquals(Arrays.asList(1, 2, 3), ids);
+    }
+
     @Test
     public void testBuildPagedResultsFromHeaders() throws Exception {
         PageConfig pageConfig = new PageConfig();
@@ -642,7 +691,7 @@ public class RestAdapterTest {
         });
         latch.await(500, TimeUnit.MILLISECONDS);
 
-        verify(factory).get(Mockito.argThat(new ObjectVarArgsMatcher(UrlUtils.appendToBaseURL(url, "1"), 60000)));
+        verify(factory).get(Mockito.argThat(new ObjectVarArgsMatcher(UrlUtils.appendToBaseURL(url, "1"), new Timeouts(Timeouts.DEFAULT_TIMEOUT, Timeouts.DEFAULT_TIMEOUT, 0))));
     }
 
     private <T> List<T> runRead(Pipe<T> restPipe) throws InterruptedException {
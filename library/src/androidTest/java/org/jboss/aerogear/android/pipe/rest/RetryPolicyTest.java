@@ -0,0 +1,196 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.jboss.aerogear.android.pipe.http.HttpException;
+import org.jboss.aerogear.android.pipe.http.RequestCancellation;
+import org.jboss.aerogear.android.pipe.http.Timeouts;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class RetryPolicyTest {
+
+    @Test
+    public void retriesUnavailableUntilSuccess() {
+        RetryPolicy policy = new RetryPolicy().backoff(0, 0);
+        FailingCall call = new FailingCall(2, new HttpException(new byte[0], 503));
+
+        assertEquals("done", policy.execute(call));
+        assertEquals(3, call.attempts.get());
+        assertEquals(3, policy.getAttemptCount());
+        assertEquals(2, policy.getRetryCount());
+        assertEquals(0, policy.getGiveUpCount());
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() {
+        RetryPolicy policy = new RetryPolicy().backoff(0, 0);
+        HttpException notFound = new HttpException(new byte[0], 404);
+        FailingCall call = new FailingCall(5, notFound);
+
+        try {
+            policy.execute(call);
+            fail("Expected HttpException");
+        } catch (HttpException e) {
+            assertSame(notFound, e);
+        }
+        assertEquals(1, call.attempts.get());
+        assertEquals(0, policy.getGiveUpCount());
+    }
+
+    @Test
+    public void retriesWrappedSocketTimeoutsAndGivesUp() {
+        RetryPolicy policy = new RetryPolicy().backoff(0, 0).maxAttempts(2);
+        FailingCall call = new FailingCall(5, new RuntimeException(new SocketTimeoutException()));
+
+        try {
+            policy.execute(call);
+            fail("Expected RuntimeException");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+        assertEquals(2, call.attempts.get());
+        assertEquals(1, policy.getGiveUpCount());
+    }
+
+    @Test
+    public void emptyBudgetStopsRetries() {
+        RetryPolicy policy = new RetryPolicy().backoff(0, 0).budget(1, 0);
+
+        policy.execute(new FailingCall(1, new HttpException(new byte[0], 503)));
+        assertEquals(0.0, policy.getBudgetTokens(), 0.0001);
+
+        FailingCall call = new FailingCall(1, new HttpException(new byte[0], 503));
+        try {
+            policy.execute(call);
+            fail("Expected HttpException");
+        } catch (HttpException expected) {
+            assertEquals(1, call.attempts.get());
+            assertEquals(1, policy.getGiveUpCount());
+        }
+    }
+
+    @Test
+    public void honorsRetryAfter() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Retry-After", "120");
+
+        RetryPolicy policy = new RetryPolicy().backoff(0, 0);
+        FailingCall call = new FailingCall(1, new HttpException(new byte[0], 503, headers));
+        try {
+            policy.execute(call);
+            fail("Expected HttpException");
+        } catch (HttpException expected) {
+            assertEquals(1, call.attempts.get());
+            assertEquals(1, policy.getGiveUpCount());
+        }
+
+        assertEquals(120000, RetryPolicy.getRetryAfterMillis(headers));
+        headers.put("Retry-After", "Wed, 21 Oct 2015 07:28:00 GMT");
+        assertEquals(0, RetryPolicy.getRetryAfterMillis(headers));
+        assertEquals(-1, RetryPolicy.getRetryAfterMillis(new HashMap<String, String>()));
+    }
+
+    @Test
+    public void givesUpWhenTheDelayPassesTheDeadline() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Retry-After", "5");
+
+        RetryPolicy policy = new RetryPolicy().backoff(0, 0);
+        FailingCall call = new FailingCall(1, new HttpException(new byte[0], 503, headers));
+        RequestCancellation operation = new RequestCancellation();
+        operation.setTimeouts(new Timeouts(0, 0, 1000));
+        RequestCancellation previous = operation.bind();
+        try {
+            policy.execute(call);
+            fail("Expected HttpException");
+        } catch (HttpException expected) {
+            assertEquals(1, call.attempts.get());
+            assertEquals(1, policy.getGiveUpCount());
+        } finally {
+            RequestCancellation.unbind(previous);
+            operation.finish();
+        }
+    }
+
+    @Test
+    public void cancellingEndsTheWaitBeforeARetry() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Retry-After", "5");
+
+        RetryPolicy policy = new RetryPolicy().backoff(0, 0);
+        FailingCall call = new FailingCall(1, new HttpException(new byte[0], 503, headers));
+        final RequestCancellation operation = new RequestCancellation();
+        RequestCancellation previous = operation.bind();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignore) {
+                }
+                operation.cancel();
+            }
+        }).start();
+        long start = System.currentTimeMillis();
+        try {
+            policy.execute(call);
+            fail("Expected CancellationException");
+        } catch (CancellationException expected) {
+            assertTrue(System.currentTimeMillis() - start < 4000);
+            assertEquals(1, call.attempts.get());
+        } finally {
+            RequestCancellation.unbind(previous);
+        }
+    }
+
+    private static class FailingCall implements RetryPolicy.Call<String> {
+
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final int failures;
+        private final RuntimeException failure;
+
+        FailingCall(int failures, RuntimeException failure) {
+            this.failures = failures;
+            this.failure = failure;
+        }
+
+        @Override
+        public String call() {
+            if (attempts.incrementAndGet() <= failures) {
+                throw failure;
+            }
+            return "done";
+        }
+
+    }
+
+}
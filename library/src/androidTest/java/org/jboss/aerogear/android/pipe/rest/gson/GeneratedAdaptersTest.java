@@ -0,0 +1,145 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest.gson;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.jboss.aerogear.android.core.RecordId;
+import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
+import org.jboss.aerogear.android.pipe.util.ClassMetadata;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+@RunWith(AndroidJUnit4.class)
+public class GeneratedAdaptersTest {
+
+    @Test
+    public void generatedAdapterIsFound() {
+        Gson gson = new GsonBuilder().registerTypeAdapterFactory(GeneratedAdapters.FACTORY).create();
+
+        Assert.assertEquals(GeneratedAdapters.getAdapterName(Car.class), gson.getAdapter(Car.class).getClass().getName());
+        Assert.assertEquals("org.jboss.aerogear.android.pipe.rest.gson.GeneratedAdaptersTest_Car_GsonTypeAdapter",
+                GeneratedAdapters.getAdapterName(Car.class));
+        Assert.assertNull(GeneratedAdapters.FACTORY.create(gson, TypeToken.get(String.class)));
+    }
+
+    @Test
+    public void configurationOfTheGsonWinsOverGeneratedAdapters() {
+        TypeAdapter<Car> custom = new TypeAdapter<Car>() {
+            @Override
+            public void write(JsonWriter out, Car value) throws IOException {
+                out.value(value.name);
+            }
+
+            @Override
+            public Car read(JsonReader in) throws IOException {
+                Car car = new Car();
+                car.name = in.nextString();
+                return car;
+            }
+        };
+        Gson registered = new GsonBuilder()
+                .registerTypeAdapter(Car.class, custom)
+                .registerTypeAdapterFactory(GeneratedAdapters.FACTORY)
+                .create();
+        Assert.assertSame(custom, registered.getAdapter(Car.class));
+
+        Gson named = new GsonBuilder()
+                .registerTypeAdapterFactory(GeneratedAdapters.FACTORY)
+                .setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE)
+                .create();
+        Car car = new Car();
+        car.name = "car";
+        Assert.assertTrue(named.toJson(car).contains("\"Name\":\"car\""));
+    }
+
+    @Test
+    public void generatedAdapterWritesLikeGson() {
+        Car car = new Car();
+        car.setId(7L);
+        car.name = "car";
+        car.doors = 3;
+        car.modelYear = 2017;
+        car.tags = Arrays.asList("red", "fast");
+
+        String json = new String(new GsonRequestBuilder<Car>().getBody(car));
+
+        Assert.assertEquals(new Gson().toJsonTree(car), new Gson().fromJson(json, JsonElement.class));
+    }
+
+    @Test
+    public void generatedAdapterReads() {
+        String json = "[{\"id\":1,\"name\":\"one\",\"year\":1999,\"tags\":[\"a\"],\"unknown\":{\"x\":1}},{\"id\":2,\"doors\":null}]";
+        HeaderAndBody response = new HeaderAndBody(json.getBytes(), new HashMap<String, Object>());
+
+        List<Car> cars = new GsonResponseParser<Car>().handleResponse(response, Car.class);
+
+        Assert.assertEquals(2, cars.size());
+        Assert.assertEquals(Long.valueOf(1), cars.get(0).getId());
+        Assert.assertEquals("one", cars.get(0).name);
+        Assert.assertEquals(Integer.valueOf(1999), cars.get(0).modelYear);
+        Assert.assertEquals(Arrays.asList("a"), cars.get(0).tags);
+        Assert.assertEquals(0, cars.get(1).doors);
+    }
+
+    @Test
+    public void recordIdIsReadByGeneratedReader() {
+        Car car = new Car();
+        car.setId(42L);
+
+        Assert.assertNotNull(GeneratedAdapters.getRecordIdReader(Car.class));
+        Assert.assertEquals("42", ClassMetadata.forClass(Car.class).getIdValue(car));
+    }
+
+    @GenerateTypeAdapter
+    public static class Car {
+
+        @RecordId
+        private Long id;
+        String name;
+        int doors;
+        @SerializedName(value = "model_year", alternate = "year")
+        Integer modelYear;
+        List<String> tags;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+    }
+
+}
@@ -42,4 +42,40 @@ public class GsonResponseParserTest {
         Assert.assertEquals(0, response.size());
     }
 
+    @Test
+    public void testStreamingReadsDataRoot() {
+        String jsonResponse = "{\"meta\":{\"skip\":[1,{\"id\":9}]},\"result\":{\"data\":["
+                + "{\"id\":1,\"name\":\"one\"},{\"id\":2,\"name\":\"two\"}]}}";
+        HeaderAndBody httpResponse = new HeaderAndBody(jsonResponse.getBytes(), new HashMap<String, Object>());
+
+        GsonResponseParser<Data> parser = new GsonResponseParser<Data>();
+        parser.getMarshallingConfig().setDataRoot("result.data");
+        List<Data> response = parser.handleResponse(httpResponse, Data.class);
+
+        Assert.assertEquals(2, response.size());
+        Assert.assertEquals(Integer.valueOf(1), response.get(0).getId());
+        Assert.assertEquals("two", response.get(1).getName());
+    }
+
+    @Test
+    public void testStreamingMatchesTreeParsing() {
+        String[] dataRoots = { "", "result", "result.missing" };
+        String jsonResponse = "{\"result\":{\"id\":3,\"name\":\"three\"},\"id\":4}";
+        HeaderAndBody httpResponse = new HeaderAndBody(jsonResponse.getBytes(), new HashMap<String, Object>());
+
+        for (String dataRoot : dataRoots) {
+            GsonResponseParser<Data> streamingParser = new GsonResponseParser<Data>();
+            streamingParser.getMarshallingConfig().setDataRoot(dataRoot);
+            GsonResponseParser<Data> treeParser = new GsonResponseParser<Data>();
+            treeParser.setStreaming(false);
+            treeParser.getMarshallingConfig().setDataRoot(dataRoot);
+
+            List<Data> streamed = streamingParser.handleResponse(httpResponse, Data.class);
+            List<Data> parsed = treeParser.handleResponse(httpResponse, Data.class);
+
+            Assert.assertEquals(parsed.size(), streamed.size());
+            Assert.assertEquals(parsed.get(0).getId(), streamed.get(0).getId());
+        }
+    }
+
 }
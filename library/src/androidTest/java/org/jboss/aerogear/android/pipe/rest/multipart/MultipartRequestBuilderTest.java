@@ -0,0 +1,110 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest.multipart;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.jboss.aerogear.android.pipe.http.RequestBody;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class MultipartRequestBuilderTest {
+
+    @Test
+    public void streamingBodyMatchesBufferedBody() throws Exception {
+        File file = File.createTempFile("upload", ".bin");
+        try {
+            byte[] content = new byte[200 * 1024];
+            for (int i = 0; i < content.length; i++) {
+                content[i] = (byte) i;
+            }
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(content);
+            out.close();
+
+            Upload upload = new Upload("upload", file);
+            MultipartRequestBuilder<Upload> builder = new MultipartRequestBuilder<Upload>();
+
+            RequestBody streamingBody = builder.getStreamingBody(upload);
+            ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+            streamingBody.writeTo(streamed);
+
+            assertEquals(streamed.size(), streamingBody.getContentLength());
+            assertArrayEquals(builder.getBody(upload), streamed.toByteArray());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void streamsHaveUnknownLength() throws Exception {
+        TypeAndStream stream = new TypeAndStream("text/plain", "stream.txt",
+                new ByteArrayInputStream("content".getBytes()));
+        MultipartRequestBuilder<StreamUpload> builder = new MultipartRequestBuilder<StreamUpload>();
+
+        RequestBody body = builder.getStreamingBody(new StreamUpload(stream));
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        body.writeTo(streamed);
+
+        assertEquals(-1, body.getContentLength());
+        assertEquals(true, new String(streamed.toByteArray()).contains("content"));
+    }
+
+    public static class Upload {
+
+        private final String name;
+        private final File file;
+
+        public Upload(String name, File file) {
+            this.name = name;
+            this.file = file;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+    }
+
+    public static class StreamUpload {
+
+        private final TypeAndStream stream;
+
+        public StreamUpload(TypeAndStream stream) {
+            this.stream = stream;
+        }
+
+        public TypeAndStream getStream() {
+            return stream;
+        }
+
+    }
+
+}
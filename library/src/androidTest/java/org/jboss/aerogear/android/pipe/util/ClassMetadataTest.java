@@ -0,0 +1,112 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.util;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.aerogear.android.core.RecordId;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(AndroidJUnit4.class)
+public class ClassMetadataTest {
+
+    @Test
+    public void metadataIsComputedOnce() {
+        assertSame(ClassMetadata.forClass(Item.class), ClassMetadata.forClass(Item.class));
+        assertSame(ClassMetadata.forClass(Item.class).getIdAccessor(), ClassMetadata.forClass(Item.class).getIdAccessor());
+    }
+
+    @Test
+    public void idIsReadThroughGetter() {
+        Item item = new Item();
+        assertNull(ClassMetadata.forClass(Item.class).getIdValue(item));
+
+        item.id = 7L;
+        assertEquals("id-7", ClassMetadata.forClass(Item.class).getIdValue(item));
+    }
+
+    @Test
+    public void propertiesWithoutGetterAreReadFromTheirField() {
+        Item item = new Item();
+        item.name = "name";
+
+        List<String> names = new ArrayList<String>();
+        for (ClassMetadata.Accessor accessor : ClassMetadata.forClass(Item.class).getProperties()) {
+            names.add(accessor.getFieldName());
+            if ("name".equals(accessor.getFieldName())) {
+                assertEquals("name", accessor.getValue(item));
+            }
+        }
+
+        assertEquals(2, names.size());
+        assertEquals(true, names.contains("id"));
+        assertEquals(true, names.contains("name"));
+    }
+
+    @Test
+    public void inheritedIdIsRead() {
+        SubItem item = new SubItem();
+        ((Item) item).id = 7L;
+        assertEquals("id-7", ClassMetadata.forClass(SubItem.class).getIdValue(item));
+
+        Child child = new Child();
+        ((Parent) child).key = "key";
+        assertEquals("key", ClassMetadata.forClass(Child.class).getIdValue(child));
+    }
+
+    public static class Item {
+
+        private static final String PREFIX = "id-";
+
+        @RecordId
+        private Long id;
+        private String name;
+
+        public String getId() {
+            return id == null ? null : PREFIX + id;
+        }
+
+    }
+
+    public static class SubItem extends Item {
+
+        private String description;
+
+    }
+
+    public static class Parent {
+
+        @RecordId
+        private String key;
+
+    }
+
+    public static class Child extends Parent {
+
+        private String name;
+
+    }
+
+}
@@ -0,0 +1,172 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.util;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.jboss.aerogear.android.pipe.http.DeadlineExceededException;
+import org.jboss.aerogear.android.pipe.http.RequestCancellation;
+import org.jboss.aerogear.android.pipe.http.Timeouts;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class SingleFlightTest {
+
+    @Test
+    public void concurrentCallsShareOneExecution() throws Exception {
+        final SingleFlight<Object> singleFlight = new SingleFlight<Object>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        final Object value = new Object();
+        final SingleFlight.Call<Object> call = new SingleFlight.Call<Object>() {
+            @Override
+            public Object call() {
+                executions.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return value;
+            }
+        };
+
+        final AtomicReference<Object> leaderResult = new AtomicReference<Object>();
+        Thread leader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                leaderResult.set(singleFlight.execute("key", call));
+            }
+        });
+        leader.start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        final AtomicReference<Object> followerResult = new AtomicReference<Object>();
+        Thread follower = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                followerResult.set(singleFlight.execute("key", call));
+            }
+        });
+        follower.start();
+        while (singleFlight.getCoalescedCount() == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        leader.join(10000);
+        follower.join(10000);
+
+        assertEquals(1, executions.get());
+        assertSame(value, leaderResult.get());
+        assertSame(value, followerResult.get());
+        assertEquals(1, singleFlight.getExecutionCount());
+        assertEquals(1, singleFlight.getCoalescedCount());
+    }
+
+    @Test
+    public void sequentialCallsExecuteAgain() {
+        SingleFlight<String> singleFlight = new SingleFlight<String>();
+        SingleFlight.Call<String> call = new SingleFlight.Call<String>() {
+            @Override
+            public String call() {
+                return "result";
+            }
+        };
+
+        singleFlight.execute("key", call);
+        singleFlight.execute("key", call);
+
+        assertEquals(2, singleFlight.getExecutionCount());
+        assertEquals(0, singleFlight.getCoalescedCount());
+    }
+
+    @Test
+    public void failuresArePropagated() {
+        SingleFlight<String> singleFlight = new SingleFlight<String>();
+        try {
+            singleFlight.execute("key", new SingleFlight.Call<String>() {
+                @Override
+                public String call() {
+                    throw new IllegalStateException("failed");
+                }
+            });
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            assertEquals("failed", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void waitingCallersStopAtTheirOwnDeadline() throws Exception {
+        final SingleFlight<String> singleFlight = new SingleFlight<String>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final SingleFlight.Call<String> call = new SingleFlight.Call<String>() {
+            @Override
+            public String call() {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return "result";
+            }
+        };
+
+        final AtomicReference<String> leaderResult = new AtomicReference<String>();
+        Thread leader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                leaderResult.set(singleFlight.execute("key", call));
+            }
+        });
+        leader.start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        RequestCancellation operation = new RequestCancellation();
+        operation.setTimeouts(new Timeouts(0, 0, 200));
+        RequestCancellation previous = operation.bind();
+        try {
+            singleFlight.execute("key", call);
+            fail("Expected DeadlineExceededException");
+        } catch (DeadlineExceededException expected) {
+            assertEquals(1, singleFlight.getCoalescedCount());
+        } finally {
+            RequestCancellation.unbind(previous);
+            operation.finish();
+        }
+
+        release.countDown();
+        leader.join(10000);
+        assertEquals("result", leaderResult.get());
+    }
+
+}
@@ -0,0 +1,131 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of a batch operation such as {@link Pipe#saveAll}. Every item
+ * of the batch either succeeded with a result or failed with an exception,
+ * items are indexed in the order they were passed to the operation.
+ *
+ * @param <R> the type of the result of a single item
+ */
+public final class BatchResult<R> {
+
+    private final List<R> results;
+    private final List<Exception> failures;
+
+    /**
+     * @param results the result of each item, null for failed items
+     * @param failures the failure of each item, null for successful items
+     *
+     * @throws IllegalArgumentException if the lists differ in size
+     */
+    public BatchResult(List<R> results, List<Exception> failures) {
+        if (results.size() != failures.size()) {
+            throw new IllegalArgumentException("results and failures must have the same size");
+        }
+        this.results = Collections.unmodifiableList(new ArrayList<R>(results));
+        this.failures = Collections.unmodifiableList(new ArrayList<Exception>(failures));
+    }
+
+    /**
+     * @return the number of items in the batch
+     */
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * @param index the index of an item
+     * @return true if the item succeeded
+     */
+    public boolean isSuccess(int index) {
+        return failures.get(index) == null;
+    }
+
+    /**
+     * @param index the index of an item
+     * @return the result of the item, null if it failed
+     */
+    public R getResult(int index) {
+        return results.get(index);
+    }
+
+    /**
+     * @param index the index of an item
+     * @return the failure of the item, null if it succeeded
+     */
+    public Exception getFailure(int index) {
+        return failures.get(index);
+    }
+
+    /**
+     * @return the results of all successful items in order
+     */
+    public List<R> getResults() {
+        List<R> successful = new ArrayList<R>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            if (isSuccess(i)) {
+                successful.add(results.get(i));
+            }
+        }
+        return successful;
+    }
+
+    /**
+     * @return the failures of all failed items keyed by their index
+     */
+    public Map<Integer, Exception> getFailures() {
+        Map<Integer, Exception> failed = new LinkedHashMap<Integer, Exception>();
+        for (int i = 0; i < failures.size(); i++) {
+            if (!isSuccess(i)) {
+                failed.put(i, failures.get(i));
+            }
+        }
+        return failed;
+    }
+
+    public int getSuccessCount() {
+        return results.size() - getFailureCount();
+    }
+
+    public int getFailureCount() {
+        int count = 0;
+        for (Exception failure : failures) {
+            if (failure != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public boolean hasFailures() {
+        return getFailureCount() > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{" + "size=" + size() + ", failures=" + getFailureCount() + '}';
+    }
+
+}
@@ -17,10 +17,12 @@
 package org.jboss.aerogear.android.pipe;
 
 import java.net.URL;
+import java.util.Collection;
 import java.util.List;
 
 import org.jboss.aerogear.android.core.Callback;
 import org.jboss.aerogear.android.core.ReadFilter;
+import org.jboss.aerogear.android.pipe.paging.PageIterator;
 
 /**
  * A {@link Pipe} represents a server connection. An object of this class is responsible to communicate
@@ -42,39 +44,88 @@ public interface Pipe<T> {
      *
      * @param id representing the ‘id’ of the object
      * @param callback The callback for consuming the result from the {@link Pipe} invocation.
+     * @return a handle which cancels the operation
      */
-    void read(String id, Callback<T> callback);
+    RequestHandle read(String id, Callback<T> callback);
 
     /**
      * Sends a signal to the Pipe to read its data and return it via the callback.
      * 
      * @param callback The callback for consuming the result from the {@link Pipe} invocation.
+     * @return a handle which cancels the operation
      */
-    void read(Callback<List<T>> callback);
+    RequestHandle read(Callback<List<T>> callback);
 
     /**
      * Reads all the data from the underlying server connection.
      *
      * @param filter a {@link ReadFilter} for performing pagination and querying.
      * @param callback The callback for consuming the result from the {@link Pipe} invocation.
+     * @return a handle which cancels the operation
      */
-    void read(ReadFilter filter, Callback<List<T>> callback);
+    RequestHandle read(ReadFilter filter, Callback<List<T>> callback);
 
     /**
      * Saves or updates a given object on the server.
      * 
      * @param item the item to save or update
      * @param callback The callback for consuming the result from the {@link Pipe} invocation.
+     * @return a handle which cancels the operation
      */
-    void save(T item, Callback<T> callback);
+    RequestHandle save(T item, Callback<T> callback);
 
     /**
      * Removes an object from the underlying server connection. The given key argument is used as the objects ID.
      * 
      * @param id representing the ‘id’ of the object to be removed
      * @param callback The callback for consuming the result from the {@link Pipe} invocation.
+     * @return a handle which cancels the operation
      */
-    void remove(String id, Callback<Void> callback);
+    RequestHandle remove(String id, Callback<Void> callback);
+
+    /**
+     * Saves or updates a number of objects on the server. Items are saved
+     * concurrently; the callback receives the outcome of every item once all
+     * of them are done, even if some of them failed.
+     *
+     * @param items the items to save or update
+     * @param callback The callback for consuming the result from the {@link Pipe} invocation.
+     * @return a handle which cancels the operation
+     */
+    RequestHandle saveAll(Collection<T> items, Callback<BatchResult<T>> callback);
+
+    /**
+     * Removes a number of objects from the underlying server connection.
+     * Items are removed concurrently; the callback receives the outcome of
+     * every id once all of them are done, even if some of them failed.
+     *
+     * @param ids the ids of the objects to be removed
+     * @param callback The callback for consuming the result from the {@link Pipe} invocation.
+     * @return a handle which cancels the operation
+     */
+    RequestHandle removeAll(Collection<String> ids, Callback<BatchResult<String>> callback);
+
+    /**
+     * Iterates over the items of all pages of the collection, starting with
+     * the page of filter. Pages are read lazily while the items are
+     * consumed, and only a bounded number of them is held at once. The
+     * iterator blocks while it waits for a page.
+     *
+     * @param filter the filter of the first page, may be null
+     * @return an iterator over the items of all pages
+     */
+    PageIterator<T> iterate(ReadFilter filter);
+
+    /**
+     * Reads all pages of an offset addressed collection, requesting a
+     * bounded number of pages at once, and passes all their items in order
+     * to the callback.
+     *
+     * @param filter the filter of the first page, may be null
+     * @param callback The callback for consuming the result from the {@link Pipe} invocation.
+     * @return a handle which cancels the operation
+     */
+    RequestHandle readAll(ReadFilter filter, Callback<List<T>> callback);
 
     /**
      * @return the class which travels on this pipe
@@ -20,11 +20,16 @@ import android.app.Activity;
 import android.app.Fragment;
 import android.content.Context;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.jboss.aerogear.android.core.ConfigurationProvider;
 import org.jboss.aerogear.android.pipe.loader.LoaderAdapter;
+import org.jboss.aerogear.android.pipe.metrics.MetricsReporter;
+import org.jboss.aerogear.android.pipe.metrics.PipeMetrics;
+import org.jboss.aerogear.android.pipe.metrics.PipeMetricsSnapshot;
 import org.jboss.aerogear.android.pipe.rest.RestfulPipeConfiguration;
 import org.jboss.aerogear.android.pipe.rest.RestfulPipeConfigurationProvider;
 
@@ -36,12 +41,19 @@ public class PipeManager {
 
     private static Map<String, Pipe<?>> pipes = new HashMap<String, Pipe<?>>();
 
+    private static final Map<String, PipeMetrics> metrics = new HashMap<String, PipeMetrics>();
+
+    private static final List<MetricsReporter> metricsReporters = new CopyOnWriteArrayList<MetricsReporter>();
+
     private static Map<Class<? extends PipeConfiguration<?>>, ConfigurationProvider<?>> configurationProviderMap = new HashMap<Class<? extends PipeConfiguration<?>>, ConfigurationProvider<?>>();
 
     private static OnPipeCreatedListener onPipeCreatedListener = new OnPipeCreatedListener() {
         @Override
         public void onPipeCreated(PipeConfiguration<?> configuration, Pipe<?> pipe) {
             pipes.put(configuration.getName(), pipe);
+            if (configuration instanceof RestfulPipeConfiguration) {
+                registerMetrics(configuration.getName(), ((RestfulPipeConfiguration) configuration).getMetrics());
+            }
         }
     };
 
@@ -156,4 +168,78 @@ public class PipeManager {
         return adapter;
     }
 
+    /**
+     * Registers the metrics of a pipe. Pipes configured with a
+     * {@link RestfulPipeConfiguration} are registered when they are created.
+     *
+     * @param name the name of the pipe
+     * @param pipeMetrics the metrics of the pipe
+     */
+    public static void registerMetrics(String name, PipeMetrics pipeMetrics) {
+        synchronized (metrics) {
+            metrics.put(name, pipeMetrics);
+        }
+    }
+
+    /**
+     * Fetches the metrics of a named pipe
+     *
+     * @param name the name of the Pipe given in {@link PipeManager#config(String, Class) }
+     *
+     * @return the metrics of the named pipe or null
+     */
+    public static PipeMetrics getMetrics(String name) {
+        synchronized (metrics) {
+            return metrics.get(name);
+        }
+    }
+
+    /**
+     * @return a snapshot of the metrics of every registered pipe
+     */
+    public static List<PipeMetricsSnapshot> getMetricsSnapshots() {
+        List<PipeMetrics> registered;
+        synchronized (metrics) {
+            registered = new ArrayList<PipeMetrics>(metrics.values());
+        }
+
+        List<PipeMetricsSnapshot> snapshots = new ArrayList<PipeMetricsSnapshot>(registered.size());
+        for (PipeMetrics pipeMetrics : registered) {
+            snapshots.add(pipeMetrics.snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Adds a reporter which is passed the metrics of all pipes whenever
+     * {@link #reportMetrics()} is called.
+     *
+     * @param reporter the reporter to add
+     */
+    public static void addMetricsReporter(MetricsReporter reporter) {
+        metricsReporters.add(reporter);
+    }
+
+    /**
+     * @param reporter the reporter to remove
+     */
+    public static void removeMetricsReporter(MetricsReporter reporter) {
+        metricsReporters.remove(reporter);
+    }
+
+    /**
+     * Takes a snapshot of the metrics of every registered pipe and passes it
+     * to every reporter on the calling thread.
+     */
+    public static void reportMetrics() {
+        if (metricsReporters.isEmpty()) {
+            return;
+        }
+
+        List<PipeMetricsSnapshot> snapshots = getMetricsSnapshots();
+        for (MetricsReporter reporter : metricsReporters) {
+            reporter.report(snapshots);
+        }
+    }
+
 }
@@ -0,0 +1,41 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe;
+
+/**
+ * A handle to an operation of a {@link Pipe}, which lets the operation be
+ * cancelled when its result is no longer needed, for instance because the
+ * screen which asked for it was left.
+ *
+ * The callback of a cancelled operation is not called.
+ */
+public interface RequestHandle {
+
+    /**
+     * Cancels the operation. A queued operation is removed from its queue, a
+     * running operation has its HTTP transfers aborted and its response is
+     * not parsed. Cancelling an operation which is done or already cancelled
+     * does nothing.
+     */
+    void cancel();
+
+    /**
+     * @return true if {@link #cancel()} was called
+     */
+    boolean isCancelled();
+
+}
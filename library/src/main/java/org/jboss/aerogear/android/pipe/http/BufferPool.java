@@ -0,0 +1,184 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.http;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread safe pool of scratch buffers used while reading response
+ * bodies.
+ *
+ * Buffers are handed out in chunks of a fixed size. Released chunks are kept
+ * up to a maximum count and reused, chunks beyond that are left to the
+ * garbage collector. The pool also counts every array the read path
+ * allocates so that allocation pressure can be observed.
+ *
+ * A single default pool is shared by every {@link HttpRestProvider} unless
+ * one is created with its own instance. The default pool keeps
+ * {@link #DEFAULT_MAX_POOLED_CHUNKS} chunks of {@link #DEFAULT_CHUNK_SIZE},
+ * which covers bodies of up to 256 KB; the chunks of larger bodies are
+ * allocated and left to the garbage collector. Apps which mostly read bodies
+ * of several megabytes should create providers with a larger pool, keeping
+ * in mind that pooled chunks stay allocated.
+ */
+public final class BufferPool {
+
+    /**
+     * The default size of a pooled chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * The default number of chunks kept for reuse.
+     */
+    public static final int DEFAULT_MAX_POOLED_CHUNKS = 16;
+
+    private static final BufferPool DEFAULT = new BufferPool(DEFAULT_CHUNK_SIZE, DEFAULT_MAX_POOLED_CHUNKS);
+
+    private final int chunkSize;
+    private final int maxPooledChunks;
+    private final Deque<byte[]> chunks = new ArrayDeque<byte[]>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong allocationCount = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    /**
+     * @param chunkSize the size of each pooled chunk in bytes. Must be
+     *            positive.
+     * @param maxPooledChunks the maximum number of chunks kept for reuse.
+     *            Must not be negative.
+     *
+     * @throws IllegalArgumentException if a value is out of range
+     */
+    public BufferPool(int chunkSize, int maxPooledChunks) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        if (maxPooledChunks < 0) {
+            throw new IllegalArgumentException("maxPooledChunks must not be negative");
+        }
+        this.chunkSize = chunkSize;
+        this.maxPooledChunks = maxPooledChunks;
+    }
+
+    /**
+     * @return the pool shared by all providers which do not use their own
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Takes a chunk from the pool, allocating one if the pool is empty. The
+     * content of the returned chunk is undefined.
+     *
+     * @return a chunk of {@link #getChunkSize()} bytes
+     */
+    public byte[] acquire() {
+        byte[] chunk;
+        synchronized (chunks) {
+            chunk = chunks.pollLast();
+        }
+        if (chunk != null) {
+            hitCount.incrementAndGet();
+            return chunk;
+        }
+        missCount.incrementAndGet();
+        return allocate(chunkSize);
+    }
+
+    /**
+     * Returns a chunk to the pool. Arrays which did not come from
+     * {@link #acquire()} are ignored.
+     *
+     * @param chunk a chunk which is no longer used
+     */
+    public void release(byte[] chunk) {
+        if (chunk == null || chunk.length != chunkSize) {
+            return;
+        }
+        synchronized (chunks) {
+            if (chunks.size() < maxPooledChunks) {
+                chunks.addLast(chunk);
+            }
+        }
+    }
+
+    /**
+     * Allocates an array which is handed out to the caller and never
+     * returned to the pool, such as the final body of a response.
+     *
+     * @param size the size of the array
+     * @return a new array of size bytes
+     */
+    public byte[] allocate(int size) {
+        allocationCount.incrementAndGet();
+        allocatedBytes.addAndGet(size);
+        return new byte[size];
+    }
+
+    /**
+     * @return the number of chunks currently kept for reuse
+     */
+    public int getPooledCount() {
+        synchronized (chunks) {
+            return chunks.size();
+        }
+    }
+
+    /**
+     * @return the number of times a pooled chunk was reused
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of times a chunk had to be allocated
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of arrays allocated through this pool, chunks
+     *         included
+     */
+    public long getAllocationCount() {
+        return allocationCount.get();
+    }
+
+    /**
+     * @return the total size of all arrays allocated through this pool
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getMaxPooledChunks() {
+        return maxPooledChunks;
+    }
+
+}
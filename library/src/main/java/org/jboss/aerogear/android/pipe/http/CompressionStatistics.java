@@ -0,0 +1,113 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes a pipe sends and receives before and after compression.
+ *
+ * Every request and response is recorded, compressed or not, so the ratio of
+ * the sent to the original sizes shows what compression saves.
+ */
+public final class CompressionStatistics {
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong compressedRequestCount = new AtomicLong();
+    private final AtomicLong requestBytesBeforeCompression = new AtomicLong();
+    private final AtomicLong requestBytesSent = new AtomicLong();
+
+    private final AtomicLong responseCount = new AtomicLong();
+    private final AtomicLong compressedResponseCount = new AtomicLong();
+    private final AtomicLong responseBytesReceived = new AtomicLong();
+    private final AtomicLong responseBytesDecoded = new AtomicLong();
+
+    void recordRequest(long originalBytes, long sentBytes, boolean compressed) {
+        requestCount.incrementAndGet();
+        if (compressed) {
+            compressedRequestCount.incrementAndGet();
+        }
+        requestBytesBeforeCompression.addAndGet(originalBytes);
+        requestBytesSent.addAndGet(sentBytes);
+    }
+
+    void recordResponse(long receivedBytes, long decodedBytes, boolean compressed) {
+        responseCount.incrementAndGet();
+        if (compressed) {
+            compressedResponseCount.incrementAndGet();
+        }
+        responseBytesReceived.addAndGet(receivedBytes);
+        responseBytesDecoded.addAndGet(decodedBytes);
+    }
+
+    /**
+     * @return the number of request bodies sent
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of request bodies which were sent compressed
+     */
+    public long getCompressedRequestCount() {
+        return compressedRequestCount.get();
+    }
+
+    /**
+     * @return the total size of all request bodies before compression
+     */
+    public long getRequestBytesBeforeCompression() {
+        return requestBytesBeforeCompression.get();
+    }
+
+    /**
+     * @return the total size of all request bodies as sent
+     */
+    public long getRequestBytesSent() {
+        return requestBytesSent.get();
+    }
+
+    /**
+     * @return the number of response bodies read
+     */
+    public long getResponseCount() {
+        return responseCount.get();
+    }
+
+    /**
+     * @return the number of response bodies which were received compressed
+     */
+    public long getCompressedResponseCount() {
+        return compressedResponseCount.get();
+    }
+
+    /**
+     * @return the total size of all response bodies as received
+     */
+    public long getResponseBytesReceived() {
+        return responseBytesReceived.get();
+    }
+
+    /**
+     * @return the total size of all response bodies after decompression
+     */
+    public long getResponseBytesDecoded() {
+        return responseBytesDecoded.get();
+    }
+
+}
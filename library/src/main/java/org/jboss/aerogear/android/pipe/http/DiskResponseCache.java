@@ -0,0 +1,585 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.http;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.util.Log;
+
+/**
+ * Keeps the responses of reads in a directory, so they can be shown before
+ * the network answers, for example right after the app starts.
+ *
+ * Every response is a file of its own, named by the SHA-1 digest of its key
+ * so that no credential of a key is written to the disk. An index file lists
+ * the digest, size, and the time until which each response is fresh; it is
+ * memory mapped and read once, after which lookups never touch the disk.
+ * Freshness follows the Cache-Control max-age or Expires of a response, or a
+ * configured time to live if it has neither. Responses marked no-store are
+ * not kept, no-cache responses are kept but are never fresh, whatever else
+ * their Cache-Control says. Once the responses exceed the configured size
+ * the least recently used are deleted.
+ *
+ * The cache is best effort: a file which can not be read or written is
+ * logged and treated as missing.
+ */
+public final class DiskResponseCache {
+
+    private static final String TAG = DiskResponseCache.class.getSimpleName();
+
+    /**
+     * The default total size of the responses kept by a cache.
+     */
+    public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static final String INDEX = "index";
+    private static final int INDEX_VERSION = 2;
+    private static final String RESPONSE_SUFFIX = ".response";
+
+    private final File directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private boolean opened = false;
+    private long size = 0;
+
+    /**
+     * Serializes the writes of the index, which happen outside the lock of
+     * the entries. Taken before that lock, never while holding it.
+     */
+    private final Object indexLock = new Object();
+
+    private final AtomicLong freshHitCount = new AtomicLong();
+    private final AtomicLong staleHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * The directory is read when the cache is first used, not here.
+     *
+     * @param directory the directory of the cache, which no other cache may
+     *            use
+     * @param maxBytes the maximal total size of the cached responses. Must
+     *            be positive.
+     *
+     * @throws IllegalArgumentException if directory is null or maxBytes is
+     *             not positive
+     */
+    public DiskResponseCache(File directory, long maxBytes) {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory may not be null");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param key the authorized URL and authorization headers of a read
+     * @return the response cached for key whether it is fresh or not, null
+     *         if there is none
+     */
+    public HeaderAndBody get(String key) {
+        String digest = getDigest(key);
+        Entry entry;
+        synchronized (this) {
+            open();
+            entry = entries.get(digest);
+        }
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        HeaderAndBody response = readResponse(entry);
+        if (response == null) {
+            remove(key);
+            missCount.incrementAndGet();
+            return null;
+        }
+        if (entry.isFresh(System.currentTimeMillis())) {
+            freshHitCount.incrementAndGet();
+        } else {
+            staleHitCount.incrementAndGet();
+        }
+        return response;
+    }
+
+    /**
+     * @param key the authorized URL and authorization headers of a read
+     * @return true if a response is cached for key and has not expired
+     */
+    public boolean isFresh(String key) {
+        String digest = getDigest(key);
+        synchronized (this) {
+            open();
+            Entry entry = entries.get(digest);
+            return entry != null && entry.isFresh(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Caches response for key, replacing any response cached before.
+     *
+     * @param key the authorized URL and authorization headers of the read
+     * @param response the response of the read
+     * @param defaultTtl how long in milliseconds the response is fresh if it
+     *            has neither Cache-Control max-age nor Expires
+     */
+    public void put(String key, HeaderAndBody response, long defaultTtl) {
+        long now = System.currentTimeMillis();
+        Map<String, Object> headers = response.getHeaders();
+        if (!isStorable(headers)) {
+            remove(key);
+            return;
+        }
+
+        synchronized (this) {
+            // creates the directory and deletes stray files before writing
+            open();
+        }
+        Entry entry = new Entry(getDigest(key), getExpiresAt(headers, now, defaultTtl), 0);
+        File file = new File(directory, entry.getFileName());
+        File written;
+        try {
+            // concurrent puts of a key each write their own file
+            written = File.createTempFile(entry.digest, ".tmp", directory);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not cache the response of " + entry.digest, e);
+            return;
+        }
+        try {
+            entry.length = writeResponse(written, response);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not cache the response of " + entry.digest, e);
+            written.delete();
+            return;
+        }
+
+        synchronized (this) {
+            if (entry.length > maxBytes) {
+                written.delete();
+                if (!removeEntry(entry.digest)) {
+                    return;
+                }
+            } else if (!written.renameTo(file)) {
+                Log.w(TAG, "Could not replace " + file);
+                written.delete();
+                return;
+            } else {
+                Entry replaced = entries.put(entry.digest, entry);
+                if (replaced != null) {
+                    size -= replaced.length;
+                }
+                size += entry.length;
+                evict();
+            }
+        }
+        writeIndex();
+    }
+
+    /**
+     * Forgets the response cached for key.
+     *
+     * @param key the authorized URL and authorization headers of a read
+     */
+    public void remove(String key) {
+        String digest = getDigest(key);
+        synchronized (this) {
+            open();
+            if (!removeEntry(digest)) {
+                return;
+            }
+        }
+        writeIndex();
+    }
+
+    /**
+     * Forgets every cached response, for example when the user logs out.
+     */
+    public void clear() {
+        synchronized (this) {
+            open();
+            for (Entry entry : entries.values()) {
+                new File(directory, entry.getFileName()).delete();
+            }
+            entries.clear();
+            size = 0;
+        }
+        writeIndex();
+    }
+
+    /**
+     * @return the number of reads answered with a fresh response
+     */
+    public long getFreshHitCount() {
+        return freshHitCount.get();
+    }
+
+    /**
+     * @return the number of reads answered with an expired response
+     */
+    public long getStaleHitCount() {
+        return staleHitCount.get();
+    }
+
+    /**
+     * @return the number of reads with no cached response
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the total size of the cached responses
+     */
+    public synchronized long getSize() {
+        open();
+        return size;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return false if headers forbid keeping the response
+     */
+    static boolean isStorable(Map<String, Object> headers) {
+        String cacheControl = getHeader(headers, "Cache-Control");
+        return cacheControl == null || !cacheControl.toLowerCase(Locale.US).contains("no-store");
+    }
+
+    /**
+     * @param headers the headers of a response
+     * @param now the time the response was received
+     * @param defaultTtl how long the response is fresh if its headers do not
+     *            say
+     * @return the time until which the response is fresh
+     */
+    static long getExpiresAt(Map<String, Object> headers, long now, long defaultTtl) {
+        String cacheControl = getHeader(headers, "Cache-Control");
+        if (cacheControl != null) {
+            String maxAge = null;
+            for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-cache") || directive.startsWith("no-cache=")) {
+                    // wins over max-age wherever it appears
+                    return now;
+                }
+                if (directive.startsWith("max-age=") && maxAge == null) {
+                    maxAge = directive.substring("max-age=".length()).trim();
+                }
+            }
+            if (maxAge != null) {
+                try {
+                    return now + Math.max(0, Long.parseLong(maxAge) * 1000);
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "Ignoring invalid Cache-Control " + cacheControl);
+                    return now;
+                }
+            }
+        }
+
+        String expires = getHeader(headers, "Expires");
+        if (expires != null) {
+            long expiresAt = parseDate(expires);
+            if (expiresAt < 0) {
+                // an invalid Expires means already expired
+                return now;
+            }
+            // measured against the clock of the server
+            String date = getHeader(headers, "Date");
+            long sentAt = date == null ? -1 : parseDate(date);
+            return sentAt < 0 ? expiresAt : now + Math.max(0, expiresAt - sentAt);
+        }
+
+        return now + defaultTtl;
+    }
+
+    private static long parseDate(String value) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(value.trim()).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    private static String getHeader(Map<String, Object> headers, String name) {
+        for (Map.Entry<String, Object> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null) {
+                return String.valueOf(header.getValue());
+            }
+        }
+        return null;
+    }
+
+    private static String getDigest(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean removeEntry(String digest) {
+        Entry removed = entries.remove(digest);
+        if (removed == null) {
+            return false;
+        }
+        size -= removed.length;
+        new File(directory, removed.getFileName()).delete();
+        return true;
+    }
+
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (size > maxBytes && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            size -= entry.length;
+            new File(directory, entry.getFileName()).delete();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Reads the index once, deleting responses it does not list.
+     */
+    private void open() {
+        if (opened) {
+            return;
+        }
+        opened = true;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Could not create " + directory);
+            return;
+        }
+
+        File index = new File(directory, INDEX);
+        if (index.exists()) {
+            try {
+                readIndex(index);
+            } catch (Exception e) {
+                // a torn or foreign index, start over
+                Log.w(TAG, "Discarding the index of " + directory, e);
+                entries.clear();
+                size = 0;
+            }
+        }
+
+        Set<String> listed = new HashSet<String>();
+        for (Entry entry : entries.values()) {
+            listed.add(entry.getFileName());
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.getName().equals(INDEX) && !listed.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private void readIndex(File index) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(index, "r");
+        try {
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            if (buffer.getInt() != INDEX_VERSION) {
+                throw new IOException("Unknown index version");
+            }
+            int count = buffer.getInt();
+            List<Entry> read = new ArrayList<Entry>(count);
+            for (int i = 0; i < count; i++) {
+                String digest = getString(buffer);
+                long expiresAt = buffer.getLong();
+                long length = buffer.getLong();
+                read.add(new Entry(digest, expiresAt, length));
+            }
+            // the index lists entries least recently used first
+            for (Entry entry : read) {
+                if (new File(directory, entry.getFileName()).isFile()) {
+                    entries.put(entry.digest, entry);
+                    size += entry.length;
+                }
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Writes the index outside the lock of the entries. The entries are
+     * copied under the index lock, so a later copy is never overwritten by
+     * an earlier one.
+     */
+    private void writeIndex() {
+        synchronized (indexLock) {
+            List<Entry> listed;
+            synchronized (this) {
+                listed = new ArrayList<Entry>(entries.values());
+            }
+
+            File index = new File(directory, INDEX);
+            File written = new File(directory, INDEX + ".tmp");
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(written)));
+                try {
+                    out.writeInt(INDEX_VERSION);
+                    out.writeInt(listed.size());
+                    for (Entry entry : listed) {
+                        byte[] digest = entry.digest.getBytes("UTF-8");
+                        out.writeInt(digest.length);
+                        out.write(digest);
+                        out.writeLong(entry.expiresAt);
+                        out.writeLong(entry.length);
+                    }
+                } finally {
+                    out.close();
+                }
+                if (!written.renameTo(index)) {
+                    throw new IOException("Could not replace " + index);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Could not write the index of " + directory, e);
+                written.delete();
+            }
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Writes the headers and the body of response to file.
+     *
+     * @return the size of file
+     */
+    private static long writeResponse(File file, HeaderAndBody response) throws IOException {
+        List<Map.Entry<String, Object>> headers = new ArrayList<Map.Entry<String, Object>>();
+        for (Map.Entry<String, Object> header : response.getHeaders().entrySet()) {
+            // HttpURLConnection lists the status line under a null name
+            if (header.getKey() != null && header.getValue() != null) {
+                headers.add(header);
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(headers.size());
+            for (Map.Entry<String, Object> header : headers) {
+                out.writeUTF(header.getKey());
+                out.writeUTF(String.valueOf(header.getValue()));
+            }
+            ByteBuffer body = response.getBodyAsByteBuffer();
+            out.writeInt(body.remaining());
+            byte[] chunk = new byte[Math.min(8192, Math.max(1, body.remaining()))];
+            while (body.hasRemaining()) {
+                int length = Math.min(chunk.length, body.remaining());
+                body.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+        } finally {
+            out.close();
+        }
+        return file.length();
+    }
+
+    private HeaderAndBody readResponse(Entry entry) {
+        File file = new File(directory, entry.getFileName());
+        try {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                int headerCount = in.readInt();
+                Map<String, Object> headers = new HashMap<String, Object>(headerCount * 2);
+                for (int i = 0; i < headerCount; i++) {
+                    headers.put(in.readUTF(), in.readUTF());
+                }
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                return HeaderAndBody.wrap(body, headers);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read the cached response of " + entry.digest, e);
+            return null;
+        }
+    }
+
+    private static final class Entry {
+
+        private final String digest;
+        private final long expiresAt;
+        private long length;
+
+        Entry(String digest, long expiresAt, long length) {
+            this.digest = digest;
+            this.expiresAt = expiresAt;
+            this.length = length;
+        }
+
+        String getFileName() {
+            return digest + RESPONSE_SUFFIX;
+        }
+
+        boolean isFresh(long now) {
+            return now < expiresAt;
+        }
+
+    }
+
+}
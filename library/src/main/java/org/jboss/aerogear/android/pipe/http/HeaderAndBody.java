@@ -16,6 +16,12 @@
  */
 package org.jboss.aerogear.android.pipe.http;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -23,20 +29,100 @@ import java.util.Map;
 /**
  * This is a convenience to wrap up headers from a
  * HTTPResponse with its entity.
+ *
+ * The body is held once and can be read without copying through
+ * {@link #getBodyAsByteBuffer()} and {@link #getBodyAsStream()}.
+ * {@link #getBody()} returns a defensive copy.
  */
 public class HeaderAndBody {
 
-    private final byte[] body;
+    private final ByteBuffer body;
 
     private final Map<String, Object> headers;
 
     public HeaderAndBody(byte[] body, Map<String, Object> headers) {
-        this.body = Arrays.copyOf(body, body.length);
+        this(ByteBuffer.wrap(Arrays.copyOf(body, body.length)), headers);
+    }
+
+    /**
+     * Creates a HeaderAndBody backed by the remaining bytes of body. The
+     * buffer is not copied, it may be a pooled buffer or a mapped file, and
+     * must not be modified or recycled while this instance is in use.
+     *
+     * @param body the body of the response
+     * @param headers the headers of the response
+     */
+    public HeaderAndBody(ByteBuffer body, Map<String, Object> headers) {
+        this.body = body.slice().asReadOnlyBuffer();
         this.headers = new HashMap<String, Object>(headers);
     }
 
+    /**
+     * Creates a HeaderAndBody which takes ownership of body instead of
+     * copying it. The caller must not modify the array afterwards.
+     *
+     * @param body the body of the response
+     * @param headers the headers of the response
+     * @return a new HeaderAndBody sharing body
+     */
+    public static HeaderAndBody wrap(byte[] body, Map<String, Object> headers) {
+        return new HeaderAndBody(ByteBuffer.wrap(body), headers);
+    }
+
+    /**
+     * Creates a HeaderAndBody whose body is the content of file, mapped into
+     * memory read only. This keeps very large responses off the heap.
+     *
+     * @param file a file containing the body of the response
+     * @param headers the headers of the response
+     * @return a new HeaderAndBody backed by file
+     * @throws IOException if the file can not be mapped
+     */
+    public static HeaderAndBody fromFile(File file, Map<String, Object> headers) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            return new HeaderAndBody(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), headers);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * @return a copy of the body
+     */
     public byte[] getBody() {
-        return Arrays.copyOf(body, body.length);
+        byte[] copy = new byte[body.remaining()];
+        body.duplicate().get(copy);
+        return copy;
+    }
+
+    /**
+     * @return a read only view of the body which shares its content
+     */
+    public ByteBuffer getBodyAsByteBuffer() {
+        return body.duplicate();
+    }
+
+    /**
+     * @return a stream over the body which shares its content
+     */
+    public InputStream getBodyAsStream() {
+        return new ByteBufferInputStream(body.duplicate());
+    }
+
+    /**
+     * @return the length of the body in bytes
+     */
+    public int getBodyLength() {
+        return body.remaining();
+    }
+
+    /**
+     * @return a copy of all headers
+     */
+    public Map<String, Object> getHeaders() {
+        return new HashMap<String, Object>(headers);
     }
 
     public Object getHeader(String headerName) {
@@ -47,4 +133,47 @@ public class HeaderAndBody {
         headers.put(headerName, headerValue);
     }
 
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count) {
+            int skipped = (int) Math.max(0, Math.min(count, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+    }
+
 }
@@ -0,0 +1,170 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.util.Log;
+
+/**
+ * Releases the connections of {@link HttpRestProvider} so that they can be
+ * kept alive.
+ *
+ * The sockets themselves are owned by the platform's {@link HttpURLConnection}
+ * implementation, which keeps a connection alive as long as its response
+ * stream is fully consumed and closed instead of disconnected. This class
+ * releases connections that way and counts how many were released and how
+ * many had to be disconnected. Whether the platform actually reuses a
+ * released socket is not observable, so it is not counted.
+ *
+ * How many idle connections the platform keeps, and for how long, are
+ * process wide settings. They are left alone unless the app calls
+ * {@link #configurePlatformKeepAlive(int, long)}.
+ *
+ * A single default pool is shared by every pipe unless a pipe is configured
+ * with its own instance.
+ */
+public final class HttpConnectionPool {
+
+    private static final String TAG = HttpConnectionPool.class.getSimpleName();
+
+    /**
+     * Responses with more than this many unread bytes are not drained on
+     * release; the connection is disconnected instead.
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static final HttpConnectionPool DEFAULT = new HttpConnectionPool();
+
+    private final AtomicLong releaseCount = new AtomicLong();
+    private final AtomicLong discardCount = new AtomicLong();
+
+    /**
+     * @return the pool shared by all pipes which do not configure their own
+     */
+    public static HttpConnectionPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Sets the http.keepAlive, http.maxConnections and http.keepAliveDuration
+     * system properties. These apply to every {@link HttpURLConnection} of
+     * the process, not only to those of pipes, and are read by the platform
+     * when it creates its connection pool, so call this once before the
+     * first request of the app.
+     *
+     * @param maxIdleConnections the number of idle connections the platform
+     *            keeps per host. Must be positive.
+     * @param keepAliveMillis how long an idle connection may be reused. Must
+     *            be positive.
+     *
+     * @throws IllegalArgumentException if either value is not positive
+     */
+    public static void configurePlatformKeepAlive(int maxIdleConnections, long keepAliveMillis) {
+        if (maxIdleConnections <= 0) {
+            throw new IllegalArgumentException("maxIdleConnections must be positive");
+        }
+        if (keepAliveMillis <= 0) {
+            throw new IllegalArgumentException("keepAliveMillis must be positive");
+        }
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(maxIdleConnections));
+        System.setProperty("http.keepAliveDuration", String.valueOf(keepAliveMillis));
+    }
+
+    /**
+     * Drains and closes the response body of a finished connection so that
+     * the platform may reuse the underlying socket. If the body can not be
+     * drained the connection is disconnected instead.
+     *
+     * @param connection a connection whose response has been read
+     */
+    public void release(HttpURLConnection connection) {
+        try {
+            InputStream in = responseStream(connection);
+            if (in != null) {
+                boolean drained = drain(in);
+                in.close();
+                if (!drained) {
+                    discard(connection);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not drain response, disconnecting", e);
+            discard(connection);
+            return;
+        }
+        releaseCount.incrementAndGet();
+    }
+
+    /**
+     * Disconnects a connection which must not be reused, for instance after
+     * an I/O error.
+     *
+     * @param connection the connection to close
+     */
+    public void discard(HttpURLConnection connection) {
+        discardCount.incrementAndGet();
+        connection.disconnect();
+    }
+
+    /**
+     * @return the number of connections which were drained and closed, so
+     *         that the platform may keep them alive
+     */
+    public long getReleaseCount() {
+        return releaseCount.get();
+    }
+
+    /**
+     * @return the number of connections which were disconnected instead of
+     *         being released
+     */
+    public long getDiscardCount() {
+        return discardCount.get();
+    }
+
+    private static InputStream responseStream(HttpURLConnection connection) throws IOException {
+        InputStream error = connection.getErrorStream();
+        if (error != null) {
+            return error;
+        }
+        try {
+            return connection.getInputStream();
+        } catch (IOException ignore) {
+            return null;
+        }
+    }
+
+    private static boolean drain(InputStream in) throws IOException {
+        byte[] skipBuffer = new byte[512];
+        int total = 0;
+        int read;
+        while ((read = in.read(skipBuffer)) != -1) {
+            total += read;
+            if (total > MAX_DRAIN_BYTES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -19,18 +19,84 @@ package org.jboss.aerogear.android.pipe.http;
 import java.net.URL;
 
 import org.jboss.aerogear.android.core.Provider;
+import org.jboss.aerogear.android.pipe.metrics.PipeMetrics;
 
 public class HttpProviderFactory implements Provider<HttpProvider> {
 
+    private final HttpConnectionPool connectionPool;
+    private final CompressionStatistics compressionStatistics = new CompressionStatistics();
+    private boolean acceptCompressedResponses = false;
+    private int requestCompressionThreshold = -1;
+    private PipeMetrics metrics;
+
+    public HttpProviderFactory() {
+        this(HttpConnectionPool.getDefault());
+    }
+
+    /**
+     * @param connectionPool the pool every created provider releases its
+     *            connections to
+     */
+    public HttpProviderFactory(HttpConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * @param acceptCompressedResponses true if created providers should ask
+     *            for and decode compressed responses
+     */
+    public void setAcceptCompressedResponses(boolean acceptCompressedResponses) {
+        this.acceptCompressedResponses = acceptCompressedResponses;
+    }
+
+    /**
+     * @param requestCompressionThreshold the minimal size of a request body
+     *            created providers compress, negative to never compress
+     */
+    public void setRequestCompressionThreshold(int requestCompressionThreshold) {
+        this.requestCompressionThreshold = requestCompressionThreshold;
+    }
+
+    /**
+     * @param metrics the metrics created providers record requests in, null
+     *            to record nothing
+     */
+    public void setMetrics(PipeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public PipeMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the statistics shared by all providers this factory created
+     */
+    public CompressionStatistics getCompressionStatistics() {
+        return compressionStatistics;
+    }
+
     @Override
     public HttpProvider get(Object... in) {
+        HttpRestProvider provider;
         switch (in.length) {
         case 1:
-            return new HttpRestProvider((URL) in[0]);
+            provider = new HttpRestProvider((URL) in[0], 0, connectionPool);
+            break;
         case 2:
-            return new HttpRestProvider((URL) in[0], (Integer) in[1]);
+            if (in[1] instanceof Timeouts) {
+                provider = new HttpRestProvider((URL) in[0], (Timeouts) in[1], connectionPool, BufferPool.getDefault());
+            } else {
+                provider = new HttpRestProvider((URL) in[0], (Integer) in[1], connectionPool);
+            }
+            break;
         default:
-            throw new IllegalArgumentException("Wrong number of Arguments.  This method expects a URL or a URL and a Integer");
+            throw new IllegalArgumentException("Wrong number of Arguments.  This method expects a URL or a URL and a Integer or Timeouts");
         }
+        provider.setAcceptCompressedResponses(acceptCompressedResponses);
+        provider.setRequestCompressionThreshold(requestCompressionThreshold);
+        provider.setCompressionStatistics(compressionStatistics);
+        provider.setMetrics(metrics);
+        return provider;
     }
 }
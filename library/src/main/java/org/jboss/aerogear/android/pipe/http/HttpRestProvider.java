@@ -20,26 +20,44 @@ import android.text.TextUtils;
 
 import java.io.*;
 import java.net.*;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.jboss.aerogear.android.core.Provider;
 
 import android.util.Log;
+import org.jboss.aerogear.android.pipe.metrics.PipeMetrics;
 import org.jboss.aerogear.android.pipe.util.UrlUtils;
 
 /**
  * These are tuned for AeroGear, assume the body is String data, and that the
  * headers don't do anything funny.
  */
-public final class HttpRestProvider implements HttpProvider {
+public final class HttpRestProvider implements StreamingHttpProvider {
 
     private static final String TAG = HttpRestProvider.class.getSimpleName();
+
+    /**
+     * Bodies announcing a larger Content-Length are read in chunks instead of
+     * into an array of the announced size, so a wrong or hostile header can
+     * not allocate memory before any byte arrived.
+     */
+    static final int MAX_PRESIZED_BODY_BYTES = 4 * 1024 * 1024;
     private final URL url;
     private final Map<String, String> defaultHeaders = new HashMap<String, String>();
-    private final Integer timeout;
+    private final Timeouts timeouts;
+    private final HttpConnectionPool connectionPool;
+    private final BufferPool bufferPool;
+    private boolean acceptCompressedResponses = false;
+    private int requestCompressionThreshold = -1;
+    private CompressionStatistics compressionStatistics = new CompressionStatistics();
+    private PipeMetrics metrics;
     private final static CookieManager cm = new CookieManager();
 
     static {
@@ -89,13 +107,45 @@ public final class HttpRestProvider implements HttpProvider {
     };
 
     public HttpRestProvider(URL url) {
-        this.url = url;
-        this.timeout = 0;
+        this(url, 0);
     }
 
     public HttpRestProvider(URL url, Integer timeout) {
+        this(url, timeout, HttpConnectionPool.getDefault());
+    }
+
+    /**
+     * @param url the url of the resource
+     * @param timeout connect and read timeout in milliseconds
+     * @param connectionPool the pool finished connections are released to
+     */
+    public HttpRestProvider(URL url, Integer timeout, HttpConnectionPool connectionPool) {
+        this(url, timeout, connectionPool, BufferPool.getDefault());
+    }
+
+    /**
+     * @param url the url of the resource
+     * @param timeout connect and read timeout in milliseconds
+     * @param connectionPool the pool finished connections are released to
+     * @param bufferPool the pool response bodies are read with
+     */
+    public HttpRestProvider(URL url, Integer timeout, HttpConnectionPool connectionPool, BufferPool bufferPool) {
+        this(url, new Timeouts(timeout, timeout, 0), connectionPool, bufferPool);
+    }
+
+    /**
+     * @param url the url of the resource
+     * @param timeouts the connect and read timeouts and the deadline of
+     *            requests which are not part of an operation with timeouts
+     *            of its own
+     * @param connectionPool the pool finished connections are released to
+     * @param bufferPool the pool response bodies are read with
+     */
+    public HttpRestProvider(URL url, Timeouts timeouts, HttpConnectionPool connectionPool, BufferPool bufferPool) {
         this.url = url;
-        this.timeout = timeout;
+        this.timeouts = timeouts;
+        this.connectionPool = connectionPool;
+        this.bufferPool = bufferPool;
     }
 
     /**
@@ -106,24 +156,88 @@ public final class HttpRestProvider implements HttpProvider {
         return url;
     }
 
+    /**
+     * @return the timeouts of requests which are not part of an operation
+     *         with timeouts of its own
+     */
+    public Timeouts getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * @return the pool connections of this provider are released to
+     */
+    public HttpConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * @return the pool response bodies are read with, which also reports the
+     *         allocations made while reading
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * If enabled, gzip and deflate encoded responses are requested with an
+     * Accept-Encoding header and decoded by this provider.
+     *
+     * @param acceptCompressedResponses true to request compressed responses
+     */
+    public void setAcceptCompressedResponses(boolean acceptCompressedResponses) {
+        this.acceptCompressedResponses = acceptCompressedResponses;
+    }
+
+    public boolean isAcceptCompressedResponses() {
+        return acceptCompressedResponses;
+    }
+
+    /**
+     * Request bodies of at least this many bytes are sent gzip compressed. A
+     * negative value disables request compression, which is the default.
+     *
+     * @param requestCompressionThreshold the minimal size of a compressed body
+     */
+    public void setRequestCompressionThreshold(int requestCompressionThreshold) {
+        this.requestCompressionThreshold = requestCompressionThreshold;
+    }
+
+    public int getRequestCompressionThreshold() {
+        return requestCompressionThreshold;
+    }
+
+    /**
+     * @param compressionStatistics the statistics the sizes of request and
+     *            response bodies are recorded to
+     */
+    public void setCompressionStatistics(CompressionStatistics compressionStatistics) {
+        this.compressionStatistics = compressionStatistics;
+    }
+
+    public CompressionStatistics getCompressionStatistics() {
+        return compressionStatistics;
+    }
+
+    /**
+     * @param metrics the metrics the connect, time to first byte and download
+     *            times, status codes and sizes of requests are recorded in,
+     *            null to record nothing, which is the default
+     */
+    public void setMetrics(PipeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public PipeMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public HeaderAndBody get() throws HttpException {
-        HttpURLConnection urlConnection = null;
-        try {
-            urlConnection = prepareConnection();
-            return getHeaderAndBody(urlConnection);
-
-        } catch (IOException e) {
-            Log.e(TAG, "Error on GET of " + url, e);
-            throw new RuntimeException(e);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-        }
+        return execute("GET", null, null);
     }
 
     /**
@@ -139,22 +253,7 @@ public final class HttpRestProvider implements HttpProvider {
      */
     @Override
     public HeaderAndBody post(byte[] data) throws RuntimeException {
-        HttpURLConnection urlConnection = null;
-
-        try {
-            urlConnection = prepareConnection();
-            urlConnection.setRequestMethod("POST");
-            addBodyRequest(urlConnection, data);
-            return getHeaderAndBody(urlConnection);
-
-        } catch (IOException e) {
-            Log.e(TAG, "Error on POST of " + url, e);
-            throw new RuntimeException(e);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-        }
+        return execute("POST", null, data);
     }
 
     /**
@@ -170,22 +269,23 @@ public final class HttpRestProvider implements HttpProvider {
      */
     @Override
     public HeaderAndBody put(String id, byte[] data) throws RuntimeException {
-        HttpURLConnection urlConnection = null;
+        return execute("PUT", id, data);
+    }
 
-        try {
-            urlConnection = prepareConnection(id);
-            urlConnection.setRequestMethod("PUT");
-            addBodyRequest(urlConnection, data);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HeaderAndBody post(RequestBody body) throws RuntimeException {
+        return execute("POST", null, null, body);
+    }
 
-            return getHeaderAndBody(urlConnection);
-        } catch (IOException e) {
-            Log.e(TAG, "Error on PUT of " + url, e);
-            throw new RuntimeException(e);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-        }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HeaderAndBody put(String id, RequestBody body) throws RuntimeException {
+        return execute("PUT", id, null, body);
     }
 
     /**
@@ -193,44 +293,175 @@ public final class HttpRestProvider implements HttpProvider {
      */
     @Override
     public HeaderAndBody delete(String id) throws RuntimeException {
+        return execute("DELETE", id, null);
+    }
+
+    private HeaderAndBody execute(String method, String id, byte[] data) {
+        return execute(method, id, data, null);
+    }
 
+    /**
+     * Runs a single request. Connections whose response was read completely
+     * (including error responses) are released to the connection pool for
+     * reuse, connections which failed with an I/O error are disconnected.
+     * The connection is attached to the {@link RequestCancellation} bound to
+     * the current thread, which disconnects it when the request is cancelled
+     * or its deadline passes. The connect and read timeouts never exceed the
+     * time left until the deadline.
+     */
+    private HeaderAndBody execute(String method, String id, byte[] data, RequestBody streamingBody) {
         HttpURLConnection urlConnection = null;
+        boolean reusable = false;
+        long start = System.nanoTime();
+        RequestCancellation cancellation = RequestCancellation.current();
+        RequestCancellation previous = null;
+        boolean scoped = false;
+        if (cancellation != null) {
+            cancellation.setTimeouts(timeouts);
+        } else if (timeouts.getDeadline() > 0) {
+            // a request outside of an operation has a deadline of its own
+            cancellation = new RequestCancellation();
+            cancellation.setTimeouts(timeouts);
+            previous = cancellation.bind();
+            scoped = true;
+        }
+        if (metrics != null) {
+            metrics.recordRequest();
+        }
+
         try {
-            urlConnection = prepareConnection(id);
-            urlConnection.setRequestMethod("DELETE");
-            return getHeaderAndBody(urlConnection);
+            urlConnection = prepareConnection(id, cancellation);
+            if (cancellation != null) {
+                cancellation.attach(urlConnection);
+            }
+            if (!"GET".equals(method)) {
+                urlConnection.setRequestMethod(method);
+            }
+
+            byte[] body = null;
+            if (streamingBody != null) {
+                prepareStreamingBody(urlConnection, streamingBody);
+            } else if ("POST".equals(method) || "PUT".equals(method)) {
+                body = prepareBody(urlConnection, data);
+            }
+
+            urlConnection.connect();
+            record(PipeMetrics.Stage.CONNECT, start);
+
+            if (streamingBody != null) {
+                writeStreamingBody(urlConnection, streamingBody);
+            } else if (body != null) {
+                writeBody(urlConnection, body);
+            }
+
+            HeaderAndBody result = getHeaderAndBody(urlConnection);
+            reusable = true;
+            return result;
+        } catch (HttpException e) {
+            reusable = true;
+            throw e;
         } catch (IOException e) {
-            Log.e(TAG, "Error on DELETE of " + url, e);
+            // a cancelled request fails because its connection was disconnected
+            RequestCancellation.throwIfCancelled();
+            RequestCancellation.throwIfExpired();
+            Log.e(TAG, "Error on " + method + " of " + url, e);
+            if (metrics != null) {
+                metrics.recordFailure();
+            }
             throw new RuntimeException(e);
         } finally {
             if (urlConnection != null) {
-                urlConnection.disconnect();
+                if (cancellation != null) {
+                    cancellation.detach(urlConnection);
+                }
+                if (reusable && !(cancellation != null && cancellation.isCancelled())) {
+                    connectionPool.release(urlConnection);
+                } else {
+                    connectionPool.discard(urlConnection);
+                }
+            }
+            if (scoped) {
+                cancellation.finish();
+                RequestCancellation.unbind(previous);
             }
         }
     }
 
-    private void addBodyRequest(HttpURLConnection urlConnection, byte[] data)
+    /**
+     * Sets up the connection for sending data, compressing it if it is large
+     * enough.
+     *
+     * @return the bytes to send, null if there is no body
+     */
+    private byte[] prepareBody(HttpURLConnection urlConnection, byte[] data)
             throws IOException {
 
         urlConnection.setDoOutput(true);
 
-        if (data != null) {
-            OutputStream out = new BufferedOutputStream(urlConnection
-                    .getOutputStream());
-            out.write(data);
-            out.flush();
+        if (data == null) {
+            return null;
         }
 
+        byte[] body = data;
+        boolean compressed = requestCompressionThreshold >= 0 && data.length >= requestCompressionThreshold;
+        if (compressed) {
+            body = gzip(data);
+            urlConnection.setRequestProperty("Content-Encoding", "gzip");
+        }
+        recordRequestBody(data.length, body.length, compressed);
+        return body;
     }
 
-    private HttpURLConnection prepareConnection() throws IOException {
-        return prepareConnection(null);
+    private void writeBody(HttpURLConnection urlConnection, byte[] body)
+            throws IOException {
+        OutputStream out = new BufferedOutputStream(urlConnection
+                .getOutputStream());
+        out.write(body);
+        out.flush();
     }
 
-    private HttpURLConnection prepareConnection(String id) {
+    /**
+     * Sets up the connection for fixed length streaming if the length of body
+     * is known and chunked streaming otherwise, so the connection does not
+     * buffer the whole body.
+     */
+    private void prepareStreamingBody(HttpURLConnection urlConnection, RequestBody body) {
+        urlConnection.setDoOutput(true);
+
+        long contentLength = body.getContentLength();
+        if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+            urlConnection.setFixedLengthStreamingMode((int) contentLength);
+        } else {
+            urlConnection.setChunkedStreamingMode(0);
+        }
+    }
+
+    /**
+     * Writes body straight to the connection.
+     */
+    private void writeStreamingBody(HttpURLConnection urlConnection, RequestBody body)
+            throws IOException {
+        CountingOutputStream out = new CountingOutputStream(urlConnection.getOutputStream());
+        body.writeTo(out);
+        out.close();
+        recordRequestBody(out.getCount(), out.getCount(), false);
+    }
+
+    private HttpURLConnection prepareConnection(String id, RequestCancellation cancellation) {
         HttpURLConnection connection = connectionPreparer.get(id);
-        connection.setReadTimeout(timeout);
-        connection.setConnectTimeout(timeout);
+        Timeouts effective = timeouts;
+        long remaining = Long.MAX_VALUE;
+        if (cancellation != null) {
+            if (cancellation.getTimeouts() != null) {
+                effective = cancellation.getTimeouts();
+            }
+            remaining = cancellation.getRemainingMillis();
+        }
+        connection.setReadTimeout(Timeouts.bound(effective.getReadTimeout(), remaining));
+        connection.setConnectTimeout(Timeouts.bound(effective.getConnectTimeout(), remaining));
+        if (acceptCompressedResponses) {
+            connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+        }
         return connection;
     }
 
@@ -242,7 +473,12 @@ public final class HttpRestProvider implements HttpProvider {
     private HeaderAndBody getHeaderAndBody(HttpURLConnection urlConnection)
             throws IOException {
 
+        long sent = System.nanoTime();
         int statusCode = urlConnection.getResponseCode();
+        long firstByte = record(PipeMetrics.Stage.TIME_TO_FIRST_BYTE, sent);
+        if (metrics != null) {
+            metrics.recordStatusCode(statusCode);
+        }
         HeaderAndBody result;
         Map<String, List<String>> headers;
         byte[] responseData;
@@ -250,10 +486,8 @@ public final class HttpRestProvider implements HttpProvider {
         switch (statusCode) {
         case HttpURLConnection.HTTP_OK:
         case HttpURLConnection.HTTP_CREATED:
-            InputStream in = new BufferedInputStream(urlConnection
-                    .getInputStream());
-
-            responseData = readBytes(in);
+            responseData = readBytes(urlConnection, urlConnection.getInputStream());
+            record(PipeMetrics.Stage.DOWNLOAD, firstByte);
 
             break;
 
@@ -263,10 +497,8 @@ public final class HttpRestProvider implements HttpProvider {
             break;
 
         default:
-            InputStream err = new BufferedInputStream(urlConnection
-                    .getErrorStream());
-
-            byte[] errData = readBytes(err);
+            byte[] errData = readBytes(urlConnection, urlConnection.getErrorStream());
+            record(PipeMetrics.Stage.DOWNLOAD, firstByte);
             Map<String, List<String>> errorListHeaders = urlConnection.getHeaderFields();
             Map<String, String> errorHeaders = new HashMap<String, String>();
 
@@ -289,7 +521,7 @@ public final class HttpRestProvider implements HttpProvider {
         }
 
         headers = urlConnection.getHeaderFields();
-        result = new HeaderAndBody(responseData, new HashMap<String, Object>(
+        result = HeaderAndBody.wrap(responseData, new HashMap<String, Object>(
                 headers.size()));
 
         for (Entry<String, List<String>> header : headers.entrySet()) {
@@ -300,22 +532,230 @@ public final class HttpRestProvider implements HttpProvider {
 
     }
 
-    private byte[] readBytes(InputStream inputStream) throws IOException {
-        // this dynamically extends to take the bytes you read
-        ByteArrayOutputStream byteBuffer = new ByteArrayOutputStream();
+    /**
+     * Reads a response body. When the server announces the length of an
+     * unencoded body it is read straight into an array of that size,
+     * otherwise it is collected in pooled chunks and copied once into an
+     * array of the final size. Compressed bodies are decoded if this provider
+     * asked for them.
+     */
+    private byte[] readBytes(HttpURLConnection urlConnection, InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            recordResponseBody(0, 0, false);
+            return new byte[0];
+        }
+
+        int contentLength = urlConnection.getContentLength();
+        String contentEncoding = urlConnection.getContentEncoding();
+        byte[] body;
+        if (contentEncoding == null || "identity".equalsIgnoreCase(contentEncoding)) {
+            if (contentLength >= 0 && contentLength <= MAX_PRESIZED_BODY_BYTES) {
+                body = readKnownLength(inputStream, contentLength);
+            } else {
+                body = readChunks(inputStream, null, bufferPool.acquire(), 0);
+            }
+            recordResponseBody(body.length, body.length, false);
+            return body;
+        }
+
+        boolean gzip = "gzip".equalsIgnoreCase(contentEncoding) || "x-gzip".equalsIgnoreCase(contentEncoding);
+        boolean deflate = "deflate".equalsIgnoreCase(contentEncoding);
+        if (!acceptCompressedResponses || !(gzip || deflate) || contentLength == 0) {
+            // an encoding we did not ask for or an empty body, hand it on as is
+            body = readChunks(inputStream, null, bufferPool.acquire(), 0);
+            recordResponseBody(body.length, body.length, false);
+            return body;
+        }
+
+        CountingInputStream counted = new CountingInputStream(inputStream);
+        InputStream decoded = gzip ? new GZIPInputStream(counted) : new InflaterInputStream(counted);
+        try {
+            body = readChunks(decoded, null, bufferPool.acquire(), 0);
+        } finally {
+            // ends the native Inflater, the response stream stays open
+            decoded.close();
+        }
+        recordResponseBody(counted.getCount(), body.length, true);
+        return body;
+    }
+
+    private void recordRequestBody(long size, long wireSize, boolean compressed) {
+        compressionStatistics.recordRequest(size, wireSize, compressed);
+        if (metrics != null) {
+            metrics.recordBytesSent(wireSize);
+        }
+    }
 
-        // this is storage overwritten on each iteration with bytes
-        int bufferSize = 1024;
-        byte[] buffer = new byte[bufferSize];
+    private void recordResponseBody(long wireSize, long size, boolean compressed) {
+        compressionStatistics.recordResponse(wireSize, size, compressed);
+        if (metrics != null) {
+            metrics.recordBytesReceived(wireSize);
+        }
+    }
 
-        // we need to know how may bytes were read to write them to the byteBuffer
+    /**
+     * Records the time since start in stage.
+     *
+     * @return the current time in nanoseconds
+     */
+    private long record(PipeMetrics.Stage stage, long start) {
+        long now = System.nanoTime();
+        if (metrics != null) {
+            metrics.record(stage, now - start);
+        }
+        return now;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(32, data.length / 4));
+        GZIPOutputStream out = new GZIPOutputStream(compressed);
+        out.write(data);
+        out.close();
+        return compressed.toByteArray();
+    }
+
+    private byte[] readKnownLength(InputStream inputStream, int contentLength) throws IOException {
+        byte[] body = bufferPool.allocate(contentLength);
+        int total = 0;
         int len;
-        while ((len = inputStream.read(buffer)) != -1) {
-            byteBuffer.write(buffer, 0, len);
+        while (total < contentLength && (len = inputStream.read(body, total, contentLength - total)) != -1) {
+            total += len;
+        }
+
+        if (total < contentLength) {
+            // the server sent less than it announced
+            byte[] truncated = bufferPool.allocate(total);
+            System.arraycopy(body, 0, truncated, 0, total);
+            return truncated;
+        }
+
+        int next = inputStream.read();
+        if (next == -1) {
+            return body;
+        }
+
+        // the server sent more than it announced, keep the rest as well
+        byte[] chunk = bufferPool.acquire();
+        chunk[0] = (byte) next;
+        return readChunks(inputStream, body, chunk, 1);
+    }
+
+    private byte[] readChunks(InputStream inputStream, byte[] head, byte[] firstChunk, int firstChunkFill)
+            throws IOException {
+        int chunkSize = bufferPool.getChunkSize();
+        List<byte[]> chunks = new ArrayList<byte[]>();
+        byte[] chunk = firstChunk;
+        int fill = firstChunkFill;
+        int total = 0;
+
+        chunks.add(chunk);
+        try {
+            int len;
+            while (true) {
+                if (fill == chunkSize) {
+                    total += fill;
+                    chunk = bufferPool.acquire();
+                    chunks.add(chunk);
+                    fill = 0;
+                }
+                len = inputStream.read(chunk, fill, chunkSize - fill);
+                if (len == -1) {
+                    break;
+                }
+                fill += len;
+            }
+            total += fill;
+
+            int headLength = head == null ? 0 : head.length;
+            byte[] body = bufferPool.allocate(headLength + total);
+            if (head != null) {
+                System.arraycopy(head, 0, body, 0, headLength);
+            }
+            int offset = headLength;
+            for (byte[] filled : chunks) {
+                int count = Math.min(chunkSize, headLength + total - offset);
+                System.arraycopy(filled, 0, body, offset, count);
+                offset += count;
+            }
+            return body;
+        } finally {
+            for (byte[] used : chunks) {
+                bufferPool.release(used);
+            }
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read != -1) {
+                count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        /**
+         * Leaves the wrapped stream open, the connection pool drains and
+         * closes the response stream when the connection is released.
+         */
+        @Override
+        public void close() {
+        }
+
+        long getCount() {
+            return count;
+        }
+
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            count += length;
+        }
+
+        long getCount() {
+            return count;
         }
 
-        // and then we can return your byte array.
-        return byteBuffer.toByteArray();
     }
 
 }
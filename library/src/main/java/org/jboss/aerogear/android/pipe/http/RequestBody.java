@@ -0,0 +1,49 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A request body which is written straight to the connection instead of
+ * being built in memory first.
+ */
+public interface RequestBody {
+
+    /**
+     * @return the length of the body in bytes, or -1 if it is not known in
+     *         advance. Bodies of known length are sent with fixed length
+     *         streaming, others are sent chunked.
+     */
+    long getContentLength();
+
+    /**
+     * Writes the body. Bodies backed by streams can only be written once.
+     *
+     * @param out the stream to write the body to, it is not closed
+     * @throws IOException if the body can not be read or written
+     */
+    void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * @return true if the body can be written more than once, which is
+     *         required to retry a request
+     */
+    boolean isRepeatable();
+
+}
@@ -0,0 +1,308 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.http;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.android.pipe.RequestHandle;
+
+/**
+ * The {@link RequestHandle} of an operation. The threads which work on the
+ * operation bind it while they run, {@link HttpRestProvider} attaches the
+ * connections it opens to the bound cancellation so {@link #cancel()} can
+ * disconnect them in the middle of a transfer.
+ *
+ * It also carries the {@link Timeouts} of the operation. Once the deadline
+ * of the operation passes its connections are disconnected and it fails with
+ * a {@link DeadlineExceededException}, however many requests and retries it
+ * made.
+ */
+public final class RequestCancellation implements RequestHandle {
+
+    private static final ThreadLocal<RequestCancellation> CURRENT = new ThreadLocal<RequestCancellation>();
+
+    private final List<HttpURLConnection> connections = new ArrayList<HttpURLConnection>();
+    private final List<Runnable> cancelActions = new ArrayList<Runnable>();
+    private volatile boolean cancelled = false;
+    private volatile boolean expired = false;
+    private volatile Timeouts timeouts;
+    private volatile long deadlineAt;
+    private Future<?> expiry;
+
+    /**
+     * @return the cancellation bound to the current thread, null if there is
+     *         none
+     */
+    public static RequestCancellation current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @throws CancellationException if the cancellation bound to the current
+     *             thread was cancelled
+     */
+    public static void throwIfCancelled() {
+        RequestCancellation current = CURRENT.get();
+        if (current != null && current.isCancelled()) {
+            throw new CancellationException("The request was cancelled");
+        }
+    }
+
+    /**
+     * @throws DeadlineExceededException if the deadline of the cancellation
+     *             bound to the current thread has passed
+     */
+    public static void throwIfExpired() {
+        RequestCancellation current = CURRENT.get();
+        if (current != null && current.isExpired()) {
+            throw new DeadlineExceededException("The request exceeded its deadline of " + current.timeouts.getDeadline() + "ms");
+        }
+    }
+
+    /**
+     * Sets the timeouts of the operation and starts its deadline, unless
+     * timeouts were set before.
+     *
+     * @param timeouts the timeouts of the operation
+     * @return true if timeouts were set
+     */
+    public boolean setTimeouts(Timeouts timeouts) {
+        synchronized (this) {
+            if (this.timeouts != null || cancelled) {
+                return false;
+            }
+            this.timeouts = timeouts;
+            if (timeouts.getDeadline() > 0) {
+                deadlineAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeouts.getDeadline());
+                expiry = Deadlines.EXECUTOR.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        expire();
+                    }
+                }, timeouts.getDeadline(), TimeUnit.MILLISECONDS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the timeouts of the operation, null if none were set
+     */
+    public Timeouts getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * @return the milliseconds left until the deadline, Long.MAX_VALUE if
+     *         the operation has no deadline
+     */
+    public long getRemainingMillis() {
+        if (deadlineAt == 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineAt - System.nanoTime()));
+    }
+
+    /**
+     * @return true if the deadline of the operation has passed
+     */
+    public boolean isExpired() {
+        return expired || (deadlineAt != 0 && deadlineAt - System.nanoTime() <= 0);
+    }
+
+    /**
+     * Waits millis milliseconds, unless the operation is cancelled or its
+     * deadline passes first. Used to wait between attempts of a request.
+     *
+     * @param millis how long to wait
+     * @throws InterruptedException if the thread was interrupted
+     * @throws CancellationException if the operation was cancelled
+     * @throws DeadlineExceededException if the deadline of the operation has
+     *             passed
+     */
+    public void sleep(long millis) throws InterruptedException {
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        synchronized (this) {
+            long left = until - System.nanoTime();
+            while (!cancelled && !isExpired() && left > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+                left = until - System.nanoTime();
+            }
+        }
+        if (cancelled) {
+            throw new CancellationException("The request was cancelled");
+        }
+        if (isExpired()) {
+            throw new DeadlineExceededException("The request exceeded its deadline of " + timeouts.getDeadline() + "ms");
+        }
+    }
+
+    /**
+     * Called once the operation is done, which stops waiting for its
+     * deadline.
+     */
+    public void finish() {
+        Future<?> pending;
+        synchronized (this) {
+            pending = expiry;
+            expiry = null;
+        }
+        if (pending != null) {
+            pending.cancel(false);
+            Deadlines.EXECUTOR.remove((Runnable) pending);
+        }
+    }
+
+    /**
+     * Binds this cancellation to the current thread.
+     *
+     * @return the cancellation bound before, which
+     *         {@link #unbind(RequestCancellation)} restores
+     */
+    public RequestCancellation bind() {
+        RequestCancellation previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+
+    /**
+     * @param previous the cancellation returned by {@link #bind()}
+     */
+    public static void unbind(RequestCancellation previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Runs action when the operation is cancelled, or at once if it already
+     * was. This is used to take queued tasks off their queue.
+     *
+     * @param action the action to run
+     */
+    public void onCancel(Runnable action) {
+        synchronized (this) {
+            if (!cancelled) {
+                cancelActions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /**
+     * Attaches a connection which is about to be used, so it is disconnected
+     * if the operation is cancelled.
+     *
+     * @param connection the connection
+     * @throws CancellationException if the operation was already cancelled,
+     *             the connection is disconnected then
+     * @throws DeadlineExceededException if the deadline of the operation has
+     *             passed, the connection is disconnected then
+     */
+    public void attach(HttpURLConnection connection) {
+        synchronized (this) {
+            if (!cancelled && !isExpired()) {
+                connections.add(connection);
+                return;
+            }
+        }
+        connection.disconnect();
+        if (cancelled) {
+            throw new CancellationException("The request was cancelled");
+        }
+        throw new DeadlineExceededException("The request exceeded its deadline of " + timeouts.getDeadline() + "ms");
+    }
+
+    /**
+     * @param connection a connection which is no longer used
+     */
+    public synchronized void detach(HttpURLConnection connection) {
+        connections.remove(connection);
+    }
+
+    private void expire() {
+        List<HttpURLConnection> open;
+        synchronized (this) {
+            expired = true;
+            expiry = null;
+            notifyAll();
+            open = new ArrayList<HttpURLConnection>(connections);
+            connections.clear();
+        }
+        for (HttpURLConnection connection : open) {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        List<HttpURLConnection> open;
+        List<Runnable> actions;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            notifyAll();
+            open = new ArrayList<HttpURLConnection>(connections);
+            actions = new ArrayList<Runnable>(cancelActions);
+            connections.clear();
+            cancelActions.clear();
+        }
+
+        for (Runnable action : actions) {
+            action.run();
+        }
+        for (HttpURLConnection connection : open) {
+            connection.disconnect();
+        }
+        finish();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Holds the thread which expires operations, it is only started once an
+     * operation has a deadline.
+     */
+    private static final class Deadlines {
+
+        static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "pipe-deadlines");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    }
+
+}
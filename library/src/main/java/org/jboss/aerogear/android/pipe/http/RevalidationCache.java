@@ -0,0 +1,205 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.http;
+
+import java.net.HttpURLConnection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the last response of a resource together with its validators
+ * (ETag and Last-Modified) so that a read can be revalidated with a
+ * conditional GET instead of downloading the body again.
+ *
+ * Entries are keyed by the authorized URL and the authorization headers of
+ * a read, so a response is never revalidated for other credentials, and
+ * evicted least recently used first once the cached bodies exceed the
+ * configured size.
+ */
+public final class RevalidationCache {
+
+    /**
+     * The default total size of the bodies kept by a cache.
+     */
+    public static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    private final int maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long size = 0;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param maxBytes the maximal total size of the cached bodies. Must be
+     *            positive.
+     *
+     * @throws IllegalArgumentException if maxBytes is not positive
+     */
+    public RevalidationCache(int maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Performs a GET with provider, revalidating the response cached for key
+     * if there is one. If the server answers 304 Not Modified the cached
+     * response is returned, otherwise the new response is cached and
+     * returned.
+     *
+     * @param key the authorized URL and authorization headers of the read
+     * @param provider a provider for the resource
+     * @return the current response of the resource
+     * @throws HttpException if the request fails
+     */
+    public HeaderAndBody get(String key, HttpProvider provider) throws HttpException {
+        Entry cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+        }
+
+        if (cached != null) {
+            if (cached.etag != null) {
+                provider.setDefaultHeader("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                provider.setDefaultHeader("If-Modified-Since", cached.lastModified);
+            }
+        }
+
+        HeaderAndBody response;
+        try {
+            response = provider.get();
+        } catch (HttpException e) {
+            if (cached != null && e.getStatusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                hitCount.incrementAndGet();
+                return cached.toResponse();
+            }
+            throw e;
+        }
+
+        missCount.incrementAndGet();
+        if (response != null) {
+            put(key, response);
+        }
+        return response;
+    }
+
+    /**
+     * Forgets the response cached for key.
+     *
+     * @param key the authorized URL and authorization headers of a read
+     */
+    public void invalidate(String key) {
+        synchronized (entries) {
+            Entry removed = entries.remove(key);
+            if (removed != null) {
+                size -= removed.response.getBodyLength();
+            }
+        }
+    }
+
+    /**
+     * Forgets every cached response.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * @return the number of reads answered from the cache after a 304
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of reads which downloaded a body
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the total size of the cached bodies
+     */
+    public long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    private void put(String key, HeaderAndBody response) {
+        String etag = null;
+        String lastModified = null;
+        for (Map.Entry<String, Object> header : response.getHeaders().entrySet()) {
+            if ("ETag".equalsIgnoreCase(header.getKey())) {
+                etag = String.valueOf(header.getValue());
+            } else if ("Last-Modified".equalsIgnoreCase(header.getKey())) {
+                lastModified = String.valueOf(header.getValue());
+            }
+        }
+
+        synchronized (entries) {
+            invalidate(key);
+            if ((etag == null && lastModified == null) || response.getBodyLength() > maxBytes) {
+                return;
+            }
+
+            // the caller may change the headers of response, keep a snapshot
+            HeaderAndBody snapshot = new HeaderAndBody(response.getBodyAsByteBuffer(), response.getHeaders());
+            entries.put(key, new Entry(etag, lastModified, snapshot));
+            size += response.getBodyLength();
+
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (size > maxBytes && eldest.hasNext()) {
+                size -= eldest.next().response.getBodyLength();
+                eldest.remove();
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final String etag;
+        private final String lastModified;
+        private final HeaderAndBody response;
+
+        Entry(String etag, String lastModified, HeaderAndBody response) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.response = response;
+        }
+
+        HeaderAndBody toResponse() {
+            return new HeaderAndBody(response.getBodyAsByteBuffer(), response.getHeaders());
+        }
+
+    }
+
+}
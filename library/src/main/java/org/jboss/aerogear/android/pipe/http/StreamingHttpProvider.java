@@ -0,0 +1,47 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.http;
+
+/**
+ * A {@link HttpProvider} which can stream request bodies to the server.
+ */
+public interface StreamingHttpProvider extends HttpProvider {
+
+    /**
+     * Issues an HTTP request, consumes the content, and cleans up
+     * after itself.
+     *
+     * @param body the body of the http request, written while it is sent
+     *
+     * @return the HeaderAndBody response from the server
+     * @throws HttpException if the http request doesn't return status 200
+     */
+    public HeaderAndBody post(RequestBody body) throws HttpException;
+
+    /**
+     * Issues an HTTP request, consumes the content, and cleans up
+     * after itself.
+     *
+     * @param id an ID which will be appended to the baseURL
+     * @param body the body of the http request, written while it is sent
+     *
+     * @return the HeaderAndBody response from the server
+     * @throws HttpException if the http request doesn't return status 200
+     */
+    public HeaderAndBody put(String id, RequestBody body) throws HttpException;
+
+}
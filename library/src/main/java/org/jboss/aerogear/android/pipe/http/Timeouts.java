@@ -0,0 +1,103 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.http;
+
+/**
+ * The time budget of an operation: how long to wait for a connection, how
+ * long a read may wait for the next bytes, and how long the whole operation,
+ * including its retries, may take.
+ */
+public final class Timeouts {
+
+    /**
+     * The default connect and read timeout in milliseconds.
+     */
+    public static final int DEFAULT_TIMEOUT = 60000;
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final long deadline;
+
+    /**
+     * @param connectTimeout the time in milliseconds to wait for a
+     *            connection, 0 to wait forever
+     * @param readTimeout the time in milliseconds a read waits for the next
+     *            bytes of a response, 0 to wait forever
+     * @param deadline the time in milliseconds an operation may take as a
+     *            whole, 0 for no deadline
+     * @throws IllegalArgumentException if a value is negative
+     */
+    public Timeouts(int connectTimeout, int readTimeout, long deadline) {
+        if (connectTimeout < 0 || readTimeout < 0 || deadline < 0) {
+            throw new IllegalArgumentException("timeouts may not be negative");
+        }
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.deadline = deadline;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @return a timeout for a connection which also ends when remaining
+     *         milliseconds have passed
+     */
+    static int bound(int timeout, long remaining) {
+        if (remaining == Long.MAX_VALUE) {
+            return timeout;
+        }
+        int bounded = (int) Math.max(1, Math.min(remaining, Integer.MAX_VALUE));
+        return timeout == 0 ? bounded : Math.min(timeout, bounded);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Timeouts)) {
+            return false;
+        }
+        Timeouts other = (Timeouts) o;
+        return connectTimeout == other.connectTimeout && readTimeout == other.readTimeout
+                && deadline == other.deadline;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = connectTimeout;
+        result = 31 * result + readTimeout;
+        result = 31 * result + (int) (deadline ^ (deadline >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Timeouts{connectTimeout=" + connectTimeout + ", readTimeout=" + readTimeout + ", deadline=" + deadline + '}';
+    }
+
+}
@@ -21,17 +21,36 @@ import org.jboss.aerogear.android.core.Callback;
 import android.content.AsyncTaskLoader;
 import android.content.Context;
 import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
+import org.jboss.aerogear.android.pipe.http.RequestCancellation;
 
 /**
  * This class maintains references to the callback to be called when a Loader
  * supporting a Pipe's operation completes. It also contains a reference to any
  * exception which may have been thrown.
- 
+ * 
+ * Loaders created by a {@link LoaderAdapter} parse their result in
+ * {@link #loadInBackground()}, so the main thread only passes the parsed
+ * result to the callback. Once parsed the body of the response is dropped
+ * and the parsed result is retained instead, so it is delivered again after
+ * a configuration change without parsing it again. Results parsed from a
+ * body larger than {@link LoaderAdapter#setMaxRetainedBytes(int)} keep the
+ * body instead and drop the parsed result once it has been delivered; after
+ * a configuration change the body is parsed again in the background, it is
+ * never requested again.
+ * 
+ * Cancelling or resetting the loader aborts the requests of a running load.
  */
 public abstract class AbstractPipeLoader<T> extends AsyncTaskLoader<HeaderAndBody> {
 
+    private static final byte[] NO_BODY = new byte[0];
+
     private final Callback<T> callback;
     protected Exception exception;
+    private LoaderAdapter<?> adapter;
+    private Object parsedResult;
+    private boolean parsed = false;
+    private boolean retained = false;
+    private volatile RequestCancellation cancellation;
 
     public AbstractPipeLoader(Context context, Callback<T> callback) {
         super(context);
@@ -46,10 +65,109 @@ public abstract class AbstractPipeLoader<T> extends AsyncTaskLoader<HeaderAndBod
         return exception;
     }
 
+    /**
+     * @return true if the result was parsed in the background
+     */
+    public boolean isParsed() {
+        return parsed;
+    }
+
+    /**
+     * @return true if the result kept by the loader is a body whose parsed
+     *         result was dropped once delivered, which has to be parsed
+     *         again in the background before it is delivered again
+     */
+    protected boolean isParsePending() {
+        return adapter != null && !parsed && exception == null;
+    }
+
+    /**
+     * @return the object the callback receives, if {@link #isParsed()}
+     */
+    public Object getParsedResult() {
+        return parsedResult;
+    }
+
+    /**
+     * Binds a new cancellation to the loading thread, which
+     * {@link #cancelLoadInBackground()} and {@link #onReset()} cancel. This
+     * is called at the start of {@link #loadInBackground()}.
+     *
+     * @return the cancellation bound before, to pass to
+     *         {@link RequestCancellation#unbind(RequestCancellation)} once
+     *         the load is done
+     */
+    protected RequestCancellation bindCancellation() {
+        RequestCancellation load = new RequestCancellation();
+        cancellation = load;
+        return load.bind();
+    }
+
+    @Override
+    public void cancelLoadInBackground() {
+        cancelRequests();
+    }
+
+    private void cancelRequests() {
+        RequestCancellation load = cancellation;
+        if (load != null) {
+            load.cancel();
+        }
+    }
+
+    void setAdapter(LoaderAdapter<?> adapter) {
+        this.adapter = adapter;
+    }
+
+    /**
+     * Parses the result of the operation with the adapter which created the
+     * loader, this is called from {@link #loadInBackground()}. A failed
+     * parse fails the operation.
+     *
+     * @param result the raw result, may be null
+     * @return the result to deliver and retain, which has no body if the
+     *         parsed result is retained
+     */
+    protected HeaderAndBody parse(HeaderAndBody result) {
+        if (adapter == null || result == null || exception != null) {
+            return result;
+        }
+        try {
+            parsedResult = adapter.parseResult(result, this);
+        } catch (Exception e) {
+            exception = e;
+            return result;
+        }
+        parsed = true;
+        retained = result.getBodyLength() <= adapter.getMaxRetainedBytes();
+        if (!retained) {
+            // the body is smaller than its parsed result, keep it to parse again
+            return result;
+        }
+        return HeaderAndBody.wrap(NO_BODY, result.getHeaders());
+    }
+
+    /**
+     * Called by the adapter once the parsed result was handed to the
+     * callback. Drops it if it is too large to retain, the retained body is
+     * parsed again the next time the result is delivered.
+     */
+    void onDelivered() {
+        if (parsed && !retained) {
+            parsedResult = null;
+            parsed = false;
+        }
+    }
+
     @Override
     protected void onReset() {
         super.onReset();
+        cancelRequests();
+        cancellation = null;
         exception = null;
+        parsedResult = null;
+        parsed = false;
+        retained = false;
     }
 
     public Callback<T> getCallback() {
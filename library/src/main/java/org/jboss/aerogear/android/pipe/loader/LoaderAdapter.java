@@ -18,6 +18,7 @@ package org.jboss.aerogear.android.pipe.loader;
 
 import java.net.URI;
 import java.net.URL;
+import java.util.Collection;
 import java.util.List;
 import java.util.HashMap;
 
@@ -25,10 +26,13 @@ import org.jboss.aerogear.android.core.Callback;
 import org.jboss.aerogear.android.core.ReadFilter;
 import org.jboss.aerogear.android.pipe.callback.AbstractActivityCallback;
 import org.jboss.aerogear.android.pipe.callback.AbstractFragmentCallback;
+import org.jboss.aerogear.android.pipe.BatchResult;
 import org.jboss.aerogear.android.pipe.LoaderPipe;
+import org.jboss.aerogear.android.pipe.PipeManager;
 import org.jboss.aerogear.android.pipe.Pipe;
 import org.jboss.aerogear.android.pipe.PipeHandler;
 import org.jboss.aerogear.android.pipe.RequestBuilder;
+import org.jboss.aerogear.android.pipe.RequestHandle;
 import org.jboss.aerogear.android.pipe.ResponseParser;
 
 import android.annotation.TargetApi;
@@ -45,9 +49,15 @@ import android.util.Log;
 import java.util.ArrayList;
 
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
-import org.jboss.aerogear.android.core.reflection.Scan;
+import org.jboss.aerogear.android.pipe.metrics.PipeMetrics;
+import org.jboss.aerogear.android.pipe.paging.PageIterator;
+import org.jboss.aerogear.android.pipe.rest.Outbox;
+import org.jboss.aerogear.android.pipe.rest.RestAdapter;
+import org.jboss.aerogear.android.pipe.util.ClassMetadata;
 import org.jboss.aerogear.android.pipe.callback.AbstractSupportFragmentCallback;
 
 /**
@@ -59,6 +69,12 @@ import org.jboss.aerogear.android.pipe.callback.AbstractSupportFragmentCallback;
 public class LoaderAdapter<T> implements LoaderPipe<T>,
         LoaderManager.LoaderCallbacks<HeaderAndBody> {
 
+    /**
+     * The default size of the largest response whose parsed result a loader
+     * retains.
+     */
+    public static final int DEFAULT_MAX_RETAINED_BYTES = 256 * 1024;
+
     private static final String TAG = LoaderAdapter.class.getSimpleName();
     private final Handler handler;
     private Map<String, List<Integer>> idsForNamedPipes;
@@ -77,6 +93,9 @@ public class LoaderAdapter<T> implements LoaderPipe<T>,
     private final String name;
     private final RequestBuilder<T> requestBuilder;
     private final ResponseParser<T> responseParser;
+    private final PipeMetrics metrics;
+    private int maxRetainedBytes = DEFAULT_MAX_RETAINED_BYTES;
+    private final Set<DetachableCallback<?>> outboxCallbacks = new HashSet<DetachableCallback<?>>();
 
     public LoaderAdapter(Activity activity, Pipe<T> pipe,
             String name) {
@@ -86,6 +105,7 @@ public class LoaderAdapter<T> implements LoaderPipe<T>,
         this.manager = activity.getLoaderManager();
         this.applicationContext = activity.getApplicationContext();
         this.name = name;
+        this.metrics = PipeManager.getMetrics(name);
         this.handler = new Handler(Looper.getMainLooper());
         this.activity = activity;
     }
@@ -98,6 +118,7 @@ public class LoaderAdapter<T> implements LoaderPipe<T>,
         this.responseParser = pipe.getResponseParser();
         this.applicationContext = applicationContext;
         this.name = name;
+        this.metrics = PipeManager.getMetrics(name);
         this.handler = new Handler(Looper.getMainLooper());
         this.fragment = fragment;
     }
@@ -110,17 +131,60 @@ public class LoaderAdapter<T> implements LoaderPipe<T>,
         this.responseParser = pipe.getResponseParser();
         this.applicationContext = applicationContext;
         this.name = name;
+        this.metrics = PipeManager.getMetrics(name);
         this.handler = new Handler(Looper.getMainLooper());
         this.supportFragment = supportFragment;
     }
 
+    /**
+     * Loaders retain the parsed result of their operation to deliver it again
+     * after a configuration change. Results parsed from a response body
+     * larger than maxRetainedBytes are dropped once delivered, the loader
+     * keeps the body instead and parses it again in the background for the
+     * next delivery.
+     *
+     * @param maxRetainedBytes the size in bytes of the largest body whose
+     *            parsed result is retained, 0 to never retain results
+     * @throws IllegalArgumentException if maxRetainedBytes is negative
+     */
+    public void setMaxRetainedBytes(int maxRetainedBytes) {
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException("maxRetainedBytes may not be negative");
+        }
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    public int getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    /**
+     * Detaches the callbacks of the saves and removes which went through the
+     * outbox of the wrapped pipe and were not sent yet. The operations are
+     * still sent, but their callbacks are no longer called and no longer
+     * hold on to the activity or fragment.
+     *
+     * Pending operations can wait for connectivity much longer than an
+     * activity lives, call this from its onDestroy.
+     */
+    public void detachOutboxCallbacks() {
+        List<DetachableCallback<?>> attached;
+        synchronized (outboxCallbacks) {
+            attached = new ArrayList<DetachableCallback<?>>(outboxCallbacks);
+            outboxCallbacks.clear();
+        }
+        for (DetachableCallback<?> callback : attached) {
+            callback.detach();
+        }
+    }
+
     @Override
     public URL getUrl() {
         return pipe.getUrl();
     }
 
     @Override
-    public void read(String idx, Callback<T> callback) {
+    public RequestHandle read(String idx, Callback<T> callback) {
         ReadFilter filter = new ReadFilter();
         filter.setLinkUri(URI.create(idx));
 
@@ -129,48 +193,123 @@ public class LoaderAdapter<T> implements LoaderPipe<T>,
         bundle.putSerializable(CALLBACK, callback);
         bundle.putSerializable(FILTER, filter);
         bundle.putSerializable(METHOD, Methods.READ_ID);
-        manager.initLoader(id, bundle, this);
+        return initLoader(id, bundle);
     }
 
     @Override
-    public void read(Callback<List<T>> callback) {
+    public RequestHandle read(Callback<List<T>> callback) {
         int id = Arrays.hashCode(new Object[] { name, callback });
         Bundle bundle = new Bundle();
         bundle.putSerializable(CALLBACK, callback);
         bundle.putSerializable(FILTER, null);
         bundle.putSerializable(METHOD, Methods.READ);
-        manager.initLoader(id, bundle, this);
+        return initLoader(id, bundle);
     }
 
     @Override
-    public void read(ReadFilter filter, Callback<List<T>> callback) {
+    public RequestHandle read(ReadFilter filter, Callback<List<T>> callback) {
         int id = Arrays.hashCode(new Object[] { name, filter, callback });
         Bundle bundle = new Bundle();
         bundle.putSerializable(CALLBACK, callback);
         bundle.putSerializable(FILTER, filter);
         bundle.putSerializable(METHOD, Methods.READ);
-        manager.initLoader(id, bundle, this);
+        return initLoader(id, bundle);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * If the wrapped pipe has an outbox, the save goes through it instead
+     * of a loader, so it waits for connectivity rather than for the
+     * activity. The callback is called on the main thread, and may outlive
+     * the activity until {@link #detachOutboxCallbacks()} is called.
+     */
     @Override
-    public void save(T item, Callback<T> callback) {
+    public RequestHandle save(T item, Callback<T> callback) {
+        Outbox<T> outbox = getOutbox();
+        if (outbox != null) {
+            verifyCallback(callback);
+            return outbox.save(item, attach(new MainThreadCallback<T>(callback)));
+        }
         int id = Arrays.hashCode(new Object[] { name, item, callback });
         Bundle bundle = new Bundle();
         bundle.putSerializable(CALLBACK, callback);
         bundle.putSerializable(ITEM, requestBuilder.getBody(item));
-        bundle.putString(SAVE_ID, Scan.findIdValueIn(item));
+        bundle.putString(SAVE_ID, ClassMetadata.forClass(item.getClass()).getIdValue(item));
         bundle.putSerializable(METHOD, Methods.SAVE);
-        manager.initLoader(id, bundle, this);
+        return initLoader(id, bundle);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * If the wrapped pipe has an outbox, the remove goes through it instead
+     * of a loader. The callback is called on the main thread, and may
+     * outlive the activity until {@link #detachOutboxCallbacks()} is called.
+     */
     @Override
-    public void remove(String toRemoveId, Callback<Void> callback) {
+    public RequestHandle remove(String toRemoveId, Callback<Void> callback) {
+        Outbox<T> outbox = getOutbox();
+        if (outbox != null) {
+            verifyCallback(callback);
+            return outbox.remove(toRemoveId, attach(new MainThreadCallback<Void>(callback)));
+        }
         int id = Arrays.hashCode(new Object[] { name, toRemoveId, callback });
         Bundle bundle = new Bundle();
         bundle.putSerializable(CALLBACK, callback);
         bundle.putSerializable(REMOVE_ID, toRemoveId);
         bundle.putSerializable(METHOD, Methods.REMOVE);
-        manager.initLoader(id, bundle, this);
+        return initLoader(id, bundle);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The batch runs on the wrapped pipe, not in a loader, and does not
+     * survive configuration changes. The callback is called on the main
+     * thread.
+     */
+    @Override
+    public RequestHandle saveAll(Collection<T> items, Callback<BatchResult<T>> callback) {
+        verifyCallback(callback);
+        return pipe.saveAll(items, new MainThreadCallback<BatchResult<T>>(callback));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The batch runs on the wrapped pipe, not in a loader, and does not
+     * survive configuration changes. The callback is called on the main
+     * thread.
+     */
+    @Override
+    public RequestHandle removeAll(Collection<String> ids, Callback<BatchResult<String>> callback) {
+        verifyCallback(callback);
+        return pipe.removeAll(ids, new MainThreadCallback<BatchResult<String>>(callback));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The pages are read by the wrapped pipe, not in a loader, so the
+     * iterator may be used on any thread but the main thread.
+     */
+    @Override
+    public PageIterator<T> iterate(ReadFilter filter) {
+        return pipe.iterate(filter);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The pages are read by the wrapped pipe, not in a loader, and the read
+     * does not survive configuration changes. The callback is called on the
+     * main thread.
+     */
+    @Override
+    public RequestHandle readAll(ReadFilter filter, Callback<List<T>> callback) {
+        verifyCallback(callback);
+        return pipe.readAll(filter, new MainThreadCallback<List<T>>(callback));
     }
 
     @Override
@@ -228,6 +367,9 @@ public class LoaderAdapter<T> implements LoaderPipe<T>,
             }
             break;
         }
+        if (loader != null) {
+            loader.setAdapter(this);
+        }
         return loader;
     }
 
@@ -241,8 +383,9 @@ public class LoaderAdapter<T> implements LoaderPipe<T>,
         } else {
             final AbstractPipeLoader<HeaderAndBody> modernLoader = (AbstractPipeLoader<HeaderAndBody>) loader;
             Object object = null;
-            if (!modernLoader.hasException() && data != null && data.getBody() != null) {
-                object = extractObject(data, modernLoader);
+            if (!modernLoader.hasException() && data != null) {
+                object = modernLoader.getParsedResult();
+                modernLoader.onDelivered();
             }
 
             handler.post(new CallbackHandler<T>(this, modernLoader, object));
@@ -323,8 +466,55 @@ public class LoaderAdapter<T> implements LoaderPipe<T>,
         callback.setSupportFragment(null);
     }
 
-    private Object extractObject(HeaderAndBody data, AbstractPipeLoader<HeaderAndBody> modernLoader) {
-        List results = responseParser.handleResponse(data, getKlass());
+    private void deliverSuccess(Callback callback, Object data) {
+        long start = System.nanoTime();
+        if (callback instanceof AbstractFragmentCallback) {
+            fragmentSuccess(callback, data);
+        } else if (callback instanceof AbstractSupportFragmentCallback) {
+            supportFragmentSuccess(callback, data);
+        } else if (callback instanceof AbstractActivityCallback) {
+            activitySuccess(callback, data);
+        } else {
+            callback.onSuccess(data);
+        }
+        record(PipeMetrics.Stage.CALLBACK, start);
+    }
+
+    private void deliverFailure(Callback callback, Exception exception) {
+        long start = System.nanoTime();
+        if (callback instanceof AbstractFragmentCallback) {
+            fragmentFailure(callback, exception);
+        } else if (callback instanceof AbstractSupportFragmentCallback) {
+            supportFragmentFailure(callback, exception);
+        } else if (callback instanceof AbstractActivityCallback) {
+            activityFailure(callback, exception);
+        } else {
+            callback.onFailure(exception);
+        }
+        record(PipeMetrics.Stage.CALLBACK, start);
+    }
+
+    private void record(PipeMetrics.Stage stage, long start) {
+        if (metrics != null) {
+            metrics.record(stage, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Turns the raw result of a loader into the object its callback receives.
+     * Loaders call this in the background. Reads with a filter through a
+     * {@link RestAdapter} are paged like the reads of the adapter, with this
+     * pipe reading the further pages.
+     */
+    Object parseResult(HeaderAndBody data, AbstractPipeLoader<?> modernLoader) {
+        List results;
+        if (modernLoader instanceof ReadLoader && !(modernLoader instanceof IdReadLoader) && pipe instanceof RestAdapter) {
+            results = ((RestAdapter<T>) pipe).parseReadResponse(data, ((ReadLoader) modernLoader).getFilter(), this);
+        } else {
+            long start = System.nanoTime();
+            results = responseParser.handleResponse(data, getKlass());
+            record(PipeMetrics.Stage.PARSE, start);
+        }
 
         if (results == null || results.size() == 0) {
             return results;
@@ -355,34 +545,157 @@ public class LoaderAdapter<T> implements LoaderPipe<T>,
             if (modernLoader.hasException()) {
                 final Exception exception = modernLoader.getException();
                 Log.e(TAG, exception.getMessage(), exception);
-                if (modernLoader.getCallback() instanceof AbstractFragmentCallback) {
-                    adapter.fragmentFailure(modernLoader.getCallback(),exception);
-                } else if (modernLoader.getCallback() instanceof AbstractSupportFragmentCallback){
-                    adapter.supportFragmentFailure(modernLoader.getCallback(),exception);
-                } else if (modernLoader.getCallback() instanceof AbstractActivityCallback) {
-                    adapter.activityFailure(modernLoader.getCallback(),
-                            exception);
-                } else {
-                    modernLoader.getCallback().onFailure(exception);
-                }
+                adapter.deliverFailure(modernLoader.getCallback(), exception);
+            } else {
+                adapter.deliverSuccess(modernLoader.getCallback(), data);
+            }
 
+        }
+    }
+
+    private RequestHandle initLoader(int id, Bundle bundle) {
+        manager.initLoader(id, bundle, this);
+        return new LoaderHandle(id);
+    }
+
+    /**
+     * Cancels an operation which runs in a loader by destroying the loader,
+     * which aborts its requests.
+     */
+    private class LoaderHandle implements RequestHandle, Runnable {
+
+        private final int id;
+        private volatile boolean cancelled = false;
+
+        LoaderHandle(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                run();
             } else {
+                handler.post(this);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void run() {
+            if (manager.getLoader(id) != null) {
+                manager.destroyLoader(id);
+            }
+        }
+    }
+
+    /**
+     * Passes the result of an operation which does not run in a loader to a
+     * callback on the main thread.
+     */
+    private class MainThreadCallback<R> implements Callback<R> {
+
+        private static final long serialVersionUID = 1L;
+        private final Callback<R> callback;
+
+        MainThreadCallback(Callback<R> callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onSuccess(final R data) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliverSuccess(callback, data);
+                }
+            });
+        }
 
-                if (modernLoader.getCallback() instanceof AbstractFragmentCallback) {
-                    adapter.fragmentSuccess(modernLoader.getCallback(), data);
-                } else if (modernLoader.getCallback() instanceof AbstractSupportFragmentCallback) {
-                    adapter.supportFragmentSuccess(modernLoader.getCallback(), data);
-                } else if (modernLoader.getCallback() instanceof AbstractActivityCallback) {
-                    adapter.activitySuccess(modernLoader.getCallback(), data);
-                } else {
-                    modernLoader.getCallback().onSuccess((T) data);
+        @Override
+        public void onFailure(final Exception exception) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Log.e(TAG, exception.getMessage(), exception);
+                    deliverFailure(callback, exception);
                 }
+            });
+        }
+
+    }
+
+    /**
+     * Passes the outcome of an outbox operation to a callback until it is
+     * detached. It holds no reference to this adapter, so the outbox keeps
+     * nothing of the activity once the callback is detached.
+     */
+    private static final class DetachableCallback<R> implements Callback<R> {
+
+        private static final long serialVersionUID = 1L;
+        private final Set<DetachableCallback<?>> attached;
+        private Callback<R> callback;
+
+        DetachableCallback(Set<DetachableCallback<?>> attached, Callback<R> callback) {
+            this.attached = attached;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onSuccess(R data) {
+            Callback<R> target = detach();
+            if (target != null) {
+                target.onSuccess(data);
             }
+        }
+
+        @Override
+        public void onFailure(Exception exception) {
+            Callback<R> target = detach();
+            if (target != null) {
+                target.onFailure(exception);
+            }
+        }
+
+        /**
+         * @return the callback, null if it was detached before
+         */
+        Callback<R> detach() {
+            synchronized (attached) {
+                attached.remove(this);
+                Callback<R> target = callback;
+                callback = null;
+                return target;
+            }
+        }
+
+    }
+
+    private <R> Callback<R> attach(Callback<R> callback) {
+        DetachableCallback<R> detachable = new DetachableCallback<R>(outboxCallbacks, callback);
+        synchronized (outboxCallbacks) {
+            outboxCallbacks.add(detachable);
+        }
+        return detachable;
+    }
 
+    @SuppressWarnings("unchecked")
+    private Outbox<T> getOutbox() {
+        if (pipe instanceof RestAdapter) {
+            return ((RestAdapter<T>) pipe).getOutbox();
         }
+        return null;
     }
 
-    private void verifyCallback(Callback<List<T>> callback) {
+    private void verifyCallback(Callback<?> callback) {
         if (callback instanceof AbstractActivityCallback) {
             if (activity == null) {
                 throw new IllegalStateException("An AbstractActivityCallback was supplied, but there is no Activity.");
@@ -25,6 +25,7 @@ import org.jboss.aerogear.android.pipe.PipeHandler;
 
 import android.content.Context;
 import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
+import org.jboss.aerogear.android.pipe.http.RequestCancellation;
 
 /**
  * This class performs a read operation on behalf of a Pipe using the Loader
@@ -50,17 +51,30 @@ public class ReadLoader<T> extends AbstractPipeLoader<List<T>> {
 
     @Override
     public HeaderAndBody loadInBackground() {
+        RequestCancellation previous = bindCancellation();
         try {
-            return (result = runner.onRawReadWithFilter(filter, requestingPipe));
+            if (result != null && isParsePending()) {
+                // the kept body of a delivered result
+                result = parse(result);
+                return result;
+            }
+            result = parse(runner.onRawReadWithFilter(filter, requestingPipe));
+            return result;
         } catch (Exception e) {
             super.exception = e;
+        } finally {
+            RequestCancellation.unbind(previous);
         }
         return null;
     }
 
+    ReadFilter getFilter() {
+        return filter;
+    }
+
     @Override
     protected void onStartLoading() {
-        if (result != null) {
+        if (result != null && !isParsePending()) {
             deliverResult(result);
         } else {
             forceLoad();
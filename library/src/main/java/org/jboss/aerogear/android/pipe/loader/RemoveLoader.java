@@ -21,6 +21,7 @@ import org.jboss.aerogear.android.pipe.PipeHandler;
 
 import android.content.Context;
 import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
+import org.jboss.aerogear.android.pipe.http.RequestCancellation;
 
 /**
  * This class performs a remove operation on behalf of a Pipe using the Loader
@@ -44,11 +45,14 @@ public class RemoveLoader<T> extends AbstractPipeLoader<T> {
 
     @Override
     public HeaderAndBody loadInBackground() {
+        RequestCancellation previous = bindCancellation();
         try {
             runner.onRemove(id);
             isFinished = true;
         } catch (Exception e) {
             super.exception = e;
+        } finally {
+            RequestCancellation.unbind(previous);
         }
         return null;
     }
@@ -21,6 +21,7 @@ import org.jboss.aerogear.android.pipe.PipeHandler;
 
 import android.content.Context;
 import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
+import org.jboss.aerogear.android.pipe.http.RequestCancellation;
 
 /**
  * This class performs a save operation on behalf of a Pipe using the Loader
@@ -47,17 +48,26 @@ public class SaveLoader<T> extends AbstractPipeLoader<T> {
 
     @Override
     public HeaderAndBody loadInBackground() {
+        RequestCancellation previous = bindCancellation();
         try {
-            return (result = runner.onRawSave(id, data));
+            if (result != null && isParsePending()) {
+                // the kept body of a delivered result
+                result = parse(result);
+                return result;
+            }
+            result = parse(runner.onRawSave(id, data));
+            return result;
         } catch (Exception e) {
             super.exception = e;
+        } finally {
+            RequestCancellation.unbind(previous);
         }
         return null;
     }
 
     @Override
     protected void onStartLoading() {
-        if (result != null) {
+        if (result != null && !isParsePending()) {
             deliverResult(result);
         } else {
             forceLoad();
@@ -0,0 +1,161 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of latencies. Values are counted in buckets whose
+ * bounds are powers of two microseconds, so percentiles are approximate to
+ * within a factor of two while recording stays a handful of atomic updates.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The number of buckets. The last one holds everything from 2^38
+     * microseconds (about three days) upwards.
+     */
+    static final int BUCKET_COUNT = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * @param nanos a latency in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        buckets.incrementAndGet(bucketOf(micros));
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+
+        long max;
+        while (micros > (max = maxMicros.get())) {
+            if (maxMicros.compareAndSet(max, micros)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * The snapshot is not atomic, values recorded while it is taken may be
+     * counted in some of its figures only.
+     *
+     * @return the current state of this histogram
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return new Snapshot(counts, count.get(), sumMicros.get(), maxMicros.get());
+    }
+
+    static int bucketOf(long micros) {
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * @return the exclusive upper bound of a bucket in microseconds
+     */
+    static long upperBoundOf(int bucket) {
+        return 1L << bucket;
+    }
+
+    /**
+     * An immutable copy of a histogram.
+     */
+    public static final class Snapshot {
+
+        private final long[] bucketCounts;
+        private final long count;
+        private final long sumMicros;
+        private final long maxMicros;
+
+        Snapshot(long[] bucketCounts, long count, long sumMicros, long maxMicros) {
+            this.bucketCounts = bucketCounts;
+            this.count = count;
+            this.sumMicros = sumMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSumMicros() {
+            return sumMicros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        public long getMeanMicros() {
+            return count == 0 ? 0 : sumMicros / count;
+        }
+
+        /**
+         * @param percentile a value between 0 and 100
+         * @return the upper bound of the bucket the percentile falls in,
+         *         never more than the largest recorded value
+         */
+        public long getPercentileMicros(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100");
+            }
+
+            long total = 0;
+            for (long bucketCount : bucketCounts) {
+                total += bucketCount;
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < bucketCounts.length; i++) {
+                seen += bucketCounts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBoundOf(i) - 1, maxMicros);
+                }
+            }
+            return maxMicros;
+        }
+
+        /**
+         * @return the number of values in each bucket, bucket i holds values
+         *         below 2^i microseconds which are not in a lower bucket
+         */
+        public long[] getBucketCounts() {
+            return bucketCounts.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + getMeanMicros() + "us, p50=" + getPercentileMicros(50)
+                    + "us, p99=" + getPercentileMicros(99) + "us, max=" + maxMicros + "us";
+        }
+
+    }
+
+}
@@ -0,0 +1,36 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.metrics;
+
+import java.util.List;
+
+/**
+ * Receives snapshots of the metrics of all registered pipes.
+ *
+ * See {@link org.jboss.aerogear.android.pipe.PipeManager#addMetricsReporter(MetricsReporter)}
+ */
+public interface MetricsReporter {
+
+    /**
+     * Called by {@link org.jboss.aerogear.android.pipe.PipeManager#reportMetrics()}
+     * on the calling thread.
+     *
+     * @param snapshots one snapshot per registered pipe
+     */
+    void report(List<PipeMetricsSnapshot> snapshots);
+
+}
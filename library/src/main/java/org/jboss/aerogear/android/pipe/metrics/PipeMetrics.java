@@ -0,0 +1,164 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of a single pipe. Every method may be
+ * called from any thread, recording never blocks.
+ *
+ * Pipes created through {@link org.jboss.aerogear.android.pipe.PipeManager}
+ * register their metrics there under the name of the pipe.
+ */
+public final class PipeMetrics {
+
+    /**
+     * The stages of a request which are timed.
+     */
+    public enum Stage {
+        /**
+         * From handing the request to the executor of the pipe until a
+         * thread starts running it.
+         */
+        QUEUE_WAIT,
+        /**
+         * From opening the connection until it is connected, close to 0 if
+         * a kept alive connection was reused.
+         */
+        CONNECT,
+        /**
+         * From the end of sending the request until the status line of the
+         * response was read.
+         */
+        TIME_TO_FIRST_BYTE,
+        /**
+         * Reading the response body.
+         */
+        DOWNLOAD,
+        /**
+         * Turning the response body into objects.
+         */
+        PARSE,
+        /**
+         * Running a callback with the result of a request.
+         */
+        CALLBACK
+    }
+
+    private static final int MAX_STATUS_CODE = 599;
+
+    private final String name;
+    private final Map<Stage, LatencyHistogram> latencies = new EnumMap<Stage, LatencyHistogram>(Stage.class);
+    private final AtomicLongArray statusCodes = new AtomicLongArray(MAX_STATUS_CODE + 1);
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    /**
+     * @param name the name of the pipe
+     */
+    public PipeMetrics(String name) {
+        this.name = name;
+        for (Stage stage : Stage.values()) {
+            latencies.put(stage, new LatencyHistogram());
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param stage the stage which was timed
+     * @param nanos how long it took, in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+        latencies.get(stage).record(nanos);
+    }
+
+    /**
+     * Counts a request which was sent to the server.
+     */
+    public void recordRequest() {
+        requestCount.incrementAndGet();
+    }
+
+    /**
+     * @param statusCode the status code of a response
+     */
+    public void recordStatusCode(int statusCode) {
+        if (statusCode >= 0 && statusCode <= MAX_STATUS_CODE) {
+            statusCodes.incrementAndGet(statusCode);
+        }
+    }
+
+    /**
+     * Counts a request which failed without a response, for instance because
+     * of an I/O error.
+     */
+    public void recordFailure() {
+        failureCount.incrementAndGet();
+    }
+
+    /**
+     * @param bytes the number of request body bytes sent, as they went over
+     *            the wire
+     */
+    public void recordBytesSent(long bytes) {
+        bytesSent.addAndGet(bytes);
+    }
+
+    /**
+     * @param bytes the number of response body bytes received, as they went
+     *            over the wire
+     */
+    public void recordBytesReceived(long bytes) {
+        bytesReceived.addAndGet(bytes);
+    }
+
+    /**
+     * @param stage a timed stage
+     * @return the histogram of stage
+     */
+    public LatencyHistogram getLatency(Stage stage) {
+        return latencies.get(stage);
+    }
+
+    /**
+     * @return a copy of the current state of these metrics
+     */
+    public PipeMetricsSnapshot snapshot() {
+        Map<Stage, LatencyHistogram.Snapshot> latencySnapshots = new EnumMap<Stage, LatencyHistogram.Snapshot>(Stage.class);
+        for (Map.Entry<Stage, LatencyHistogram> entry : latencies.entrySet()) {
+            latencySnapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+
+        long[] statusCounts = new long[MAX_STATUS_CODE + 1];
+        for (int i = 0; i < statusCounts.length; i++) {
+            statusCounts[i] = statusCodes.get(i);
+        }
+
+        return new PipeMetricsSnapshot(name, System.currentTimeMillis(), latencySnapshots, statusCounts,
+                requestCount.get(), failureCount.get(), bytesSent.get(), bytesReceived.get());
+    }
+
+}
@@ -0,0 +1,117 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable copy of the {@link PipeMetrics} of a pipe.
+ */
+public final class PipeMetricsSnapshot {
+
+    private final String name;
+    private final long timestamp;
+    private final Map<PipeMetrics.Stage, LatencyHistogram.Snapshot> latencies;
+    private final Map<Integer, Long> statusCodes;
+    private final long requestCount;
+    private final long failureCount;
+    private final long bytesSent;
+    private final long bytesReceived;
+
+    PipeMetricsSnapshot(String name, long timestamp, Map<PipeMetrics.Stage, LatencyHistogram.Snapshot> latencies,
+            long[] statusCounts, long requestCount, long failureCount, long bytesSent, long bytesReceived) {
+        this.name = name;
+        this.timestamp = timestamp;
+        this.latencies = Collections.unmodifiableMap(latencies);
+        this.requestCount = requestCount;
+        this.failureCount = failureCount;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+
+        Map<Integer, Long> codes = new TreeMap<Integer, Long>();
+        for (int i = 0; i < statusCounts.length; i++) {
+            if (statusCounts[i] > 0) {
+                codes.put(i, statusCounts[i]);
+            }
+        }
+        this.statusCodes = Collections.unmodifiableMap(codes);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return when the snapshot was taken, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public LatencyHistogram.Snapshot getLatency(PipeMetrics.Stage stage) {
+        return latencies.get(stage);
+    }
+
+    /**
+     * @return the number of responses per status code, ordered by code
+     */
+    public Map<Integer, Long> getStatusCodes() {
+        return statusCodes;
+    }
+
+    /**
+     * @param statusCode a status code
+     * @return the number of responses with statusCode
+     */
+    public long getStatusCodeCount(int statusCode) {
+        Long count = statusCodes.get(statusCode);
+        return count == null ? 0 : count;
+    }
+
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(name).append(": requests=").append(requestCount)
+                .append(", failures=").append(failureCount)
+                .append(", sent=").append(bytesSent)
+                .append(", received=").append(bytesReceived)
+                .append(", status=").append(statusCodes);
+        for (Map.Entry<PipeMetrics.Stage, LatencyHistogram.Snapshot> entry : latencies.entrySet()) {
+            builder.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        return builder.toString();
+    }
+
+}
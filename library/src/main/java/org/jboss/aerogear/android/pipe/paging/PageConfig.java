@@ -35,6 +35,29 @@ public class PageConfig {
         }
     }
 
+    /**
+     * Which neighbouring pages are read in the background once a page is
+     * delivered.
+     */
+    public static enum Prefetch {
+        NONE, NEXT, NEXT_AND_PREVIOUS
+    }
+
+    /**
+     * The default number of prefetched pages a pipe holds.
+     */
+    public static final int DEFAULT_PREFETCH_CACHE_SIZE = 4;
+
+    /**
+     * The default number of pages a {@link PageIterator} holds.
+     */
+    public static final int DEFAULT_MAX_RESIDENT_PAGES = 2;
+
+    /**
+     * The default number of pages a parallel read requests at once.
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
     private MetadataLocation metadataLocation = MetadataLocations.WEB_LINKING;
     private String nextIdentifier = "next";
     private String previousIdentifier = "previous";
@@ -42,6 +65,11 @@ public class PageConfig {
     private Integer limitValue = 10;
     private ParameterProvider parameterProvider = new DefaultParameterProvider();
     private PageParameterExtractor pageParameterExtractor;
+    private Prefetch prefetch = Prefetch.NONE;
+    private int prefetchCacheSize = DEFAULT_PREFETCH_CACHE_SIZE;
+    private int maxResidentPages = DEFAULT_MAX_RESIDENT_PAGES;
+    private String totalCountIdentifier;
+    private int parallelism = DEFAULT_PARALLELISM;
 
     /**
      * MetadataLocation indicates whether paging information is received from
@@ -193,4 +221,124 @@ public class PageConfig {
     public void setPageParameterExtractor(PageParameterExtractor pageParameterExtractor) {
         this.pageParameterExtractor = pageParameterExtractor;
     }
+
+    /**
+     * Prefetch defines which neighbouring pages are read in the background
+     * as soon as a page is delivered, so {@link PagedList#next(org.jboss.aerogear.android.core.Callback)}
+     * and {@link PagedList#previous(org.jboss.aerogear.android.core.Callback)}
+     * can complete from memory. The default is NONE.
+     * 
+     * @return the current prefetch setting
+     */
+    public Prefetch getPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * Prefetch defines which neighbouring pages are read in the background
+     * as soon as a page is delivered. The default is NONE.
+     * 
+     * @param prefetch the pages to prefetch, may not be null
+     */
+    public void setPrefetch(Prefetch prefetch) {
+        if (prefetch == null) {
+            throw new IllegalArgumentException("prefetch may not be null");
+        }
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * PrefetchCacheSize is the number of prefetched pages a pipe holds at
+     * most. When it is exceeded the oldest prefetched page is dropped and
+     * read again when it is asked for.
+     * 
+     * @return the current cache size
+     */
+    public int getPrefetchCacheSize() {
+        return prefetchCacheSize;
+    }
+
+    /**
+     * PrefetchCacheSize is the number of prefetched pages a pipe holds at
+     * most. The default is {@link #DEFAULT_PREFETCH_CACHE_SIZE}.
+     * 
+     * @param prefetchCacheSize a positive number of pages
+     */
+    public void setPrefetchCacheSize(int prefetchCacheSize) {
+        if (prefetchCacheSize <= 0) {
+            throw new IllegalArgumentException("prefetchCacheSize must be positive");
+        }
+        this.prefetchCacheSize = prefetchCacheSize;
+    }
+
+    /**
+     * MaxResidentPages is the number of pages a {@link PageIterator} holds
+     * at most, counting the page being iterated and the page being read
+     * ahead.
+     * 
+     * @return the current number of pages
+     */
+    public int getMaxResidentPages() {
+        return maxResidentPages;
+    }
+
+    /**
+     * MaxResidentPages is the number of pages a {@link PageIterator} holds
+     * at most. With 1 no page is read ahead. The default is
+     * {@link #DEFAULT_MAX_RESIDENT_PAGES}.
+     * 
+     * @param maxResidentPages a positive number of pages
+     */
+    public void setMaxResidentPages(int maxResidentPages) {
+        if (maxResidentPages <= 0) {
+            throw new IllegalArgumentException("maxResidentPages must be positive");
+        }
+        this.maxResidentPages = maxResidentPages;
+    }
+
+    /**
+     * TotalCountIdentifier names the header, or with {@link MetadataLocations#BODY}
+     * the element of the body, which holds the total number of items of the
+     * collection. It is needed to read offset addressed pages in parallel.
+     * (default: null)
+     * 
+     * @return the current identifier
+     */
+    public String getTotalCountIdentifier() {
+        return totalCountIdentifier;
+    }
+
+    /**
+     * TotalCountIdentifier names the header, or with {@link MetadataLocations#BODY}
+     * the element of the body, which holds the total number of items of the
+     * collection. Nested elements are separated by dots. (default: null)
+     * 
+     * @param totalCountIdentifier the name of the count, for example
+     *            X-Total-Count
+     */
+    public void setTotalCountIdentifier(String totalCountIdentifier) {
+        this.totalCountIdentifier = totalCountIdentifier;
+    }
+
+    /**
+     * Parallelism is the number of pages a parallel read requests at once.
+     * 
+     * @return the current parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Parallelism is the number of pages a parallel read requests at once.
+     * The default is {@link #DEFAULT_PARALLELISM}.
+     * 
+     * @param parallelism a positive number of pages
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
 }
@@ -0,0 +1,202 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.paging;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.jboss.aerogear.android.core.Callback;
+import org.jboss.aerogear.android.core.ReadFilter;
+import org.jboss.aerogear.android.pipe.Pipe;
+
+/**
+ * Iterates over the items of all pages of a collection, following the next
+ * links of each {@link WrappingPagedList} whichever {@link PageConfig.MetadataLocations}
+ * they come from. Pages are read when they are needed and ahead of the
+ * consumer, but no more than maxResidentPages pages, counting the page being
+ * iterated and the page being read, are held at once.
+ *
+ * The iterator blocks while it waits for a page, so it must not be used on
+ * the main thread. If a read fails {@link #hasNext()} and {@link #next()}
+ * throw a RuntimeException with the failure as its cause.
+ *
+ * @param <T> the type of the items
+ */
+public final class PageIterator<T> implements Iterator<T>, Closeable {
+
+    private final Pipe<T> pipe;
+    private final int maxResidentPages;
+    private final PageCallback callback = new PageCallback();
+
+    private final Deque<List<T>> pages = new ArrayDeque<List<T>>();
+    private Iterator<T> current;
+    private ReadFilter nextFilter;
+    private boolean reading = false;
+    private boolean closed = false;
+    private Exception failure;
+
+    /**
+     * @param pipe the pipe to read the pages from
+     * @param filter the filter of the first page, may be null
+     * @param maxResidentPages the number of pages held at most, must be
+     *            positive
+     */
+    public PageIterator(Pipe<T> pipe, ReadFilter filter, int maxResidentPages) {
+        if (maxResidentPages <= 0) {
+            throw new IllegalArgumentException("maxResidentPages must be positive");
+        }
+        this.pipe = pipe;
+        this.nextFilter = filter == null ? new ReadFilter() : filter;
+        this.maxResidentPages = maxResidentPages;
+    }
+
+    /**
+     * @param callback the callback of a read
+     * @return true if the read was started by a PageIterator to read ahead
+     */
+    static boolean isReadAhead(Callback<?> callback) {
+        return callback instanceof PageIterator.PageCallback;
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        while (true) {
+            if (closed) {
+                return false;
+            }
+            if (current != null && current.hasNext()) {
+                return true;
+            }
+            current = null;
+
+            List<T> page = pages.poll();
+            if (page != null) {
+                current = page.iterator();
+                readMore();
+                continue;
+            }
+
+            readMore();
+            if (!pages.isEmpty()) {
+                continue;
+            }
+            if (failure != null) {
+                throw new RuntimeException(failure);
+            }
+            if (!reading) {
+                return false;
+            }
+            await();
+        }
+    }
+
+    @Override
+    public synchronized T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Pages are read only");
+    }
+
+    /**
+     * Drops the pages which are held. A read in progress is not cancelled,
+     * its page is dropped when it arrives.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        current = null;
+        pages.clear();
+        notifyAll();
+    }
+
+    /**
+     * @return the number of pages held, counting a page which is being read
+     */
+    public synchronized int getResidentPages() {
+        return pages.size() + (current == null ? 0 : 1) + (reading ? 1 : 0);
+    }
+
+    private void readMore() {
+        if (closed || reading || nextFilter == null || failure != null
+                || getResidentPages() >= maxResidentPages) {
+            return;
+        }
+
+        ReadFilter filter = nextFilter;
+        nextFilter = null;
+        reading = true;
+        pipe.read(filter, callback);
+    }
+
+    private void await() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private synchronized void onPage(List<T> page) {
+        reading = false;
+        if (closed) {
+            return;
+        }
+
+        if (page != null && !page.isEmpty()) {
+            pages.add(page);
+            if (page instanceof WrappingPagedList) {
+                nextFilter = ((WrappingPagedList<T>) page).getNextFilter();
+            }
+        }
+        readMore();
+        notifyAll();
+    }
+
+    private synchronized void onFailure(Exception e) {
+        reading = false;
+        failure = e;
+        notifyAll();
+    }
+
+    private final class PageCallback implements Callback<List<T>> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void onSuccess(List<T> data) {
+            onPage(data);
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            PageIterator.this.onFailure(e);
+        }
+
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.paging;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.jboss.aerogear.android.core.Callback;
+import org.jboss.aerogear.android.core.ReadFilter;
+import org.jboss.aerogear.android.pipe.Pipe;
+
+/**
+ * Reads the pages next to a delivered page in the background and holds a
+ * bounded number of them, dropping the oldest when the bound is exceeded.
+ * Each pipe with prefetching enabled has its own prefetcher.
+ *
+ * @param <T> the type of the items of the pages
+ */
+public final class PagePrefetcher<T> {
+
+    private final boolean prefetchPrevious;
+    private final int cacheSize;
+    private final Deque<PrefetchedPage<T>> pages = new ArrayDeque<PrefetchedPage<T>>();
+
+    /**
+     * @param pageConfig the paging configuration of the pipe
+     */
+    public PagePrefetcher(PageConfig pageConfig) {
+        this.prefetchPrevious = PageConfig.Prefetch.NEXT_AND_PREVIOUS.equals(pageConfig.getPrefetch());
+        this.cacheSize = pageConfig.getPrefetchCacheSize();
+    }
+
+    /**
+     * @param callback the callback of a read
+     * @return true if the read prefetches a page or reads ahead for a
+     *         {@link PageIterator}. Pages which are prefetched do not
+     *         prefetch their own neighbours until they are delivered.
+     */
+    public static boolean isPrefetch(Callback<?> callback) {
+        return callback instanceof PrefetchedPage || PageIterator.isReadAhead(callback);
+    }
+
+    /**
+     * @return the number of prefetched pages currently held
+     */
+    public int size() {
+        synchronized (pages) {
+            return pages.size();
+        }
+    }
+
+    boolean isPrefetchPrevious() {
+        return prefetchPrevious;
+    }
+
+    /**
+     * Starts to read the page of filter and holds it.
+     */
+    PrefetchedPage<T> prefetch(Pipe<T> pipe, ReadFilter filter) {
+        PrefetchedPage<T> page = new PrefetchedPage<T>(pipe, filter);
+        PrefetchedPage<T> evicted = null;
+        synchronized (pages) {
+            pages.addLast(page);
+            if (pages.size() > cacheSize) {
+                evicted = pages.pollFirst();
+            }
+        }
+        if (evicted != null) {
+            evicted.discard();
+        }
+
+        page.start();
+        return page;
+    }
+
+    /**
+     * Drops a page, a read in progress is not cancelled but its result is
+     * dropped too.
+     */
+    void discard(PrefetchedPage<T> page) {
+        synchronized (pages) {
+            pages.remove(page);
+        }
+        page.discard();
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.paging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.aerogear.android.core.Callback;
+import org.jboss.aerogear.android.core.ReadFilter;
+import org.jboss.aerogear.android.pipe.Pipe;
+
+/**
+ * A page which is read before it is asked for. Callbacks which ask for it
+ * while it is read are answered when the read finishes; if the read fails
+ * or the page was dropped they read it themselves.
+ */
+class PrefetchedPage<T> implements Callback<List<T>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Pipe<T> pipe;
+    private final transient ReadFilter filter;
+
+    private transient List<T> result;
+    private transient boolean done = false;
+    private transient boolean failed = false;
+    private transient boolean discarded = false;
+    private transient List<Callback<List<T>>> waiting = new ArrayList<Callback<List<T>>>();
+
+    PrefetchedPage(Pipe<T> pipe, ReadFilter filter) {
+        this.pipe = pipe;
+        this.filter = filter;
+    }
+
+    void start() {
+        pipe.read(filter, this);
+    }
+
+    /**
+     * Passes the page to callback, now if it was read already or else once
+     * it is.
+     *
+     * @return false if the page can not be served and callback has to read
+     *         it itself
+     */
+    boolean serve(Callback<List<T>> callback) {
+        List<T> page;
+        synchronized (this) {
+            if (discarded || failed) {
+                return false;
+            }
+            if (!done) {
+                waiting.add(callback);
+                return true;
+            }
+            page = result;
+        }
+
+        deliver(page, callback);
+        return true;
+    }
+
+    @Override
+    public void onSuccess(List<T> data) {
+        List<Callback<List<T>>> callbacks;
+        synchronized (this) {
+            if (discarded) {
+                return;
+            }
+            result = data;
+            done = true;
+            callbacks = takeWaiting();
+        }
+
+        for (Callback<List<T>> callback : callbacks) {
+            deliver(data, callback);
+        }
+    }
+
+    @Override
+    public void onFailure(Exception e) {
+        List<Callback<List<T>>> callbacks;
+        synchronized (this) {
+            failed = true;
+            done = true;
+            callbacks = takeWaiting();
+        }
+
+        for (Callback<List<T>> callback : callbacks) {
+            pipe.read(filter, callback);
+        }
+    }
+
+    void discard() {
+        List<Callback<List<T>>> callbacks;
+        synchronized (this) {
+            discarded = true;
+            result = null;
+            callbacks = takeWaiting();
+        }
+
+        for (Callback<List<T>> callback : callbacks) {
+            pipe.read(filter, callback);
+        }
+    }
+
+    private List<Callback<List<T>>> takeWaiting() {
+        List<Callback<List<T>>> callbacks = waiting;
+        waiting = new ArrayList<Callback<List<T>>>();
+        return callbacks;
+    }
+
+    /**
+     * Delivers a page, which is now shown and so prefetches its own
+     * neighbours.
+     */
+    private void deliver(List<T> page, Callback<List<T>> callback) {
+        if (page instanceof WrappingPagedList) {
+            ((WrappingPagedList<T>) page).prefetch();
+        }
+        callback.onSuccess(page);
+    }
+
+}
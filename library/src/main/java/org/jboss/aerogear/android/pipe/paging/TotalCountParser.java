@@ -0,0 +1,68 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.paging;
+
+import java.io.InputStreamReader;
+
+import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+/**
+ * Reads the total number of items of a collection from a response, which
+ * offset addressed pages can be computed from. With
+ * {@link PageConfig.MetadataLocations#BODY} the count is a field of the
+ * body, otherwise it is a header.
+ */
+public class TotalCountParser {
+
+    /**
+     * @param result the response of a page
+     * @param config the paging configuration naming the count in
+     *            {@link PageConfig#getTotalCountIdentifier()}
+     * @return the total count, or null if the response has none
+     * @throws NumberFormatException if the count is not a number
+     */
+    public Integer getTotalCount(HeaderAndBody result, PageConfig config) {
+        String identifier = config.getTotalCountIdentifier();
+        if (identifier == null) {
+            return null;
+        }
+
+        if (PageConfig.MetadataLocations.BODY.equals(config.getMetadataLocation())) {
+            JsonElement element = new JsonParser().parse(new InputStreamReader(result.getBodyAsStream()));
+            for (String name : identifier.split("\\.")) {
+                if (element == null || !element.isJsonObject()) {
+                    return null;
+                }
+                element = element.getAsJsonObject().get(name);
+            }
+            if (element == null || element.isJsonNull()) {
+                return null;
+            }
+            return element.getAsInt();
+        }
+
+        Object header = result.getHeader(identifier);
+        if (header == null) {
+            return null;
+        }
+        return Integer.valueOf(header.toString().trim());
+    }
+
+}
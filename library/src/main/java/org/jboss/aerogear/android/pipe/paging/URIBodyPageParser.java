@@ -16,6 +16,7 @@
  */
 package org.jboss.aerogear.android.pipe.paging;
 
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -58,7 +59,7 @@ public class URIBodyPageParser implements PageParameterExtractor<PageConfig> {
     public ReadFilter getNextFilter(HeaderAndBody result, PageConfig config) {
         ReadFilter filter = new ReadFilter();
         JsonParser parser = new JsonParser();
-        JsonElement element = parser.parse(new String(result.getBody()));
+        JsonElement element = parser.parse(new InputStreamReader(result.getBodyAsStream()));
         URI nextUri = URI.create(getFromJSON(element, config.getNextIdentifier()));
         filter.setLinkUri(baseUri.resolve(nextUri));
         return filter;
@@ -68,7 +69,7 @@ public class URIBodyPageParser implements PageParameterExtractor<PageConfig> {
     public ReadFilter getPreviousFilter(HeaderAndBody result, PageConfig config) {
         ReadFilter filter = new ReadFilter();
         JsonParser parser = new JsonParser();
-        JsonElement element = parser.parse(new String(result.getBody()));
+        JsonElement element = parser.parse(new InputStreamReader(result.getBodyAsStream()));
         URI nextUri = URI.create(getFromJSON(element, config.getPreviousIdentifier()));
         filter.setLinkUri(baseUri.resolve(nextUri));
         return filter;
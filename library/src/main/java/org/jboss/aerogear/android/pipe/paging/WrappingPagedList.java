@@ -26,7 +26,10 @@ import org.jboss.aerogear.android.pipe.Pipe;
 /**
  * Wraps a resultSet in a ForwardingList and provides paging methods.
  * 
- * This class also combines
+ * If the list was created with a {@link PagePrefetcher}, {@link #prefetch()}
+ * reads the next and optionally the previous page in the background, and
+ * {@link #next(Callback)} and {@link #previous(Callback)} are answered from
+ * the prefetched pages.
  * 
  */
 public class WrappingPagedList<T> extends ArrayList<T> implements PagedList<T> {
@@ -35,6 +38,10 @@ public class WrappingPagedList<T> extends ArrayList<T> implements PagedList<T> {
     private final List<T> data;
     private final ReadFilter nextFilter;
     private final ReadFilter previousFilter;
+    private final transient PagePrefetcher<T> prefetcher;
+    private transient PrefetchedPage<T> nextPage;
+    private transient PrefetchedPage<T> previousPage;
+    private transient boolean prefetched = false;
 
     /**
      * @param pipe the pipe to read for more data
@@ -43,21 +50,100 @@ public class WrappingPagedList<T> extends ArrayList<T> implements PagedList<T> {
      * @param previousFilter the filter which defines the "previous" set of data
      */
     public WrappingPagedList(Pipe<T> pipe, List<T> data, ReadFilter nextFilter, ReadFilter previousFilter) {
+        this(pipe, data, nextFilter, previousFilter, null);
+    }
+
+    /**
+     * @param pipe the pipe to read for more data
+     * @param data the initial dataset
+     * @param nextFilter the filter which defines the "next" set of data
+     * @param previousFilter the filter which defines the "previous" set of data
+     * @param prefetcher the prefetcher of the pipe, or null to not prefetch
+     */
+    public WrappingPagedList(Pipe<T> pipe, List<T> data, ReadFilter nextFilter, ReadFilter previousFilter,
+            PagePrefetcher<T> prefetcher) {
         super(data);
         this.pipe = pipe;
         this.data = data;
         this.nextFilter = nextFilter;
         this.previousFilter = previousFilter;
+        this.prefetcher = prefetcher;
+    }
+
+    /**
+     * @return a list of the same items and filters, which prefetches its own
+     *         pages
+     */
+    public WrappingPagedList<T> copy() {
+        return new WrappingPagedList<T>(pipe, new ArrayList<T>(this), nextFilter, previousFilter, prefetcher);
+    }
+
+    /**
+     * Starts to read the neighbouring pages in the background, this is done
+     * once the list is delivered. Does nothing if the list has no
+     * prefetcher or prefetched already.
+     */
+    public void prefetch() {
+        if (prefetcher == null) {
+            return;
+        }
+
+        synchronized (this) {
+            if (prefetched) {
+                return;
+            }
+            prefetched = true;
+            if (nextFilter != null) {
+                nextPage = prefetcher.prefetch(pipe, nextFilter);
+            }
+            if (previousFilter != null && prefetcher.isPrefetchPrevious()) {
+                previousPage = prefetcher.prefetch(pipe, previousFilter);
+            }
+        }
+    }
+
+    /**
+     * Drops the prefetched pages of this list. Call this when the list is no
+     * longer shown.
+     */
+    public void discard() {
+        PrefetchedPage<T> next;
+        PrefetchedPage<T> previous;
+        synchronized (this) {
+            next = nextPage;
+            previous = previousPage;
+            nextPage = null;
+            previousPage = null;
+        }
+
+        if (next != null) {
+            prefetcher.discard(next);
+        }
+        if (previous != null) {
+            prefetcher.discard(previous);
+        }
     }
 
     @Override
     public void next(Callback<List<T>> callback) {
-        pipe.read(nextFilter, callback);
+        PrefetchedPage<T> page;
+        synchronized (this) {
+            page = nextPage;
+        }
+        if (page == null || !page.serve(callback)) {
+            pipe.read(nextFilter, callback);
+        }
     }
 
     @Override
     public void previous(Callback<List<T>> callback) {
-        pipe.read(previousFilter, callback);
+        PrefetchedPage<T> page;
+        synchronized (this) {
+            page = previousPage;
+        }
+        if (page == null || !page.serve(callback)) {
+            pipe.read(previousFilter, callback);
+        }
     }
 
     public ReadFilter getNextFilter() {
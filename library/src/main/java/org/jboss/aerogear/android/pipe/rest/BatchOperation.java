@@ -0,0 +1,167 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.aerogear.android.core.Callback;
+import org.jboss.aerogear.android.pipe.BatchResult;
+import org.jboss.aerogear.android.pipe.http.RequestCancellation;
+
+import android.util.Log;
+
+/**
+ * Processes the items of a batch with a bounded number of workers on an
+ * executor. Workers take the next unprocessed item until none are left, so
+ * no thread ever waits for another. The last item to finish delivers the
+ * {@link BatchResult}.
+ *
+ * If the executor rejects every worker, the items nobody picked up fail with
+ * the rejection. A cancelled batch takes its queued workers off the queue,
+ * stops picking up items and does not deliver a result.
+ *
+ * @param <I> the type of the items
+ * @param <R> the type of the result of an item
+ */
+abstract class BatchOperation<I, R> {
+
+    private static final String TAG = BatchOperation.class.getSimpleName();
+
+    private final List<I> items;
+    private final Object[] results;
+    private final Exception[] failures;
+    private final Callback<BatchResult<R>> callback;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger remaining;
+    private final AtomicInteger workers = new AtomicInteger();
+    private RequestCancellation cancellation;
+
+    BatchOperation(Collection<I> items, Callback<BatchResult<R>> callback) {
+        this.items = new ArrayList<I>(items);
+        this.results = new Object[this.items.size()];
+        this.failures = new Exception[this.items.size()];
+        this.callback = callback;
+        this.remaining = new AtomicInteger(this.items.size());
+    }
+
+    /**
+     * Processes a single item, this runs on a worker thread.
+     *
+     * @param item the item
+     * @return the result of the item
+     * @throws Exception if the item failed
+     */
+    abstract R process(I item) throws Exception;
+
+    /**
+     * Starts up to concurrency workers on executor.
+     *
+     * @return the handle which cancels the batch
+     */
+    RequestCancellation start(Executor executor, int concurrency) {
+        return start(executor, concurrency, new RequestCancellation());
+    }
+
+    /**
+     * Starts up to concurrency workers on executor, which are cancelled with
+     * cancellation.
+     *
+     * @return cancellation
+     */
+    RequestCancellation start(Executor executor, int concurrency, RequestCancellation cancellation) {
+        this.cancellation = cancellation;
+        if (items.isEmpty()) {
+            complete();
+            return cancellation;
+        }
+
+        int count = Math.min(concurrency, items.size());
+        workers.set(count);
+        for (int i = 0; i < count; i++) {
+            Worker worker = new Worker();
+            PipeExecutor.removeOnCancel(executor, worker, cancellation);
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                worker.onRejected(e);
+            }
+        }
+        return cancellation;
+    }
+
+    private void complete() {
+        cancellation.finish();
+        if (cancellation.isCancelled()) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<R> resultList = (List<R>) Arrays.asList(results);
+        callback.onSuccess(new BatchResult<R>(resultList, Arrays.asList(failures)));
+    }
+
+    private void finish() {
+        if (remaining.decrementAndGet() == 0) {
+            complete();
+        }
+    }
+
+    private final class Worker implements PipeExecutor.RejectableTask {
+
+        @Override
+        public void run() {
+            RequestCancellation previous = cancellation.bind();
+            try {
+                int index;
+                while (!cancellation.isCancelled() && (index = next.getAndIncrement()) < items.size()) {
+                    try {
+                        results[index] = process(items.get(index));
+                    } catch (Exception e) {
+                        Log.e(TAG, e.getMessage(), e);
+                        failures[index] = e;
+                    }
+                    finish();
+                }
+            } finally {
+                RequestCancellation.unbind(previous);
+                workers.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void onRejected(RejectedExecutionException exception) {
+            if (workers.decrementAndGet() > 0) {
+                // another worker is still running or queued and takes the items
+                return;
+            }
+
+            Log.w(TAG, "No worker of the batch could be run", exception);
+            int index;
+            while ((index = next.getAndIncrement()) < items.size()) {
+                failures[index] = exception;
+                finish();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,301 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.aerogear.android.pipe.http.HttpException;
+
+import android.util.Log;
+
+/**
+ * Stops sending requests to a backend which is failing or too slow.
+ *
+ * The outcomes of the last calls are kept in a sliding window. Once the
+ * window holds enough calls and the rate of failed or of slow calls reaches
+ * its threshold the circuit opens, and calls fail at once with a
+ * {@link CircuitBreakerOpenException} instead of waiting out their timeout.
+ * After the open duration the circuit is half open and lets a single probe
+ * through: if it succeeds quickly the circuit closes, otherwise it opens
+ * again.
+ *
+ * Failures are errors without a response and responses with a status code of
+ * 500 or more. Other error responses show that the backend works and count
+ * as successes. Breakers are created by a {@link CircuitBreakerRegistry}.
+ */
+public final class CircuitBreaker {
+
+    private static final String TAG = CircuitBreaker.class.getSimpleName();
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Is told about every state change of a breaker.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the thread whose call caused the change.
+         *
+         * @param breaker the breaker which changed
+         * @param from the previous state
+         * @param to the new state
+         */
+        void onStateChanged(CircuitBreaker breaker, State from, State to);
+
+    }
+
+    /**
+     * A call guarded by a breaker.
+     *
+     * @param <V> the result of the call
+     */
+    public interface Call<V> {
+        V call();
+    }
+
+    private final String name;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallNanos;
+    private final double slowCallRateThreshold;
+    private final long openNanos;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    private final byte[] window;
+    private int next = 0;
+    private int calls = 0;
+    private int failures = 0;
+    private int slowCalls = 0;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probing = false;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong openCount = new AtomicLong();
+
+    CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+            long slowCallMillis, double slowCallRateThreshold, long openMillis) {
+        this.name = name;
+        this.window = new byte[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * Runs call if the circuit allows it and records its outcome.
+     *
+     * @param <V> the result of the call
+     * @param call the call to guard
+     * @return the result of call
+     * @throws CircuitBreakerOpenException if the circuit is open, or half
+     *             open while another call probes it
+     */
+    public <V> V execute(Call<V> call) {
+        acquire();
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            V result = call.call();
+            failed = false;
+            return result;
+        } catch (HttpException e) {
+            failed = e.getStatusCode() >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+            throw e;
+        } catch (CancellationException e) {
+            // the caller gave up, the host did not fail
+            failed = false;
+            throw e;
+        } finally {
+            record(failed, System.nanoTime() - start);
+        }
+    }
+
+    private void acquire() {
+        State from;
+        synchronized (this) {
+            from = state;
+            switch (state) {
+            case CLOSED:
+                return;
+            case OPEN:
+                long remaining = openedAt + openNanos - System.nanoTime();
+                if (remaining > 0) {
+                    rejectedCount.incrementAndGet();
+                    throw new CircuitBreakerOpenException(name, TimeUnit.NANOSECONDS.toMillis(remaining));
+                }
+                state = State.HALF_OPEN;
+                probing = true;
+                break;
+            case HALF_OPEN:
+                if (probing) {
+                    rejectedCount.incrementAndGet();
+                    throw new CircuitBreakerOpenException(name, 0);
+                }
+                probing = true;
+                return;
+            }
+        }
+        notifyListeners(from, State.HALF_OPEN);
+    }
+
+    private void record(boolean failed, long durationNanos) {
+        boolean slow = durationNanos >= slowCallNanos;
+        State from;
+        State to;
+        synchronized (this) {
+            from = state;
+            if (state == State.HALF_OPEN) {
+                probing = false;
+                if (failed || slow) {
+                    open();
+                } else {
+                    close();
+                }
+            } else if (state == State.CLOSED) {
+                add((byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0)));
+                if (calls >= minimumCalls
+                        && (getFailureRateLocked() >= failureRateThreshold || getSlowCallRateLocked() >= slowCallRateThreshold)) {
+                    open();
+                }
+            }
+            to = state;
+        }
+
+        if (from != to) {
+            notifyListeners(from, to);
+        }
+    }
+
+    private void add(byte outcome) {
+        if (calls == window.length) {
+            byte evicted = window[next];
+            failures -= evicted & FAILED;
+            slowCalls -= (evicted & SLOW) >> 1;
+        } else {
+            calls++;
+        }
+        window[next] = outcome;
+        failures += outcome & FAILED;
+        slowCalls += (outcome & SLOW) >> 1;
+        next = (next + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        openCount.incrementAndGet();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        next = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    private void notifyListeners(State from, State to) {
+        Log.w(TAG, "Circuit " + name + " changed from " + from + " to " + to);
+        for (Listener listener : listeners) {
+            listener.onStateChanged(this, from, to);
+        }
+    }
+
+    private double getFailureRateLocked() {
+        return calls == 0 ? 0 : (double) failures / calls;
+    }
+
+    private double getSlowCallRateLocked() {
+        return calls == 0 ? 0 : (double) slowCalls / calls;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the host or pipe this breaker guards
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the current state. An open circuit whose open duration passed
+     *         stays open until the next call probes it.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return the rate of failed calls in the window, between 0 and 1
+     */
+    public synchronized double getFailureRate() {
+        return getFailureRateLocked();
+    }
+
+    /**
+     * @return the rate of slow calls in the window, between 0 and 1
+     */
+    public synchronized double getSlowCallRate() {
+        return getSlowCallRateLocked();
+    }
+
+    /**
+     * @return the number of calls in the window
+     */
+    public synchronized int getCallCount() {
+        return calls;
+    }
+
+    /**
+     * @return the number of calls which failed fast because the circuit was
+     *         open
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return how often the circuit opened
+     */
+    public long getOpenCount() {
+        return openCount.get();
+    }
+
+}
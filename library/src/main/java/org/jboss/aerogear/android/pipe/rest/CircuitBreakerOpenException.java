@@ -0,0 +1,53 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import java.util.Locale;
+
+/**
+ * Thrown instead of sending a request while the circuit of its host or pipe
+ * is open.
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    private static final String DEFAULT_MESSAGE = "The circuit of %s is open, retry in %d ms.";
+
+    private final String circuit;
+    private final long remainingMillis;
+
+    public CircuitBreakerOpenException(String circuit, long remainingMillis) {
+        super(String.format(Locale.US, DEFAULT_MESSAGE, circuit, remainingMillis));
+        this.circuit = circuit;
+        this.remainingMillis = remainingMillis;
+    }
+
+    /**
+     * @return the name of the open circuit
+     */
+    public String getCircuit() {
+        return circuit;
+    }
+
+    /**
+     * @return how long the circuit stays open at least, 0 if a probe is
+     *         deciding whether to close it
+     */
+    public long getRemainingMillis() {
+        return remainingMillis;
+    }
+
+}
@@ -0,0 +1,183 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Creates and holds the {@link CircuitBreaker}s of pipes. Breakers are keyed
+ * by host, so every pipe of a backend shares its circuit, or by pipe.
+ *
+ * Configure a registry before passing it to a pipe. Pipes which pass the
+ * same registry share breakers for the same host.
+ */
+public final class CircuitBreakerRegistry {
+
+    public enum Scope {
+        /**
+         * One breaker per scheme, host and port.
+         */
+        HOST,
+        /**
+         * One breaker per pipe url.
+         */
+        PIPE
+    }
+
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+    public static final int DEFAULT_MINIMUM_CALLS = 10;
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+    public static final long DEFAULT_SLOW_CALL_MILLIS = 10 * 1000;
+    public static final double DEFAULT_SLOW_CALL_RATE_THRESHOLD = 0.8;
+    public static final long DEFAULT_OPEN_MILLIS = 30 * 1000;
+
+    private Scope scope = Scope.HOST;
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+    private int minimumCalls = DEFAULT_MINIMUM_CALLS;
+    private double failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+    private long slowCallMillis = DEFAULT_SLOW_CALL_MILLIS;
+    private double slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+    private long openMillis = DEFAULT_OPEN_MILLIS;
+
+    private final Map<String, CircuitBreaker> breakers = new HashMap<String, CircuitBreaker>();
+    private final List<CircuitBreaker.Listener> listeners = new ArrayList<CircuitBreaker.Listener>();
+
+    /**
+     * @param scope whether breakers are shared by all pipes of a host or
+     *            belong to a single pipe
+     * @return this registry
+     */
+    public CircuitBreakerRegistry scope(Scope scope) {
+        this.scope = scope;
+        return this;
+    }
+
+    /**
+     * @param windowSize the number of most recent calls rates are computed
+     *            over
+     * @param minimumCalls the number of calls the window must hold before the
+     *            circuit may open
+     * @return this registry
+     * @throws IllegalArgumentException if minimumCalls is not between 1 and
+     *             windowSize
+     */
+    public CircuitBreakerRegistry window(int windowSize, int minimumCalls) {
+        if (minimumCalls <= 0 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("minimumCalls must be between 1 and windowSize");
+        }
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        return this;
+    }
+
+    /**
+     * @param failureRateThreshold the rate of failed calls, between 0 and 1,
+     *            at which the circuit opens
+     * @return this registry
+     */
+    public CircuitBreakerRegistry failureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+        return this;
+    }
+
+    /**
+     * @param slowCallMillis the duration from which a call counts as slow
+     * @param slowCallRateThreshold the rate of slow calls, between 0 and 1,
+     *            at which the circuit opens
+     * @return this registry
+     */
+    public CircuitBreakerRegistry slowCallThreshold(long slowCallMillis, double slowCallRateThreshold) {
+        this.slowCallMillis = slowCallMillis;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        return this;
+    }
+
+    /**
+     * @param openMillis how long an open circuit fails calls before a probe
+     *            is let through
+     * @return this registry
+     */
+    public CircuitBreakerRegistry openDuration(long openMillis) {
+        this.openMillis = openMillis;
+        return this;
+    }
+
+    /**
+     * Adds a listener to every breaker of this registry, including breakers
+     * created later.
+     *
+     * @param listener the listener to add
+     * @return this registry
+     */
+    public CircuitBreakerRegistry addListener(CircuitBreaker.Listener listener) {
+        synchronized (breakers) {
+            listeners.add(listener);
+            for (CircuitBreaker breaker : breakers.values()) {
+                breaker.addListener(listener);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @param pipeURL the url of a pipe
+     * @param requestURL the url of a request of the pipe
+     * @return the breaker which guards the request
+     */
+    public CircuitBreaker get(URL pipeURL, URL requestURL) {
+        return get(Scope.PIPE.equals(scope) ? pipeURL.toString() : hostKey(requestURL));
+    }
+
+    /**
+     * @param name the host or pipe a breaker guards
+     * @return the breaker named name, which is created if needed
+     */
+    public CircuitBreaker get(String name) {
+        synchronized (breakers) {
+            CircuitBreaker breaker = breakers.get(name);
+            if (breaker == null) {
+                breaker = new CircuitBreaker(name, windowSize, minimumCalls, failureRateThreshold,
+                        slowCallMillis, slowCallRateThreshold, openMillis);
+                for (CircuitBreaker.Listener listener : listeners) {
+                    breaker.addListener(listener);
+                }
+                breakers.put(name, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    /**
+     * @return every breaker created so far
+     */
+    public List<CircuitBreaker> getBreakers() {
+        synchronized (breakers) {
+            return new ArrayList<CircuitBreaker>(breakers.values());
+        }
+    }
+
+    private static String hostKey(URL url) {
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        return String.format(Locale.US, "%s://%s:%d", url.getProtocol(), url.getHost(), port);
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import java.net.URL;
+
+import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
+import org.jboss.aerogear.android.pipe.http.HttpException;
+import org.jboss.aerogear.android.pipe.http.HttpProvider;
+import org.jboss.aerogear.android.pipe.http.RequestBody;
+import org.jboss.aerogear.android.pipe.http.StreamingHttpProvider;
+
+/**
+ * Sends the requests of a provider through a {@link CircuitBreaker}.
+ */
+class GuardedHttpProvider implements HttpProvider {
+
+    private final HttpProvider delegate;
+    final CircuitBreaker breaker;
+
+    private GuardedHttpProvider(HttpProvider delegate, CircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    /**
+     * @return a provider which streams if delegate does
+     */
+    static HttpProvider guard(HttpProvider delegate, CircuitBreaker breaker) {
+        if (delegate instanceof StreamingHttpProvider) {
+            return new Streaming((StreamingHttpProvider) delegate, breaker);
+        }
+        return new GuardedHttpProvider(delegate, breaker);
+    }
+
+    @Override
+    public URL getUrl() {
+        return delegate.getUrl();
+    }
+
+    @Override
+    public HeaderAndBody get() throws HttpException {
+        return breaker.execute(new CircuitBreaker.Call<HeaderAndBody>() {
+            @Override
+            public HeaderAndBody call() {
+                return delegate.get();
+            }
+        });
+    }
+
+    @Override
+    public HeaderAndBody post(final String data) throws HttpException {
+        return breaker.execute(new CircuitBreaker.Call<HeaderAndBody>() {
+            @Override
+            public HeaderAndBody call() {
+                return delegate.post(data);
+            }
+        });
+    }
+
+    @Override
+    public HeaderAndBody post(final byte[] data) throws HttpException {
+        return breaker.execute(new CircuitBreaker.Call<HeaderAndBody>() {
+            @Override
+            public HeaderAndBody call() {
+                return delegate.post(data);
+            }
+        });
+    }
+
+    @Override
+    public HeaderAndBody put(final String id, final String data) throws HttpException {
+        return breaker.execute(new CircuitBreaker.Call<HeaderAndBody>() {
+            @Override
+            public HeaderAndBody call() {
+                return delegate.put(id, data);
+            }
+        });
+    }
+
+    @Override
+    public HeaderAndBody put(final String id, final byte[] data) throws HttpException {
+        return breaker.execute(new CircuitBreaker.Call<HeaderAndBody>() {
+            @Override
+            public HeaderAndBody call() {
+                return delegate.put(id, data);
+            }
+        });
+    }
+
+    @Override
+    public HeaderAndBody delete(final String id) throws HttpException {
+        return breaker.execute(new CircuitBreaker.Call<HeaderAndBody>() {
+            @Override
+            public HeaderAndBody call() {
+                return delegate.delete(id);
+            }
+        });
+    }
+
+    @Override
+    public void setDefaultHeader(String headerName, String headerValue) {
+        delegate.setDefaultHeader(headerName, headerValue);
+    }
+
+    private static final class Streaming extends GuardedHttpProvider implements StreamingHttpProvider {
+
+        private final StreamingHttpProvider streamingDelegate;
+
+        Streaming(StreamingHttpProvider delegate, CircuitBreaker breaker) {
+            super(delegate, breaker);
+            this.streamingDelegate = delegate;
+        }
+
+        @Override
+        public HeaderAndBody post(final RequestBody body) {
+            return breaker.execute(new CircuitBreaker.Call<HeaderAndBody>() {
+                @Override
+                public HeaderAndBody call() {
+                    return streamingDelegate.post(body);
+                }
+            });
+        }
+
+        @Override
+        public HeaderAndBody put(final String id, final RequestBody body) {
+            return breaker.execute(new CircuitBreaker.Call<HeaderAndBody>() {
+                @Override
+                public HeaderAndBody call() {
+                    return streamingDelegate.put(id, body);
+                }
+            });
+        }
+
+    }
+
+}
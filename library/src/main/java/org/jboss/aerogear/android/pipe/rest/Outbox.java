@@ -0,0 +1,590 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.aerogear.android.core.Callback;
+import org.jboss.aerogear.android.pipe.BatchResult;
+import org.jboss.aerogear.android.pipe.PipeHandler;
+import org.jboss.aerogear.android.pipe.RequestBuilder;
+import org.jboss.aerogear.android.pipe.RequestHandle;
+import org.jboss.aerogear.android.pipe.ResponseParser;
+import org.jboss.aerogear.android.pipe.http.DeadlineExceededException;
+import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
+import org.jboss.aerogear.android.pipe.http.HttpException;
+import org.jboss.aerogear.android.pipe.util.ClassMetadata;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.util.Log;
+
+/**
+ * A durable queue of the saves and removes of a pipe. Every operation is
+ * written to a journal in app storage before it is sent, so operations made
+ * while the device is offline, or which were still queued when the process
+ * died, are sent once the server can be reached again.
+ *
+ * A flush sends the pending operations by at most
+ * {@link RestfulPipeConfiguration#batchConcurrency(int)} workers at a time.
+ * Operations on the same id are coalesced first: only the last one is sent
+ * and the callbacks of the ones it replaced get its outcome. Operations
+ * without an id, that is saves of new items, are always sent.
+ *
+ * If an operation fails because the server can not be reached, it stays in
+ * the journal and its callback waits for a later flush. If the server
+ * rejects it, its callback is told and it is dropped. Operations are
+ * acknowledged in the journal after their callback was invoked, callbacks do
+ * not survive the process, though: operations replayed from the journal are
+ * sent without one.
+ *
+ * A callback is held until its operation was sent, which can be long after
+ * the activity or fragment which passed it is gone. Callbacks should not
+ * hold on to either, or be detached once they are destroyed, as
+ * {@link org.jboss.aerogear.android.pipe.loader.LoaderAdapter#detachOutboxCallbacks()}
+ * does. Cancelling the handle of an operation drops its callback as well.
+ *
+ * @param <T> the type of the items of the pipe
+ */
+public final class Outbox<T> {
+
+    private static final String TAG = Outbox.class.getSimpleName();
+
+    /**
+     * The kinds of operations an outbox holds.
+     */
+    public enum Operation {
+        SAVE, REMOVE
+    }
+
+    private final File file;
+    private final Class<T> klass;
+    private final PipeHandler<T> handler;
+    private final RequestBuilder<T> requestBuilder;
+    private final ResponseParser<T> responseParser;
+    private final Executor executor;
+    private final int batchConcurrency;
+    private final OutboxStatistics statistics = new OutboxStatistics();
+    private final Map<Long, Callback<?>> callbacks = new HashMap<Long, Callback<?>>();
+    private final Set<Long> inFlight = new HashSet<Long>();
+    private final LinkedList<Journaling> appending = new LinkedList<Journaling>();
+    private boolean appendScheduled;
+    private OutboxJournal journal;
+    private boolean flushing;
+    private boolean flushAgain;
+    private BroadcastReceiver receiver;
+
+    Outbox(File file, Class<T> klass, PipeHandler<T> handler, RequestBuilder<T> requestBuilder,
+            ResponseParser<T> responseParser, Executor executor, int batchConcurrency) {
+        this.file = file;
+        this.klass = klass;
+        this.handler = handler;
+        this.requestBuilder = requestBuilder;
+        this.responseParser = responseParser;
+        this.executor = executor;
+        this.batchConcurrency = batchConcurrency;
+    }
+
+    /**
+     * Journals a save of item and flushes the outbox.
+     *
+     * @param item the item to save
+     * @param callback told once the save was sent, or the server rejected it
+     * @return a handle which drops the save unless it is being sent
+     */
+    public RequestHandle save(final T item, final Callback<T> callback) {
+        return enqueue(new Journaling(callback) {
+            @Override
+            OutboxJournal.Entry append(OutboxJournal journal) throws IOException {
+                String id = ClassMetadata.forClass(item.getClass()).getIdValue(item);
+                return journal.append(Operation.SAVE, id, requestBuilder.getBody(item));
+            }
+        });
+    }
+
+    /**
+     * Journals a remove of id and flushes the outbox.
+     *
+     * @param id the id of the item to remove
+     * @param callback told once the remove was sent, or the server rejected it
+     * @return a handle which drops the remove unless it is being sent
+     */
+    public RequestHandle remove(final String id, final Callback<Void> callback) {
+        return enqueue(new Journaling(callback) {
+            @Override
+            OutboxJournal.Entry append(OutboxJournal journal) throws IOException {
+                return journal.append(Operation.REMOVE, id, null);
+            }
+        });
+    }
+
+    /**
+     * Sends the pending operations. If the outbox is flushing already, it
+     * flushes again once it is done.
+     */
+    public void flush() {
+        synchronized (this) {
+            if (flushing) {
+                flushAgain = true;
+                return;
+            }
+            flushing = true;
+            flushAgain = false;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushPending();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "The flush of " + file + " was rejected", e);
+            synchronized (this) {
+                flushing = false;
+            }
+        }
+    }
+
+    /**
+     * Flushes the outbox whenever the device connects to a network. This
+     * needs the ACCESS_NETWORK_STATE permission.
+     *
+     * @param context a context, its application context registers the
+     *            receiver
+     */
+    public void flushOnConnectivityChange(Context context) {
+        BroadcastReceiver registered;
+        synchronized (this) {
+            if (receiver != null) {
+                return;
+            }
+            receiver = new ConnectivityReceiver();
+            registered = receiver;
+        }
+        context.getApplicationContext().registerReceiver(registered, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    /**
+     * Stops flushing the outbox when the device connects to a network.
+     *
+     * @param context a context
+     */
+    public void stopFlushingOnConnectivityChange(Context context) {
+        BroadcastReceiver registered;
+        synchronized (this) {
+            registered = receiver;
+            receiver = null;
+        }
+        if (registered != null) {
+            context.getApplicationContext().unregisterReceiver(registered);
+        }
+    }
+
+    /**
+     * @return the number of operations which were not sent yet
+     * @throws IOException if the journal can not be read
+     */
+    public int getPendingCount() throws IOException {
+        return getJournal().getPendingCount();
+    }
+
+    /**
+     * @return the counts and timings of journaling, flushing and compacting
+     */
+    public OutboxStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return the journal file of this outbox
+     */
+    public File getFile() {
+        return file;
+    }
+
+    private synchronized OutboxJournal getJournal() throws IOException {
+        if (journal == null) {
+            journal = new OutboxJournal(file, statistics);
+        }
+        return journal;
+    }
+
+    /**
+     * Queues journaling to be appended. Appends run one after the other on
+     * the executor, so operations are journaled in the order they were made.
+     */
+    private RequestHandle enqueue(Journaling journaling) {
+        synchronized (appending) {
+            appending.add(journaling);
+            if (appendScheduled) {
+                return journaling.handle;
+            }
+            appendScheduled = true;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    appendQueued();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "The operation on " + file + " was rejected", e);
+            List<Journaling> rejected;
+            synchronized (appending) {
+                rejected = new ArrayList<Journaling>(appending);
+                appending.clear();
+                appendScheduled = false;
+            }
+            for (Journaling queued : rejected) {
+                queued.callback.onFailure(e);
+            }
+        }
+        return journaling.handle;
+    }
+
+    private void appendQueued() {
+        while (true) {
+            Journaling journaling;
+            synchronized (appending) {
+                journaling = appending.poll();
+                if (journaling == null) {
+                    appendScheduled = false;
+                    break;
+                }
+            }
+
+            OutboxJournal.Entry entry;
+            boolean registered;
+            try {
+                // a flush takes its pending entries under the same lock, so it
+                // never sends an entry whose callback is not registered yet
+                synchronized (callbacks) {
+                    entry = journaling.append(getJournal());
+                    registered = journaling.handle.journaled(entry.sequence, journaling.callback);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, e.getMessage(), e);
+                journaling.callback.onFailure(e);
+                continue;
+            }
+
+            if (!registered) {
+                acknowledge(entry.sequence);
+            }
+        }
+        flush();
+    }
+
+    private void flushPending() {
+        final long start = System.nanoTime();
+        final List<Group> groups;
+        final AtomicInteger sent = new AtomicInteger();
+        final AtomicInteger coalesced = new AtomicInteger();
+        try {
+            OutboxJournal pendingJournal = getJournal();
+            synchronized (callbacks) {
+                List<OutboxJournal.Entry> pending = pendingJournal.getPending();
+                List<OutboxJournal.Entry> sendable = new ArrayList<OutboxJournal.Entry>();
+                for (OutboxJournal.Entry entry : pending) {
+                    if (inFlight.add(entry.sequence)) {
+                        sendable.add(entry);
+                    }
+                }
+                groups = coalesce(sendable);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read " + file, e);
+            synchronized (this) {
+                flushing = false;
+            }
+            return;
+        }
+
+        if (groups.isEmpty()) {
+            finishFlush(false);
+            return;
+        }
+
+        new BatchOperation<Group, Void>(groups, new Callback<BatchResult<Void>>() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void onSuccess(BatchResult<Void> result) {
+                statistics.recordFlush(sent.get(), coalesced.get(), System.nanoTime() - start);
+                try {
+                    getJournal().compactIfNeeded();
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not compact " + file, e);
+                }
+                finishFlush(result.hasFailures());
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                finishFlush(true);
+            }
+
+        }) {
+            @Override
+            Void process(Group group) throws Exception {
+                send(group);
+                sent.incrementAndGet();
+                coalesced.addAndGet(group.entries.size() - 1);
+                return null;
+            }
+        }.start(executor, batchConcurrency);
+    }
+
+    private void finishFlush(boolean offline) {
+        boolean again;
+        synchronized (this) {
+            flushing = false;
+            again = flushAgain && !offline;
+        }
+        if (again) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the last operation of group and passes its outcome to the
+     * callbacks of all of them. Saves get the item the last operation saved,
+     * or null if it was a remove.
+     *
+     * @throws RuntimeException if the server could not be reached, the
+     *             operations of group stay pending
+     */
+    private void send(Group group) {
+        OutboxJournal.Entry last = group.getLast();
+        T result = null;
+        Exception exception = null;
+        try {
+            if (Operation.SAVE.equals(last.operation)) {
+                HeaderAndBody response = handler.onRawSave(last.id, last.body);
+                List<T> parsed = responseParser.handleResponse(response, klass);
+                result = parsed.isEmpty() ? null : parsed.get(0);
+            } else {
+                handler.onRemove(last.id);
+            }
+        } catch (RuntimeException e) {
+            if (isOffline(e)) {
+                synchronized (callbacks) {
+                    for (OutboxJournal.Entry entry : group.entries) {
+                        inFlight.remove(entry.sequence);
+                    }
+                }
+                throw e;
+            }
+            Log.e(TAG, e.getMessage(), e);
+            exception = e;
+        }
+
+        for (OutboxJournal.Entry entry : group.entries) {
+            Callback<?> callback;
+            synchronized (callbacks) {
+                callback = callbacks.remove(entry.sequence);
+            }
+            if (callback != null) {
+                deliver(callback, Operation.SAVE.equals(entry.operation) ? result : null, exception);
+            }
+            acknowledge(entry.sequence);
+            synchronized (callbacks) {
+                inFlight.remove(entry.sequence);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void deliver(Callback<?> callback, Object result, Exception exception) {
+        if (exception != null) {
+            callback.onFailure(exception);
+        } else {
+            ((Callback<Object>) callback).onSuccess(result);
+        }
+    }
+
+    private void acknowledge(long sequence) {
+        try {
+            getJournal().acknowledge(sequence);
+        } catch (IOException e) {
+            // the operation is sent again after the next start
+            Log.e(TAG, "Could not acknowledge an operation in " + file, e);
+        }
+    }
+
+    /**
+     * Groups entries by id, keeping the order of the last entry of each
+     * group. Entries without an id are groups of their own.
+     */
+    static List<Group> coalesce(Collection<OutboxJournal.Entry> entries) {
+        Map<Object, Group> groups = new LinkedHashMap<Object, Group>();
+        for (OutboxJournal.Entry entry : entries) {
+            Object key = entry.id == null ? Long.valueOf(entry.sequence) : entry.id;
+            Group group = groups.remove(key);
+            if (group == null) {
+                group = new Group();
+            }
+            group.entries.add(entry);
+            groups.put(key, group);
+        }
+        return new ArrayList<Group>(groups.values());
+    }
+
+    /**
+     * @return true if e means the server could not be reached, rather than
+     *         that it rejected the request
+     */
+    static boolean isOffline(Exception e) {
+        if (e instanceof HttpException) {
+            return false;
+        }
+        if (e instanceof CircuitBreakerOpenException || e instanceof DeadlineExceededException
+                || e instanceof RejectedExecutionException) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Operations on the same id, of which only the last is sent.
+     */
+    static final class Group {
+
+        final List<OutboxJournal.Entry> entries = new ArrayList<OutboxJournal.Entry>();
+
+        OutboxJournal.Entry getLast() {
+            return entries.get(entries.size() - 1);
+        }
+
+    }
+
+    private final class ConnectivityReceiver extends BroadcastReceiver {
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            ConnectivityManager connectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            NetworkInfo network = connectivity.getActiveNetworkInfo();
+            if (network != null && network.isConnected()) {
+                flush();
+            }
+        }
+
+    }
+
+    /**
+     * An operation waiting to be journaled.
+     */
+    private abstract class Journaling {
+
+        final Callback<?> callback;
+        final OutboxHandle handle = new OutboxHandle();
+
+        Journaling(Callback<?> callback) {
+            this.callback = callback;
+        }
+
+        abstract OutboxJournal.Entry append(OutboxJournal journal) throws IOException;
+
+    }
+
+    private final class OutboxHandle implements RequestHandle {
+
+        private boolean cancelled;
+        private long sequence;
+
+        /**
+         * Registers the callback of the journaled operation.
+         *
+         * @return false if the operation was cancelled while it was journaled
+         */
+        boolean journaled(long sequence, Callback<?> callback) {
+            synchronized (callbacks) {
+                if (cancelled) {
+                    return false;
+                }
+                this.sequence = sequence;
+                callbacks.put(sequence, callback);
+                return true;
+            }
+        }
+
+        @Override
+        public void cancel() {
+            final long dropped;
+            synchronized (callbacks) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                if (sequence == 0 || inFlight.contains(sequence)) {
+                    // not journaled yet, or being sent: only the callback is dropped
+                    callbacks.remove(sequence);
+                    return;
+                }
+                callbacks.remove(sequence);
+                dropped = sequence;
+            }
+
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        acknowledge(dropped);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                Log.w(TAG, "Could not drop an operation of " + file, e);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            synchronized (callbacks) {
+                return cancelled;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,310 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * An append-only file of the operations of an {@link Outbox}. Every save or
+ * remove is appended with its body and id and synced to disk before it is
+ * sent; once it was sent an acknowledgement is appended. Replaying the file
+ * yields the operations which were not acknowledged yet.
+ *
+ * The file is compacted, that is rewritten with only the pending operations,
+ * once the records of acknowledged operations make up most of it. A record
+ * which was torn by a crash ends the file and is cut off when it is opened.
+ */
+final class OutboxJournal {
+
+    private static final String TAG = OutboxJournal.class.getSimpleName();
+
+    private static final byte SAVE = 1;
+    private static final byte REMOVE = 2;
+    private static final byte ACKNOWLEDGE = 3;
+
+    /**
+     * Journals smaller than this are never compacted.
+     */
+    static final long MIN_COMPACTION_BYTES = 64 * 1024;
+
+    /**
+     * A pending operation.
+     */
+    static final class Entry {
+
+        final long sequence;
+        final Outbox.Operation operation;
+        final String id;
+        final byte[] body;
+
+        Entry(long sequence, Outbox.Operation operation, String id, byte[] body) {
+            this.sequence = sequence;
+            this.operation = operation;
+            this.id = id;
+            this.body = body;
+        }
+
+        int getRecordLength() {
+            // type, sequence, id flag, id, body length, body
+            return 1 + 8 + 1 + (id == null ? 0 : 2 + utfLength(id)) + 4 + (body == null ? 0 : body.length);
+        }
+
+    }
+
+    private final File file;
+    private final OutboxStatistics statistics;
+    private final Map<Long, Entry> pending = new LinkedHashMap<Long, Entry>();
+    private DataOutputStream out;
+    private FileOutputStream fileOut;
+    private long nextSequence = 1;
+    private long length;
+    private long liveLength;
+
+    /**
+     * Opens the journal in file, replaying the operations it holds.
+     *
+     * @throws IOException if the file can not be read or written
+     */
+    OutboxJournal(File file, OutboxStatistics statistics) throws IOException {
+        this.file = file;
+        this.statistics = statistics;
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+        replay();
+        open();
+    }
+
+    /**
+     * Appends an operation and syncs it to disk.
+     *
+     * @return the pending entry of the operation
+     */
+    synchronized Entry append(Outbox.Operation operation, String id, byte[] body) throws IOException {
+        Entry entry = new Entry(nextSequence++, operation, id, body);
+        out.writeByte(Outbox.Operation.SAVE.equals(operation) ? SAVE : REMOVE);
+        out.writeLong(entry.sequence);
+        out.writeBoolean(id != null);
+        if (id != null) {
+            out.writeUTF(id);
+        }
+        out.writeInt(body == null ? -1 : body.length);
+        if (body != null) {
+            out.write(body);
+        }
+        out.flush();
+        fileOut.getFD().sync();
+
+        pending.put(entry.sequence, entry);
+        length = fileOut.getChannel().position();
+        liveLength += entry.getRecordLength();
+        statistics.recordAppend();
+        return entry;
+    }
+
+    /**
+     * Marks an operation as done. Acknowledgements are not synced: if one is
+     * lost the operation is sent again.
+     */
+    synchronized void acknowledge(long sequence) throws IOException {
+        Entry entry = pending.remove(sequence);
+        if (entry == null) {
+            return;
+        }
+        out.writeByte(ACKNOWLEDGE);
+        out.writeLong(sequence);
+        out.flush();
+        length = fileOut.getChannel().position();
+        liveLength -= entry.getRecordLength();
+    }
+
+    /**
+     * @return the pending operations in the order they were appended
+     */
+    synchronized List<Entry> getPending() {
+        return new ArrayList<Entry>(pending.values());
+    }
+
+    synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    synchronized boolean isPending(long sequence) {
+        return pending.containsKey(sequence);
+    }
+
+    /**
+     * @return the size of the file in bytes
+     */
+    synchronized long getLength() {
+        return length;
+    }
+
+    /**
+     * Rewrites the file with only the pending operations if the records of
+     * acknowledged operations make up more than half of it.
+     *
+     * @return true if the journal was compacted
+     */
+    synchronized boolean compactIfNeeded() throws IOException {
+        if (length < MIN_COMPACTION_BYTES || liveLength * 2 > length) {
+            return false;
+        }
+        compact();
+        return true;
+    }
+
+    /**
+     * Rewrites the file with only the pending operations.
+     */
+    synchronized void compact() throws IOException {
+        long start = System.nanoTime();
+        long before = length;
+        List<Entry> entries = new ArrayList<Entry>(pending.values());
+
+        File compacted = new File(file.getPath() + ".compact");
+        FileOutputStream compactedOut = new FileOutputStream(compacted);
+        try {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(compactedOut));
+            for (Entry entry : entries) {
+                data.writeByte(Outbox.Operation.SAVE.equals(entry.operation) ? SAVE : REMOVE);
+                data.writeLong(entry.sequence);
+                data.writeBoolean(entry.id != null);
+                if (entry.id != null) {
+                    data.writeUTF(entry.id);
+                }
+                data.writeInt(entry.body == null ? -1 : entry.body.length);
+                if (entry.body != null) {
+                    data.write(entry.body);
+                }
+            }
+            data.flush();
+            compactedOut.getFD().sync();
+        } finally {
+            compactedOut.close();
+        }
+
+        close();
+        if (!compacted.renameTo(file)) {
+            open();
+            throw new IOException("Could not replace " + file);
+        }
+        open();
+        statistics.recordCompaction(before - length, System.nanoTime() - start);
+    }
+
+    synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+            fileOut = null;
+        }
+    }
+
+    private void open() throws IOException {
+        fileOut = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        length = fileOut.getChannel().position();
+    }
+
+    private void replay() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+
+        long validLength = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                byte type = in.readByte();
+                long sequence = in.readLong();
+                if (type == ACKNOWLEDGE) {
+                    Entry entry = pending.remove(sequence);
+                    if (entry != null) {
+                        liveLength -= entry.getRecordLength();
+                    }
+                    validLength += 1 + 8;
+                } else if (type == SAVE || type == REMOVE) {
+                    String id = in.readBoolean() ? in.readUTF() : null;
+                    int bodyLength = in.readInt();
+                    byte[] body = null;
+                    if (bodyLength >= 0) {
+                        body = new byte[bodyLength];
+                        in.readFully(body);
+                    }
+                    Entry entry = new Entry(sequence, type == SAVE ? Outbox.Operation.SAVE : Outbox.Operation.REMOVE, id, body);
+                    pending.put(sequence, entry);
+                    liveLength += entry.getRecordLength();
+                    validLength += entry.getRecordLength();
+                } else {
+                    throw new EOFException("Unknown record type " + type);
+                }
+                nextSequence = Math.max(nextSequence, sequence + 1);
+            }
+        } catch (EOFException e) {
+            // the end of the journal, or a record torn by a crash
+        } finally {
+            in.close();
+        }
+
+        if (validLength < file.length()) {
+            Log.w(TAG, "Cutting off a torn record of " + file);
+            RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+            try {
+                truncated.setLength(validLength);
+            } finally {
+                truncated.close();
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes {@link DataOutputStream#writeUTF(String)}
+     *         writes for the characters of s
+     */
+    private static int utfLength(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length++;
+            } else if (c > 0x07FF) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+}
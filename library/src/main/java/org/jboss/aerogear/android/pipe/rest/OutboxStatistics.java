@@ -0,0 +1,124 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts what an {@link Outbox} journals, flushes and compacts, and how long
+ * flushing and compacting take.
+ */
+public final class OutboxStatistics {
+
+    private final AtomicLong journaledCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private final AtomicLong compactionCount = new AtomicLong();
+    private final AtomicLong compactedBytes = new AtomicLong();
+    private final AtomicLong compactionNanos = new AtomicLong();
+
+    void recordAppend() {
+        journaledCount.incrementAndGet();
+    }
+
+    void recordFlush(int sent, int coalesced, long nanos) {
+        flushCount.incrementAndGet();
+        sentCount.addAndGet(sent);
+        coalescedCount.addAndGet(coalesced);
+        flushNanos.addAndGet(nanos);
+    }
+
+    void recordCompaction(long bytes, long nanos) {
+        compactionCount.incrementAndGet();
+        compactedBytes.addAndGet(bytes);
+        compactionNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @return the number of operations written to the journal
+     */
+    public long getJournaledCount() {
+        return journaledCount.get();
+    }
+
+    /**
+     * @return the number of flushes
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * @return the number of requests flushes sent, whether they succeeded or
+     *         were rejected by the server
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * @return the number of operations which were not sent because a later
+     *         operation on the same id replaced them
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return the total time spent flushing in nanoseconds
+     */
+    public long getFlushNanos() {
+        return flushNanos.get();
+    }
+
+    /**
+     * @return the number of requests sent per second of flushing, 0 if
+     *         nothing was flushed yet
+     */
+    public double getFlushThroughput() {
+        long nanos = flushNanos.get();
+        if (nanos == 0) {
+            return 0;
+        }
+        return sentCount.get() * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * @return the number of times the journal was compacted
+     */
+    public long getCompactionCount() {
+        return compactionCount.get();
+    }
+
+    /**
+     * @return the number of bytes compactions removed from the journal
+     */
+    public long getCompactedBytes() {
+        return compactedBytes.get();
+    }
+
+    /**
+     * @return the total time spent compacting in nanoseconds
+     */
+    public long getCompactionNanos() {
+        return compactionNanos.get();
+    }
+
+}
@@ -0,0 +1,277 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.aerogear.android.pipe.http.RequestCancellation;
+
+/**
+ * The executor pipes run their requests on.
+ *
+ * It runs up to a fixed number of threads, queues further work in a bounded
+ * queue and applies an {@link OverflowPolicy} once the queue is full. Idle
+ * threads time out, so an unused executor holds no threads.
+ *
+ * Pipes share {@link #getDefault()} unless they are configured with their
+ * own executor through {@link RestfulPipeConfiguration#executor(Executor)}.
+ */
+public final class PipeExecutor implements Executor {
+
+    /**
+     * What happens to a task which is submitted while every thread is busy
+     * and the queue is full.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * The submitting thread runs the task itself. This slows down
+         * producers, but must not be used when tasks are submitted from the
+         * main thread.
+         */
+        CALLER_RUNS,
+
+        /**
+         * The oldest queued task is rejected to make room for the new one.
+         */
+        DROP_OLDEST,
+
+        /**
+         * The new task is rejected.
+         */
+        FAIL_FAST
+    }
+
+    /**
+     * A task which is told when the executor rejects it, for instance
+     * because it was dropped from a full queue.
+     */
+    public interface RejectableTask extends Runnable {
+
+        void onRejected(RejectedExecutionException exception);
+
+    }
+
+    /**
+     * The default capacity of the queue.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 128;
+
+    /**
+     * The default number of threads. Requests mostly wait on the network, so
+     * this is twice the number of processors, but at least 4 and at most 16.
+     */
+    public static final int DEFAULT_THREAD_COUNT = Math.max(4, Math.min(16, 2 * Runtime.getRuntime().availableProcessors()));
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final PipeExecutor DEFAULT = new PipeExecutor(DEFAULT_THREAD_COUNT, DEFAULT_QUEUE_CAPACITY,
+            OverflowPolicy.FAIL_FAST);
+
+    private final ThreadPoolExecutor executor;
+    private final BlockingQueue<Runnable> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param threadCount the maximal number of threads. Must be positive.
+     * @param queueCapacity the maximal number of queued tasks. Must be
+     *            positive.
+     * @param overflowPolicy what to do with tasks once the queue is full
+     *
+     * @throws IllegalArgumentException if a value is out of range
+     */
+    public PipeExecutor(int threadCount, int queueCapacity, OverflowPolicy overflowPolicy) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be positive");
+        }
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("overflowPolicy may not be null");
+        }
+
+        this.overflowPolicy = overflowPolicy;
+        this.queue = new ArrayBlockingQueue<Runnable>(queueCapacity);
+        // core and maximum size are equal, a ThreadPoolExecutor only grows
+        // beyond its core size once the queue is full
+        this.executor = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                queue, new PipeThreadFactory(), new OverflowHandler());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the executor shared by all pipes which do not configure their
+     *         own. It uses {@link #DEFAULT_THREAD_COUNT} threads, a queue of
+     *         {@link #DEFAULT_QUEUE_CAPACITY} tasks and fails fast.
+     */
+    public static PipeExecutor getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws RejectedExecutionException if the queue is full and the policy
+     *             is {@link OverflowPolicy#FAIL_FAST}, or if the executor was
+     *             shut down
+     */
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Removes a task from the queue if it has not started yet.
+     *
+     * @param task a task passed to {@link #execute(Runnable)}
+     * @return true if the task was removed
+     */
+    public boolean remove(Runnable task) {
+        return executor.remove(task);
+    }
+
+    /**
+     * Takes task off the queue of executor once cancellation is cancelled,
+     * if executor has a queue.
+     */
+    static void removeOnCancel(final Executor executor, final Runnable task, RequestCancellation cancellation) {
+        cancellation.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                if (executor instanceof PipeExecutor) {
+                    ((PipeExecutor) executor).remove(task);
+                } else if (executor instanceof ThreadPoolExecutor) {
+                    ((ThreadPoolExecutor) executor).remove(task);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops accepting tasks. Queued tasks still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of threads currently running a task
+     */
+    public int getActiveThreadCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of threads currently alive
+     */
+    public int getPoolSize() {
+        return executor.getPoolSize();
+    }
+
+    /**
+     * @return the number of tasks which were rejected or dropped
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return the approximate number of tasks which have finished
+     */
+    public long getCompletedTaskCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public int getThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getQueueCapacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    private final class OverflowHandler implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                rejectedCount.incrementAndGet();
+                throw new RejectedExecutionException("The executor has been shut down");
+            }
+
+            switch (overflowPolicy) {
+            case CALLER_RUNS:
+                task.run();
+                break;
+            case DROP_OLDEST:
+                Runnable oldest = queue.poll();
+                if (oldest != null) {
+                    rejectedCount.incrementAndGet();
+                    if (oldest instanceof RejectableTask) {
+                        ((RejectableTask) oldest).onRejected(new RejectedExecutionException(
+                                "The task was dropped from a full queue"));
+                    }
+                }
+                executor.execute(task);
+                break;
+            case FAIL_FAST:
+            default:
+                rejectedCount.incrementAndGet();
+                throw new RejectedExecutionException("The queue of " + getQueueCapacity() + " tasks is full");
+            }
+        }
+
+    }
+
+    private static final class PipeThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+        private final int poolNumber = POOL_NUMBER.incrementAndGet();
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "pipe-" + poolNumber + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -16,34 +16,48 @@
  */
 package org.jboss.aerogear.android.pipe.rest;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.jboss.aerogear.android.core.Callback;
 import org.jboss.aerogear.android.core.ReadFilter;
 import org.jboss.aerogear.android.pipe.rest.gson.GsonRequestBuilder;
 import org.jboss.aerogear.android.pipe.rest.gson.GsonResponseParser;
 import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
+import org.jboss.aerogear.android.pipe.BatchResult;
 import org.jboss.aerogear.android.pipe.Pipe;
 import org.jboss.aerogear.android.pipe.PipeHandler;
 import org.jboss.aerogear.android.pipe.RequestBuilder;
+import org.jboss.aerogear.android.pipe.RequestHandle;
 import org.jboss.aerogear.android.pipe.ResponseParser;
+import org.jboss.aerogear.android.pipe.StreamingRequestBuilder;
+import org.jboss.aerogear.android.pipe.http.DeadlineExceededException;
+import org.jboss.aerogear.android.pipe.http.RequestBody;
+import org.jboss.aerogear.android.pipe.http.RequestCancellation;
+import org.jboss.aerogear.android.pipe.http.Timeouts;
+import org.jboss.aerogear.android.pipe.metrics.PipeMetrics;
 
 import android.util.Log;
 
 import java.net.URI;
 import java.net.URISyntaxException;
 
+import org.jboss.aerogear.android.pipe.paging.PageIterator;
+import org.jboss.aerogear.android.pipe.paging.PagePrefetcher;
+import org.jboss.aerogear.android.pipe.paging.PagedList;
+import org.jboss.aerogear.android.pipe.paging.TotalCountParser;
 import org.jboss.aerogear.android.pipe.paging.WebLink;
 import org.jboss.aerogear.android.pipe.paging.WrappingPagedList;
-import org.jboss.aerogear.android.core.reflection.Property;
-import org.jboss.aerogear.android.core.reflection.Scan;
+import org.jboss.aerogear.android.pipe.util.ClassMetadata;
 import org.jboss.aerogear.android.pipe.util.ParseException;
+import org.jboss.aerogear.android.pipe.util.SingleFlight;
 import org.jboss.aerogear.android.pipe.util.WebLinkParser;
 import org.jboss.aerogear.android.pipe.paging.PageConfig;
 import org.json.JSONObject;
@@ -54,12 +68,13 @@ import org.json.JSONObject;
 public final class RestAdapter<T> implements Pipe<T> {
 
     private static final String TAG = RestAdapter.class.getSimpleName();
-    private static final int CORE_POOL_SIZE = 5;
-    private static final int MAX_POOL_SIZE = 64;
-    private static final int KEEP_ALIVE = 1;
-    private static final BlockingQueue<Runnable> WORK_QUEUE = new LinkedBlockingQueue<Runnable>(10);
-    public static final Executor THREAD_POOL_EXECUTOR = new ThreadPoolExecutor(CORE_POOL_SIZE, MAX_POOL_SIZE, KEEP_ALIVE,
-            TimeUnit.SECONDS, WORK_QUEUE);
+
+    /**
+     * @deprecated pipes run on the executor of their configuration, this is
+     *             the shared default. Use {@link PipeExecutor#getDefault()}.
+     */
+    @Deprecated
+    public static final Executor THREAD_POOL_EXECUTOR = PipeExecutor.getDefault();
 
     /**
      * A class of the Generic type this pipe wraps. This is used by GSON for
@@ -71,6 +86,14 @@ public final class RestAdapter<T> implements Pipe<T> {
     private final RequestBuilder<T> requestBuilder;
     private final ResponseParser<T> responseParser;
     private final PageConfig pageConfig;
+    private final Executor executor;
+    private final SingleFlight<Read<T>> readCoalescer;
+    private final int batchConcurrency;
+    private final String bulkSaveEndpoint;
+    private final PipeMetrics metrics;
+    private final PagePrefetcher<T> pagePrefetcher;
+    private final Timeouts timeouts;
+    private final Outbox<T> outbox;
 
     /**
      * This will configure the Adapter as with sane RESTful defaults.
@@ -79,12 +102,21 @@ public final class RestAdapter<T> implements Pipe<T> {
      * @param absoluteURL the RESTful URL endpoint.
      */
     public RestAdapter(Class<T> klass, URL absoluteURL) {
-        this.restRunner = new RestRunner<T>(klass, absoluteURL);
+        RestRunner<T> runner = new RestRunner<T>(klass, absoluteURL);
+        this.restRunner = runner;
+        this.metrics = runner.getMetrics();
+        this.pagePrefetcher = null;
         this.klass = klass;
         this.url = absoluteURL;
         this.pageConfig = null;
         this.requestBuilder = new GsonRequestBuilder<T>();
         this.responseParser = new GsonResponseParser<T>();
+        this.executor = PipeExecutor.getDefault();
+        this.batchConcurrency = RestfulPipeConfiguration.DEFAULT_BATCH_CONCURRENCY;
+        this.bulkSaveEndpoint = null;
+        this.readCoalescer = new SingleFlight<Read<T>>();
+        this.timeouts = new Timeouts(Timeouts.DEFAULT_TIMEOUT, Timeouts.DEFAULT_TIMEOUT, 0);
+        this.outbox = null;
     }
 
     /**
@@ -103,12 +135,20 @@ public final class RestAdapter<T> implements Pipe<T> {
         this.pageConfig = config.getPageConfig();
         this.requestBuilder = config.getRequestBuilder();
         this.responseParser = config.getResponseParser();
+        this.executor = config.getExecutor();
+        this.batchConcurrency = config.getBatchConcurrency();
+        this.bulkSaveEndpoint = config.getBulkSaveEndpoint();
+        this.metrics = config.getMetrics();
+        this.pagePrefetcher = createPagePrefetcher(pageConfig);
+        this.readCoalescer = new SingleFlight<Read<T>>();
+        this.timeouts = config.getTimeouts();
 
         if (config.getPipeHandler() != null) {
             this.restRunner = (PipeHandler<T>) config.getPipeHandler();
         } else {
             this.restRunner = new RestRunner<T>(klass, absoluteURL, config);
         }
+        this.outbox = createOutbox(config);
 
     }
 
@@ -124,8 +164,60 @@ public final class RestAdapter<T> implements Pipe<T> {
         this.pageConfig = configuration.getPageConfig();
         this.requestBuilder = configuration.getRequestBuilder();
         this.responseParser = configuration.getResponseParser();
+        this.executor = configuration.getExecutor();
+        this.batchConcurrency = configuration.getBatchConcurrency();
+        this.bulkSaveEndpoint = configuration.getBulkSaveEndpoint();
+        this.metrics = configuration.getMetrics();
+        this.pagePrefetcher = createPagePrefetcher(pageConfig);
+        this.readCoalescer = new SingleFlight<Read<T>>();
+        this.timeouts = configuration.getTimeouts();
         this.restRunner = new RestRunner<T>(klass, url, configuration);
+        this.outbox = createOutbox(configuration);
+
+    }
+
+    private RestAdapter(RestAdapter<T> source, Timeouts timeouts) {
+        this.klass = source.klass;
+        this.url = source.url;
+        this.restRunner = source.restRunner;
+        this.requestBuilder = source.requestBuilder;
+        this.responseParser = source.responseParser;
+        this.pageConfig = source.pageConfig;
+        this.executor = source.executor;
+        this.readCoalescer = source.readCoalescer;
+        this.batchConcurrency = source.batchConcurrency;
+        this.bulkSaveEndpoint = source.bulkSaveEndpoint;
+        this.metrics = source.metrics;
+        this.pagePrefetcher = source.pagePrefetcher;
+        this.timeouts = timeouts;
+        this.outbox = source.outbox;
+    }
 
+    /**
+     * Returns a pipe which runs its operations with other timeouts. It shares
+     * everything else, including its executor and metrics, with this pipe.
+     * Its reads are only coalesced with reads which use the same timeouts.
+     * The further pages of a {@link PagedList} it reads are read with the
+     * same timeouts.
+     *
+     * @param timeouts the connect and read timeouts and the deadline of the
+     *            operations of the returned pipe
+     * @return a pipe using timeouts
+     * @throws IllegalArgumentException if timeouts is null
+     */
+    public RestAdapter<T> withTimeouts(Timeouts timeouts) {
+        if (timeouts == null) {
+            throw new IllegalArgumentException("timeouts may not be null");
+        }
+        return new RestAdapter<T>(this, timeouts);
+    }
+
+    /**
+     * @return the connect and read timeouts and the deadline of the
+     *         operations of this pipe
+     */
+    public Timeouts getTimeouts() {
+        return timeouts;
     }
 
     /**
@@ -137,60 +229,85 @@ public final class RestAdapter<T> implements Pipe<T> {
     }
 
     @Override
-    public void read(final String id, final Callback<T> callback) {
-        THREAD_POOL_EXECUTOR.execute(new Runnable() {
+    public RequestHandle read(final String id, final Callback<T> callback) {
+        return execute(callback, new Runnable() {
             T result = null;
             Exception exception = null;
 
             @Override
             public void run() {
                 try {
-                    HeaderAndBody response = restRunner.onRawRead(RestAdapter.this, id);
-                    List<T> resultList = getResponseParser().handleResponse(response, klass);
+                    ReadFilter filter = new ReadFilter();
+                    filter.setLinkUri(URI.create(id));
+                    List<T> resultList = coalesce("id:", filter, new SingleFlight.Call<Read<T>>() {
+                        @Override
+                        public Read<T> call() {
+                            HeaderAndBody response = restRunner.onRawRead(RestAdapter.this, id);
+                            return new Read<T>(response, parse(response));
+                        }
+                    }).items;
                     this.result = resultList.get(0);
                 } catch (Exception e) {
                     Log.e(TAG, e.getMessage(), e);
                     this.exception = e;
                 }
-                if (exception == null) {
-                    callback.onSuccess(this.result);
-                } else {
-                    callback.onFailure(exception);
-                }
+                deliver(callback, this.result, exception);
             }
         });
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * If the pipe prefetches pages, the neighbours of a page start to be read
+     * when it is delivered.
+     *
+     * If the pipe has a response cache and the cached response of the read
+     * expired, callback gets the cached items first and the items of the
+     * network afterwards, unless they did not change. A failure to revalidate
+     * is only logged then. Prefetching and read-ahead reads only get the items
+     * of the network, so that each page is delivered to them once.
+     */
     @Override
-    public void read(ReadFilter filter, final Callback<List<T>> callback) {
+    public RequestHandle read(ReadFilter filter, final Callback<List<T>> callback) {
         if (filter == null) {
             filter = new ReadFilter();
         }
         final ReadFilter innerFilter = filter;
 
-        THREAD_POOL_EXECUTOR.execute(new Runnable() {
+        return execute(callback, new Runnable() {
             List<T> result = null;
             Exception exception = null;
+            boolean staleDelivered = false;
+            boolean unchanged = false;
 
             @Override
             public void run() {
+                final HeaderAndBody stale = PagePrefetcher.isPrefetch(callback) ? null : getStaleResponse(innerFilter);
                 try {
-                    HeaderAndBody response = restRunner.onRawReadWithFilter(innerFilter, RestAdapter.this);
-                    this.result = getResponseParser().handleResponse(response, klass);
-
-                    if (pageConfig != null) {
-                        result = computePagedList(result, response, innerFilter.getWhere(), RestAdapter.this);
+                    if (stale != null) {
+                        deliverStale(callback, parseReadResponse(stale, innerFilter, RestAdapter.this));
+                        staleDelivered = true;
+                    }
+                    Read<T> read = coalesce("filter:", innerFilter, new SingleFlight.Call<Read<T>>() {
+                        @Override
+                        public Read<T> call() {
+                            HeaderAndBody response = restRunner.onRawReadWithFilter(innerFilter, RestAdapter.this);
+                            return new Read<T>(response, parseReadResponse(response, innerFilter, RestAdapter.this));
+                        }
+                    });
+                    // compared against the stale response of this reader,
+                    // coalesced readers may have had different ones
+                    unchanged = isSameBody(stale, read.response);
+                    this.result = read.items;
+                    if (this.result instanceof WrappingPagedList && !PagePrefetcher.isPrefetch(callback)) {
+                        ((WrappingPagedList<T>) this.result).prefetch();
                     }
-
                 } catch (Exception e) {
                     Log.e(TAG, e.getMessage(), e);
                     this.exception = e;
                 }
-                if (exception == null) {
-                    callback.onSuccess(this.result);
-                } else {
-                    callback.onFailure(exception);
-                }
+                deliverRevalidated(callback, this.result, exception, staleDelivered, unchanged);
             }
         });
 
@@ -198,72 +315,238 @@ public final class RestAdapter<T> implements Pipe<T> {
 
     /**
      * {@inheritDoc}
+     *
+     * If the pipe has a response cache and the cached response of the read
+     * expired, callback gets the cached items first and the items of the
+     * network afterwards, unless they did not change. Prefetching and
+     * read-ahead reads only get the items of the network.
      */
     @Override
-    public void read(final Callback<List<T>> callback) {
-        THREAD_POOL_EXECUTOR.execute(new Runnable() {
+    public RequestHandle read(final Callback<List<T>> callback) {
+        return execute(callback, new Runnable() {
             List<T> result = null;
             Exception exception = null;
+            boolean staleDelivered = false;
+            boolean unchanged = false;
 
             @Override
             public void run() {
+                final HeaderAndBody stale = PagePrefetcher.isPrefetch(callback) ? null : getStaleResponse(new ReadFilter());
                 try {
-                    this.result = getResponseParser().handleResponse(restRunner.onRawRead(RestAdapter.this), klass);
+                    if (stale != null) {
+                        deliverStale(callback, parse(stale));
+                        staleDelivered = true;
+                    }
+                    Read<T> read = coalesce("all:", new ReadFilter(), new SingleFlight.Call<Read<T>>() {
+                        @Override
+                        public Read<T> call() {
+                            HeaderAndBody response = restRunner.onRawRead(RestAdapter.this);
+                            return new Read<T>(response, parse(response));
+                        }
+                    });
+                    unchanged = isSameBody(stale, read.response);
+                    this.result = read.items;
                 } catch (Exception e) {
                     Log.e(TAG, e.getMessage(), e);
                     this.exception = e;
                 }
-                if (exception == null) {
-                    callback.onSuccess(this.result);
-                } else {
-                    callback.onFailure(exception);
-                }
+                deliverRevalidated(callback, this.result, exception, staleDelivered, unchanged);
             }
         });
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * If the pipe has an {@link Outbox}, the save is journaled and sent by
+     * the outbox.
+     */
     @Override
-    public void save(final T data, final Callback<T> callback) {
+    public RequestHandle save(final T data, final Callback<T> callback) {
+        if (outbox != null) {
+            return outbox.save(data, callback);
+        }
 
-        THREAD_POOL_EXECUTOR.execute(new Runnable() {
+        return execute(callback, new Runnable() {
             @Override
             public void run() {
                 T result = null;
                 Exception exception = null;
 
                 try {
-                    String id;
+                    result = saveItem(data);
+                } catch (Exception e) {
+                    exception = e;
+                }
+
+                deliver(callback, result, exception);
+            }
+        });
+
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Items are serialized and sent by at most
+     * {@link RestfulPipeConfiguration#batchConcurrency(int)} workers at a
+     * time. If the pipe is configured with a bulk save endpoint, all items
+     * are sent in a single request instead.
+     */
+    @Override
+    public RequestHandle saveAll(final Collection<T> items, final Callback<BatchResult<T>> callback) {
+        if (bulkSaveEndpoint != null && restRunner instanceof RestRunner) {
+            return execute(callback, new Runnable() {
+                @Override
+                public void run() {
+                    BatchResult<T> result = null;
+                    Exception exception = null;
+                    try {
+                        result = bulkSave(new ArrayList<T>(items));
+                    } catch (Exception e) {
+                        Log.e(TAG, e.getMessage(), e);
+                        exception = e;
+                    }
+                    deliver(callback, result, exception);
+                }
+            });
+        }
+
+        return new BatchOperation<T, T>(items, callback) {
+            @Override
+            T process(T item) throws Exception {
+                return saveItem(item);
+            }
+        }.start(executor, batchConcurrency, newOperation());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Ids are removed by at most
+     * {@link RestfulPipeConfiguration#batchConcurrency(int)} workers at a
+     * time.
+     */
+    @Override
+    public RequestHandle removeAll(Collection<String> ids, Callback<BatchResult<String>> callback) {
+        return new BatchOperation<String, String>(ids, callback) {
+            @Override
+            String process(String id) throws Exception {
+                restRunner.onRemove(id);
+                return id;
+            }
+        }.start(executor, batchConcurrency, newOperation());
+    }
 
-                    String recordIdFieldName = Scan.recordIdFieldNameIn(data.getClass());
-                    Object idObject = new Property(data.getClass(), recordIdFieldName).getValue(data);
-                    id = idObject == null ? null : idObject.toString();
+    /**
+     * {@inheritDoc}
+     *
+     * The number of pages held is {@link PageConfig#getMaxResidentPages()}.
+     * Without a page config the collection is a single page.
+     */
+    @Override
+    public PageIterator<T> iterate(ReadFilter filter) {
+        int maxResidentPages = pageConfig == null ? PageConfig.DEFAULT_MAX_RESIDENT_PAGES : pageConfig.getMaxResidentPages();
+        return new PageIterator<T>(this, filter, maxResidentPages);
+    }
 
-                    byte[] body = requestBuilder.getBody(data);
+    /**
+     * {@inheritDoc}
+     *
+     * The first page is read with filter, or with the offset and limit of
+     * the {@link PageConfig} if filter has no limit. The total count of its
+     * response, named by {@link PageConfig#getTotalCountIdentifier()}, gives
+     * the offsets of the other pages, which are then read by at most
+     * {@link PageConfig#getParallelism()} workers at a time and appended in
+     * order. Without a page config this is a plain read.
+     *
+     * Every error reaches callback: an {@link IllegalStateException} if the
+     * page config names no total count, an {@link IllegalArgumentException}
+     * if filter has a link instead of an offset, and otherwise the failure
+     * of the page with the lowest offset which failed.
+     */
+    @Override
+    public RequestHandle readAll(final ReadFilter filter, final Callback<List<T>> callback) {
+        if (pageConfig == null) {
+            return read(filter, callback);
+        }
 
-                    HeaderAndBody response = restRunner.onRawSave(id, body);
+        return execute(callback, new Runnable() {
+            @Override
+            public void run() {
+                final List<T> firstPage;
+                final List<ReadFilter> filters;
+                try {
+                    if (pageConfig.getTotalCountIdentifier() == null) {
+                        throw new IllegalStateException("Reading pages in parallel requires a total count identifier");
+                    }
+                    if (filter != null && filter.getLinkUri() != null) {
+                        throw new IllegalArgumentException("Only offset addressed pages can be read in parallel");
+                    }
 
-                    result = getResponseParser().handleResponse(response, klass).get(0);
+                    ReadFilter firstFilter = getFirstPageFilter(filter);
+                    HeaderAndBody response = restRunner.onRawReadWithFilter(firstFilter, RestAdapter.this);
+                    firstPage = parse(response);
+                    Integer totalCount = new TotalCountParser().getTotalCount(response, pageConfig);
+                    if (totalCount == null) {
+                        throw new IllegalStateException("The response has no " + pageConfig.getTotalCountIdentifier());
+                    }
+                    filters = getRemainingPageFilters(firstFilter, totalCount);
                 } catch (Exception e) {
-                    exception = e;
+                    Log.e(TAG, e.getMessage(), e);
+                    deliver(callback, null, e);
+                    return;
                 }
 
-                if (exception == null) {
-                    callback.onSuccess(result);
-                } else {
-                    callback.onFailure(exception);
-                }
+                new BatchOperation<ReadFilter, List<T>>(filters, new Callback<BatchResult<List<T>>>() {
+
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public void onSuccess(BatchResult<List<T>> pages) {
+                        // pages are indexed in the order of their offsets
+                        for (int i = 0; i < pages.size(); i++) {
+                            if (!pages.isSuccess(i)) {
+                                deliver(callback, null, pages.getFailure(i));
+                                return;
+                            }
+                        }
+
+                        List<T> items = new ArrayList<T>(firstPage);
+                        for (List<T> page : pages.getResults()) {
+                            items.addAll(page);
+                        }
+                        deliver(callback, items, null);
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        deliver(callback, null, e);
+                    }
+
+                }) {
+                    @Override
+                    List<T> process(ReadFilter pageFilter) throws Exception {
+                        return parse(restRunner.onRawReadWithFilter(pageFilter, RestAdapter.this));
+                    }
+                }.start(executor, pageConfig.getParallelism(), RequestCancellation.current());
             }
         });
-
     }
 
     /**
      * {@inheritDoc}
+     *
+     * If the pipe has an {@link Outbox}, the remove is journaled and sent by
+     * the outbox.
      */
     @Override
-    public void remove(final String id, final Callback<Void> callback) {
+    public RequestHandle remove(final String id, final Callback<Void> callback) {
+        if (outbox != null) {
+            return outbox.remove(id, callback);
+        }
 
-        THREAD_POOL_EXECUTOR.execute(new Runnable() {
+        return execute(callback, new Runnable() {
             Exception exception = null;
 
             @Override
@@ -273,16 +556,42 @@ public final class RestAdapter<T> implements Pipe<T> {
                 } catch (Exception e) {
                     exception = e;
                 }
-                if (exception == null) {
-                    callback.onSuccess(null);
-                } else {
-                    callback.onFailure(exception);
-                }
+                deliver(callback, null, exception);
             }
         });
 
     }
 
+    /**
+     * @return the outbox saves and removes go through, null if the pipe
+     *         sends them right away
+     */
+    public Outbox<T> getOutbox() {
+        return outbox;
+    }
+
+    /**
+     * @return the executor the requests of this pipe run on
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return the coalescer of reads, which counts how many reads shared the
+     *         request and parse of another
+     */
+    public SingleFlight<?> getReadCoalescer() {
+        return readCoalescer;
+    }
+
+    /**
+     * @return the metrics the requests of this pipe are recorded in
+     */
+    public PipeMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public PipeHandler<T> getHandler() {
         return restRunner;
@@ -303,6 +612,147 @@ public final class RestAdapter<T> implements Pipe<T> {
         return this.responseParser;
     }
 
+    private T saveItem(T data) {
+        String id = ClassMetadata.forClass(data.getClass()).getIdValue(data);
+
+        HeaderAndBody response;
+        if (requestBuilder instanceof StreamingRequestBuilder && restRunner instanceof RestRunner) {
+            RequestBody body = ((StreamingRequestBuilder<T>) requestBuilder).getStreamingBody(data);
+            response = ((RestRunner<T>) restRunner).onRawSave(id, body);
+        } else {
+            byte[] body = requestBuilder.getBody(data);
+            response = restRunner.onRawSave(id, body);
+        }
+
+        return parse(response).get(0);
+    }
+
+    /**
+     * Parses the response of a read with a filter like
+     * {@link #read(ReadFilter, Callback)} does, which includes computing the
+     * {@link PagedList} if the pipe pages. Loaders use this to parse their
+     * results in the background.
+     *
+     * @param response the response of the read
+     * @param filter the filter the read was made with, reads without a filter
+     *            are not paged
+     * @param requestingPipe the pipe a PagedList reads further pages with
+     * @return the parsed items
+     */
+    public List<T> parseReadResponse(HeaderAndBody response, ReadFilter filter, Pipe<T> requestingPipe) {
+        List<T> parsed = parse(response);
+        if (pageConfig != null && filter != null) {
+            parsed = computePagedList(parsed, response, filter.getWhere(), requestingPipe);
+        }
+        return parsed;
+    }
+
+    private List<T> parse(HeaderAndBody response) {
+        RequestCancellation.throwIfCancelled();
+        long start = System.nanoTime();
+        try {
+            return getResponseParser().handleResponse(response, klass);
+        } finally {
+            metrics.record(PipeMetrics.Stage.PARSE, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Passes the outcome of an operation to its callback, unless the
+     * operation was cancelled.
+     */
+    private <R> void deliver(Callback<R> callback, R result, Exception exception) {
+        RequestCancellation cancellation = RequestCancellation.current();
+        if (cancellation != null) {
+            cancellation.finish();
+            if (cancellation.isCancelled()) {
+                return;
+            }
+        }
+        invoke(callback, result, exception);
+    }
+
+    /**
+     * Passes the items of an expired cached response to callback while the
+     * operation goes on to revalidate them.
+     */
+    private <R> void deliverStale(Callback<R> callback, R result) {
+        RequestCancellation cancellation = RequestCancellation.current();
+        if (cancellation != null && cancellation.isCancelled()) {
+            return;
+        }
+        invoke(callback, result, null);
+    }
+
+    /**
+     * Passes the outcome of a read to its callback, unless the callback got
+     * stale items already and the read failed or returned the same body.
+     */
+    private <R> void deliverRevalidated(Callback<R> callback, R result, Exception exception, boolean deliveredStale, boolean unchanged) {
+        if (deliveredStale && (exception != null || unchanged)) {
+            RequestCancellation cancellation = RequestCancellation.current();
+            if (cancellation != null) {
+                cancellation.finish();
+            }
+            return;
+        }
+        deliver(callback, result, exception);
+    }
+
+    private <R> void invoke(Callback<R> callback, R result, Exception exception) {
+        long start = System.nanoTime();
+        try {
+            if (exception == null) {
+                callback.onSuccess(result);
+            } else {
+                callback.onFailure(exception);
+            }
+        } finally {
+            metrics.record(PipeMetrics.Stage.CALLBACK, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Posts all items as one JSON array to the bulk save endpoint. The
+     * elements of the array the server answers with are the results of the
+     * items, or the items themselves if the server answers with no body.
+     *
+     * @throws IllegalStateException if the server answers with an array of
+     *             another size, which can not be matched to the items
+     */
+    private BatchResult<T> bulkSave(List<T> items) throws IOException {
+        if (!requestBuilder.getContentType().contains("json")) {
+            throw new IllegalStateException("Bulk saves require a JSON request builder");
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write('[');
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) {
+                body.write(',');
+            }
+            body.write(requestBuilder.getBody(items.get(i)));
+        }
+        body.write(']');
+
+        HeaderAndBody response = ((RestRunner<T>) restRunner).onRawBulkSave(bulkSaveEndpoint, body.toByteArray());
+        List<T> saved = items;
+        if (response != null && response.getBodyAsByteBuffer().hasRemaining()) {
+            saved = parse(response);
+            int count = saved == null ? 0 : saved.size();
+            if (count != items.size()) {
+                throw new IllegalStateException("The bulk save of " + items.size() + " items answered with "
+                        + count + " items");
+            }
+        }
+
+        List<Exception> failures = new ArrayList<Exception>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            failures.add(null);
+        }
+        return new BatchResult<T>(saved, failures);
+    }
+
     /**
      * This method checks for paging information and returns the appropriate
      * data
@@ -361,7 +811,144 @@ public final class RestAdapter<T> implements Pipe<T> {
             previousRead.setWhere(where);
         }
 
-        return new WrappingPagedList<T>(requestingPipe, result, nextRead, previousRead);
+        return new WrappingPagedList<T>(requestingPipe, result, nextRead, previousRead, pagePrefetcher);
+    }
+
+    /**
+     * Runs a read, sharing its request and parse with concurrent reads of the
+     * same kind which request the same url with the same timeouts. Each
+     * reader gets its own list, which prefetches and discards its own pages,
+     * the items in it are shared. Reads through a custom {@link PipeHandler}
+     * are not coalesced.
+     *
+     * If the reader this one waited for was cancelled or passed its own
+     * deadline, the read is run again unless this one was cancelled or
+     * passed its deadline as well.
+     */
+    private Read<T> coalesce(String kind, ReadFilter filter, SingleFlight.Call<Read<T>> read) {
+        if (!(restRunner instanceof RestRunner)) {
+            return read.call();
+        }
+
+        // views with other timeouts share the coalescer, not the reads
+        String key = kind + timeouts + "\n" + ((RestRunner<T>) restRunner).getReadKey(filter);
+        Read<T> result;
+        while (true) {
+            try {
+                result = readCoalescer.execute(key, read);
+                break;
+            } catch (CancellationException e) {
+                RequestCancellation.throwIfCancelled();
+                RequestCancellation.throwIfExpired();
+            } catch (DeadlineExceededException e) {
+                RequestCancellation.throwIfCancelled();
+                RequestCancellation.throwIfExpired();
+            }
+        }
+        if (result.items == null) {
+            return result;
+        }
+        if (result.items instanceof WrappingPagedList) {
+            return new Read<T>(result.response, ((WrappingPagedList<T>) result.items).copy());
+        }
+        return new Read<T>(result.response, new ArrayList<T>(result.items));
+    }
+
+    /**
+     * @return the cached response of a read with filter if it expired, null
+     *         if the pipe has no response cache or the response is fresh
+     */
+    private HeaderAndBody getStaleResponse(ReadFilter filter) {
+        if (!(restRunner instanceof RestRunner)) {
+            return null;
+        }
+        return ((RestRunner<T>) restRunner).getStaleResponse(filter);
+    }
+
+    private static boolean isSameBody(HeaderAndBody cached, HeaderAndBody response) {
+        return cached != null && response != null
+                && cached.getBodyAsByteBuffer().equals(response.getBodyAsByteBuffer());
+    }
+
+    /**
+     * Runs task on the executor of this pipe. If the executor rejects the
+     * task, now or later by dropping it from its queue, callback is told
+     * through {@link Callback#onFailure(Exception)}.
+     *
+     * @return the handle which takes the task off the queue or aborts its
+     *         requests
+     */
+    private RequestHandle execute(Callback<?> callback, Runnable task) {
+        RequestCancellation cancellation = newOperation();
+        PipeTask pipeTask = new PipeTask(callback, task, metrics, cancellation);
+        PipeExecutor.removeOnCancel(executor, pipeTask, cancellation);
+        try {
+            executor.execute(pipeTask);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "The request to " + url + " was rejected", e);
+            callback.onFailure(e);
+        }
+        return cancellation;
+    }
+
+    /**
+     * @return the handle of a new operation, whose deadline starts now
+     */
+    private RequestCancellation newOperation() {
+        RequestCancellation cancellation = new RequestCancellation();
+        cancellation.setTimeouts(timeouts);
+        return cancellation;
+    }
+
+    private ReadFilter getFirstPageFilter(ReadFilter filter) {
+        ReadFilter first = new ReadFilter();
+        if (filter == null || filter.getLimit() == null || filter.getLimit() == Integer.MAX_VALUE) {
+            first.setOffset(Integer.valueOf(pageConfig.getOffsetValue()));
+            first.setLimit(pageConfig.getLimitValue());
+        } else {
+            first.setOffset(filter.getOffset() == null ? 0 : filter.getOffset());
+            first.setLimit(filter.getLimit());
+        }
+        if (filter != null) {
+            first.setWhere(filter.getWhere());
+        }
+        return first;
+    }
+
+    /**
+     * @param first the filter of the first page
+     * @param totalCount the total number of items of the collection
+     * @return the filters of the pages after first, in order
+     */
+    static List<ReadFilter> getRemainingPageFilters(ReadFilter first, int totalCount) {
+        List<ReadFilter> filters = new ArrayList<ReadFilter>();
+        int limit = first.getLimit();
+        if (limit <= 0) {
+            return filters;
+        }
+
+        for (long offset = (long) first.getOffset() + limit; offset < totalCount; offset += limit) {
+            ReadFilter filter = new ReadFilter();
+            filter.setOffset((int) offset);
+            filter.setLimit(limit);
+            filter.setWhere(first.getWhere());
+            filters.add(filter);
+        }
+        return filters;
+    }
+
+    private Outbox<T> createOutbox(RestfulPipeConfiguration config) {
+        if (config.getOutboxFile() == null) {
+            return null;
+        }
+        return new Outbox<T>(config.getOutboxFile(), klass, restRunner, requestBuilder, responseParser, executor, batchConcurrency);
+    }
+
+    private static <T> PagePrefetcher<T> createPagePrefetcher(PageConfig pageConfig) {
+        if (pageConfig == null || PageConfig.Prefetch.NONE.equals(pageConfig.getPrefetch())) {
+            return null;
+        }
+        return new PagePrefetcher<T>(pageConfig);
     }
 
     private String getWebLinkHeader(HeaderAndBody httpResponse) {
@@ -373,4 +960,62 @@ public final class RestAdapter<T> implements Pipe<T> {
         return null;
     }
 
+    private static final class PipeTask implements PipeExecutor.RejectableTask {
+
+        private final Callback<?> callback;
+        private final Runnable task;
+        private final PipeMetrics metrics;
+        private final RequestCancellation cancellation;
+        private final long queuedAt = System.nanoTime();
+
+        PipeTask(Callback<?> callback, Runnable task, PipeMetrics metrics, RequestCancellation cancellation) {
+            this.callback = callback;
+            this.task = task;
+            this.metrics = metrics;
+            this.cancellation = cancellation;
+        }
+
+        @Override
+        public void run() {
+            if (cancellation.isCancelled()) {
+                return;
+            }
+            metrics.record(PipeMetrics.Stage.QUEUE_WAIT, System.nanoTime() - queuedAt);
+            if (cancellation.isExpired()) {
+                cancellation.finish();
+                callback.onFailure(new DeadlineExceededException("The request exceeded its deadline while it was queued"));
+                return;
+            }
+            RequestCancellation previous = cancellation.bind();
+            try {
+                task.run();
+            } finally {
+                RequestCancellation.unbind(previous);
+            }
+        }
+
+        @Override
+        public void onRejected(RejectedExecutionException exception) {
+            Log.w(TAG, "A queued request was dropped", exception);
+            callback.onFailure(exception);
+        }
+
+    }
+
+    /**
+     * The response of a read and the items parsed from it, which coalesced
+     * reads share.
+     */
+    private static final class Read<T> {
+
+        private final HeaderAndBody response;
+        private final List<T> items;
+
+        Read(HeaderAndBody response, List<T> items) {
+            this.response = response;
+            this.items = items;
+        }
+
+    }
+
 }
@@ -17,24 +17,36 @@
 package org.jboss.aerogear.android.pipe.rest;
 
 import android.net.Uri;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.List;
+import java.util.Map;
 
 import org.jboss.aerogear.android.core.Provider;
 import org.jboss.aerogear.android.core.ReadFilter;
 import org.jboss.aerogear.android.pipe.rest.gson.GsonRequestBuilder;
 import org.jboss.aerogear.android.pipe.rest.gson.GsonResponseParser;
+import org.jboss.aerogear.android.pipe.http.CompressionStatistics;
+import org.jboss.aerogear.android.pipe.http.DiskResponseCache;
+import org.jboss.aerogear.android.pipe.metrics.PipeMetrics;
 import org.jboss.aerogear.android.pipe.http.HeaderAndBody;
 import org.jboss.aerogear.android.pipe.http.HttpException;
 import org.jboss.aerogear.android.pipe.http.HttpProvider;
 import org.jboss.aerogear.android.pipe.http.HttpProviderFactory;
+import org.jboss.aerogear.android.pipe.http.RequestBody;
+import org.jboss.aerogear.android.pipe.http.RevalidationCache;
+import org.jboss.aerogear.android.pipe.http.StreamingHttpProvider;
+import org.jboss.aerogear.android.pipe.http.Timeouts;
 import org.jboss.aerogear.android.pipe.paging.DefaultParameterProvider;
 import org.jboss.aerogear.android.pipe.paging.URIBodyPageParser;
 import org.jboss.aerogear.android.pipe.paging.URIPageHeaderParser;
+import org.jboss.aerogear.android.pipe.util.SingleFlight;
 import org.jboss.aerogear.android.pipe.util.UrlUtils;
 import org.jboss.aerogear.android.pipe.Pipe;
 import org.jboss.aerogear.android.pipe.PipeHandler;
@@ -69,8 +81,18 @@ public class RestRunner<T> implements PipeHandler<T> {
      */
     private final Class<T[]> arrayKlass;
     private final URL baseURL;
-    private final Provider<HttpProvider> httpProviderFactory = new HttpProviderFactory();
-    private final Integer timeout;
+    private final Provider<HttpProvider> httpProviderFactory;
+    private final CompressionStatistics compressionStatistics;
+    private final PipeMetrics metrics;
+    private final RetryPolicy readRetryPolicy;
+    private final RetryPolicy saveRetryPolicy;
+    private final RetryPolicy removeRetryPolicy;
+    private final CircuitBreakerRegistry circuitBreakers;
+    private final RevalidationCache revalidationCache;
+    private final DiskResponseCache responseCache;
+    private final long responseCacheTtl;
+    private final SingleFlight<HeaderAndBody> readCoalescer = new SingleFlight<HeaderAndBody>();
+    private final Timeouts timeouts;
     private final ResponseParser<T> responseParser;
     private Set<PipeModule> modules = new HashSet<PipeModule>();
 
@@ -81,8 +103,20 @@ public class RestRunner<T> implements PipeHandler<T> {
         this.requestBuilder = new GsonRequestBuilder<T>();
         this.pageConfig = null;
         this.parameterProvider = new DefaultParameterProvider();
-        this.timeout = 60000;
+        this.timeouts = new Timeouts(Timeouts.DEFAULT_TIMEOUT, Timeouts.DEFAULT_TIMEOUT, 0);
         this.responseParser = new GsonResponseParser<T>();
+        HttpProviderFactory factory = new HttpProviderFactory();
+        this.httpProviderFactory = factory;
+        factory.setMetrics(new PipeMetrics(baseURL.toString()));
+        this.compressionStatistics = factory.getCompressionStatistics();
+        this.metrics = factory.getMetrics();
+        this.revalidationCache = new RevalidationCache(RevalidationCache.DEFAULT_MAX_BYTES);
+        this.responseCache = null;
+        this.responseCacheTtl = 0;
+        this.readRetryPolicy = new RetryPolicy();
+        this.saveRetryPolicy = RetryPolicy.none();
+        this.removeRetryPolicy = RetryPolicy.none();
+        this.circuitBreakers = null;
     }
 
     RestRunner(Class<T> klass, URL baseURL,
@@ -90,7 +124,31 @@ public class RestRunner<T> implements PipeHandler<T> {
         this.klass = klass;
         this.arrayKlass = ClassUtils.asArrayClass(klass);
         this.baseURL = baseURL;
-        this.timeout = config.getTimeout();
+        this.timeouts = config.getTimeouts();
+        HttpProviderFactory factory = new HttpProviderFactory(config.getConnectionPool());
+        factory.setAcceptCompressedResponses(config.isAcceptCompressedResponses());
+        factory.setRequestCompressionThreshold(config.getRequestCompressionThreshold());
+        factory.setMetrics(config.getMetrics());
+        this.httpProviderFactory = factory;
+        this.compressionStatistics = factory.getCompressionStatistics();
+        this.metrics = factory.getMetrics();
+        this.readRetryPolicy = config.getRetryPolicy(RetryPolicy.Operation.READ);
+        this.saveRetryPolicy = config.getRetryPolicy(RetryPolicy.Operation.SAVE);
+        this.removeRetryPolicy = config.getRetryPolicy(RetryPolicy.Operation.REMOVE);
+        this.circuitBreakers = config.getCircuitBreakers();
+
+        if (config.getRevalidationCacheSize() > 0) {
+            this.revalidationCache = new RevalidationCache(config.getRevalidationCacheSize());
+        } else {
+            this.revalidationCache = null;
+        }
+
+        if (config.getResponseCacheDirectory() != null) {
+            this.responseCache = new DiskResponseCache(config.getResponseCacheDirectory(), config.getResponseCacheSize());
+        } else {
+            this.responseCache = null;
+        }
+        this.responseCacheTtl = config.getResponseCacheTtl();
 
         if (config.getRequestBuilder() != null) {
             this.requestBuilder = config.getRequestBuilder();
@@ -131,9 +189,14 @@ public class RestRunner<T> implements PipeHandler<T> {
     }
 
     @Override
-    public void onRemove(String id) {
-        HttpProvider httpProvider = getHttpProvider();
-        httpProvider.delete(id);
+    public void onRemove(final String id) {
+        final HttpProvider httpProvider = getHttpProvider();
+        removeRetryPolicy.execute(new RetryPolicy.Call<HeaderAndBody>() {
+            @Override
+            public HeaderAndBody call() {
+                return httpProvider.delete(id);
+            }
+        });
     }
 
     /**
@@ -179,10 +242,31 @@ public class RestRunner<T> implements PipeHandler<T> {
     }
 
     private HttpProvider getHttpProvider(URI relativeUri) {
-        final String queryString;
-
         ModuleFields fields = loadAuth(relativeUri, "GET");
 
+        URL authorizedURL = addAuthorization(fields.getQueryParameters(), getEffectiveURL(relativeUri));
+
+        return getHttpProvider(authorizedURL, fields);
+
+    }
+
+    private HttpProvider getHttpProvider(URL authorizedURL, ModuleFields fields) {
+        HttpProvider httpProvider = httpProviderFactory.get(authorizedURL, timeouts);
+        httpProvider.setDefaultHeader("Content-TYpe", requestBuilder.getContentType());
+        addAuthHeaders(httpProvider, fields);
+        if (circuitBreakers != null) {
+            httpProvider = GuardedHttpProvider.guard(httpProvider, circuitBreakers.get(baseURL, authorizedURL));
+        }
+        return httpProvider;
+    }
+
+    /**
+     * @return the base url with the path and query of relativeUri, before
+     *         any authorization is added
+     */
+    private URL getEffectiveURL(URI relativeUri) {
+        final String queryString;
+
         if (relativeUri == null || relativeUri.getRawQuery() == null) {
             queryString = "";
         } else {
@@ -190,13 +274,7 @@ public class RestRunner<T> implements PipeHandler<T> {
         }
 
         URL mergedURL = UrlUtils.appendToBaseURL(baseURL, relativeUri.getRawPath());
-        URL authorizedURL = addAuthorization(fields.getQueryParameters(), UrlUtils.appendQueryToBaseURL(mergedURL, queryString));
-
-        final HttpProvider httpProvider = httpProviderFactory.get(authorizedURL, timeout);
-        httpProvider.setDefaultHeader("Content-TYpe", requestBuilder.getContentType());
-        addAuthHeaders(httpProvider, fields);
-        return httpProvider;
-
+        return UrlUtils.appendQueryToBaseURL(mergedURL, queryString);
     }
 
     /**
@@ -252,6 +330,84 @@ public class RestRunner<T> implements PipeHandler<T> {
         } 
     }
 
+    /**
+     * @return the compressed and uncompressed sizes of the bodies this
+     *         runner sent and received
+     */
+    public CompressionStatistics getCompressionStatistics() {
+        return compressionStatistics;
+    }
+
+    /**
+     * @return the metrics the requests of this runner are recorded in
+     */
+    public PipeMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param operation an operation of the pipe
+     * @return the policy failed requests of operation are retried with
+     */
+    public RetryPolicy getRetryPolicy(RetryPolicy.Operation operation) {
+        switch (operation) {
+        case SAVE:
+            return saveRetryPolicy;
+        case REMOVE:
+            return removeRetryPolicy;
+        default:
+            return readRetryPolicy;
+        }
+    }
+
+    /**
+     * @return the registry of the breakers guarding the requests of this
+     *         runner, or null if requests are not guarded
+     */
+    public CircuitBreakerRegistry getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    /**
+     * @return the cache reads are revalidated against, or null if
+     *         revalidation is disabled
+     */
+    public RevalidationCache getRevalidationCache() {
+        return revalidationCache;
+    }
+
+    /**
+     * @return the disk cache of responses of reads, or null if reads are not
+     *         cached on disk
+     */
+    public DiskResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * @param filter a filter to read with
+     * @return the cached response of a read with filter if it expired, null
+     *         if the read has no cached response or it is fresh
+     */
+    public HeaderAndBody getStaleResponse(ReadFilter filter) {
+        if (responseCache == null) {
+            return null;
+        }
+        String key = getReadKey(filter);
+        if (responseCache.isFresh(key)) {
+            return null;
+        }
+        return responseCache.get(key);
+    }
+
+    /**
+     * @return the coalescer of raw reads, which counts how many reads shared
+     *         the request of another
+     */
+    public SingleFlight<HeaderAndBody> getReadCoalescer() {
+        return readCoalescer;
+    }
+
     protected RequestBuilder<T> getRequestBuilder() {
         return requestBuilder;
     }
@@ -268,18 +424,32 @@ public class RestRunner<T> implements PipeHandler<T> {
         return onRawReadWithFilter(new ReadFilter(), requestingPipe);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Failed reads are retried with the read {@link RetryPolicy} of the pipe.
+     * If they still fail, each module may resolve the error, after which the
+     * read is tried again.
+     */
     @Override
     public HeaderAndBody onRawReadWithFilter(ReadFilter filter, Pipe<T> requestingPipe) {
         if (filter == null) {
             filter = new ReadFilter();
         }
+        final ReadFilter readFilter = filter;
+        RetryPolicy.Call<HeaderAndBody> read = new RetryPolicy.Call<HeaderAndBody>() {
+            @Override
+            public HeaderAndBody call() {
+                return readWithFilter(readFilter);
+            }
+        };
 
         try {
-            return readWithFilter(filter);
+            return readRetryPolicy.execute(read);
         } catch (HttpException e) {
             for (PipeModule module : modules) {
                 if (module.handleError(e)) {
-                    return readWithFilter(filter);
+                    return readRetryPolicy.execute(read);
                 }
             }
 
@@ -287,31 +457,193 @@ public class RestRunner<T> implements PipeHandler<T> {
         }
     }
 
+    /**
+     * Reads are coalesced: concurrent reads of the same authorized url with
+     * the same authorization headers share a single request.
+     *
+     * With a response cache, a fresh cached response is returned without a
+     * request. An expired one is revalidated with its ETag or Last-Modified
+     * and returned if the server answers 304 Not Modified.
+     */
     private HeaderAndBody readWithFilter(ReadFilter filter) {
-      HttpProvider httpProvider = getHttpProvider(filter);
+      URI relativeUri = getRelativeUri(filter);
+      ModuleFields fields = loadAuth(relativeUri, "GET");
+      URL authorizedURL = addAuthorization(fields.getQueryParameters(), getEffectiveURL(relativeUri));
+      final String authorizedKey = getAuthorizedKey(authorizedURL, fields);
+
+      if (responseCache != null && responseCache.isFresh(authorizedKey)) {
+          HeaderAndBody cached = responseCache.get(authorizedKey);
+          if (cached != null) {
+              return cached;
+          }
+      }
+
+      final HttpProvider httpProvider = getHttpProvider(authorizedURL, fields);
+
+      HeaderAndBody response = readCoalescer.execute(authorizedKey, new SingleFlight.Call<HeaderAndBody>() {
+          @Override
+          public HeaderAndBody call() {
+              if (responseCache == null) {
+                  return get(httpProvider, authorizedKey);
+              }
+
+              HeaderAndBody stale = responseCache.get(authorizedKey);
+              if (stale != null) {
+                  addValidators(httpProvider, stale);
+              }
+              HeaderAndBody response;
+              try {
+                  response = get(httpProvider, authorizedKey);
+              } catch (HttpException e) {
+                  if (stale == null || e.getStatusCode() != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                      throw e;
+                  }
+                  response = stale;
+              }
+              if (response != null) {
+                  responseCache.put(authorizedKey, response, responseCacheTtl);
+              }
+              return response;
+          }
+      });
+
+      if (response == null) {
+          return null;
+      }
+      // every reader gets its own headers, the read only body is shared
+      return new HeaderAndBody(response.getBodyAsByteBuffer(), response.getHeaders());
+    }
+
+    private HeaderAndBody get(HttpProvider httpProvider, String authorizedKey) {
+        if (revalidationCache == null) {
+            return httpProvider.get();
+        }
+        return revalidationCache.get(authorizedKey, httpProvider);
+    }
+
+    /**
+     * @return the authorized url and the authorization headers of a read,
+     *         so reads made with different credentials never share a
+     *         response
+     */
+    private static String getAuthorizedKey(URL authorizedURL, ModuleFields fields) {
+        StringBuilder key = new StringBuilder(authorizedURL.toString());
+        for (Pair<String, String> header : fields.getHeaders()) {
+            key.append('\n').append(header.first).append(": ").append(header.second);
+        }
+        return key.toString();
+    }
+
+    private static void addValidators(HttpProvider httpProvider, HeaderAndBody cached) {
+        for (Map.Entry<String, Object> header : cached.getHeaders().entrySet()) {
+            if ("ETag".equalsIgnoreCase(header.getKey())) {
+                httpProvider.setDefaultHeader("If-None-Match", String.valueOf(header.getValue()));
+            } else if ("Last-Modified".equalsIgnoreCase(header.getKey())) {
+                httpProvider.setDefaultHeader("If-Modified-Since", String.valueOf(header.getValue()));
+            }
+        }
+    }
 
-      return httpProvider.get();
+    /**
+     * @param filter a filter to read with
+     * @return the url a read with filter requests, with its authorization
+     *         query parameters and headers. Reads with the same key have
+     *         the same result.
+     */
+    public String getReadKey(ReadFilter filter) {
+      if (filter == null) {
+          filter = new ReadFilter();
+      }
+      URI relativeUri = getRelativeUri(filter);
+      ModuleFields fields = loadAuth(relativeUri, "GET");
+      return getAuthorizedKey(addAuthorization(fields.getQueryParameters(), getEffectiveURL(relativeUri)), fields);
     }
 
-    private HttpProvider getHttpProvider(ReadFilter filter) {
+    private URI getRelativeUri(ReadFilter filter) {
       if (filter.getLinkUri() == null) {
-          return getHttpProvider(parameterProvider.getParameters(filter));
+          return parameterProvider.getParameters(filter);
       } else {
-          return getHttpProvider(filter.getLinkUri());
+          return filter.getLinkUri();
       }
     }
 
     @Override
     public HeaderAndBody onRawSave(String id, byte[] item) {
+        return save(getHttpProvider(), id, item);
+    }
+
+    private HeaderAndBody save(final HttpProvider httpProvider, final String id, final byte[] item) {
+        return saveRetryPolicy.execute(new RetryPolicy.Call<HeaderAndBody>() {
+            @Override
+            public HeaderAndBody call() {
+                HeaderAndBody result;
+                if (id == null || id.length() == 0) {
+                    result = httpProvider.post(item);
+                } else {
+                    result = httpProvider.put(id, item);
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Saves an item whose body is streamed to the server. If the provider
+     * can not stream, the body is buffered and sent as bytes. Bodies which
+     * can not be written twice are never retried.
+     *
+     * @param id the id of the item, null or empty for new items
+     * @param body the body to send
+     * @return the response of the server
+     */
+    public HeaderAndBody onRawSave(final String id, final RequestBody body) {
         final HttpProvider httpProvider = getHttpProvider();
 
-        HeaderAndBody result;
-        if (id == null || id.length() == 0) {
-            result = httpProvider.post(item);
-        } else {
-            result = httpProvider.put(id, item);
+        if (!(httpProvider instanceof StreamingHttpProvider)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try {
+                body.writeTo(buffer);
+            } catch (IOException ex) {
+                Log.e(TAG, "The request body could not be written.", ex);
+                throw new RuntimeException(ex);
+            }
+            return save(httpProvider, id, buffer.toByteArray());
         }
-        return result;
+
+        final StreamingHttpProvider streamingProvider = (StreamingHttpProvider) httpProvider;
+        RetryPolicy.Call<HeaderAndBody> save = new RetryPolicy.Call<HeaderAndBody>() {
+            @Override
+            public HeaderAndBody call() {
+                if (id == null || id.length() == 0) {
+                    return streamingProvider.post(body);
+                } else {
+                    return streamingProvider.put(id, body);
+                }
+            }
+        };
+
+        if (!body.isRepeatable()) {
+            return save.call();
+        }
+        return saveRetryPolicy.execute(save);
+    }
+
+    /**
+     * Posts the body of a bulk save to an endpoint relative to the url of
+     * the pipe.
+     *
+     * @param endpoint a path relative to the url of the pipe
+     * @param items the serialized items
+     * @return the response of the server
+     */
+    public HeaderAndBody onRawBulkSave(String endpoint, final byte[] items) {
+        final HttpProvider httpProvider = getHttpProvider(URI.create(endpoint));
+        return saveRetryPolicy.execute(new RetryPolicy.Call<HeaderAndBody>() {
+            @Override
+            public HeaderAndBody call() {
+                return httpProvider.post(items);
+            }
+        });
     }
 
 }
@@ -16,13 +16,22 @@
  */
 package org.jboss.aerogear.android.pipe.rest;
 
+import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 import org.jboss.aerogear.android.core.Config;
 import org.jboss.aerogear.android.pipe.rest.gson.GsonRequestBuilder;
 import org.jboss.aerogear.android.pipe.rest.gson.GsonResponseParser;
 import org.jboss.aerogear.android.pipe.*;
+import org.jboss.aerogear.android.pipe.http.DiskResponseCache;
+import org.jboss.aerogear.android.pipe.http.HttpConnectionPool;
+import org.jboss.aerogear.android.pipe.http.RevalidationCache;
+import org.jboss.aerogear.android.pipe.http.Timeouts;
+import org.jboss.aerogear.android.pipe.metrics.PipeMetrics;
 import org.jboss.aerogear.android.pipe.module.PipeModule;
 import org.jboss.aerogear.android.pipe.paging.PageConfig;
 
@@ -30,15 +39,38 @@ import org.jboss.aerogear.android.pipe.paging.PageConfig;
  * Configures a Pipe which interacts with RESTful endpoints.
  */
 public class RestfulPipeConfiguration extends PipeConfiguration<RestfulPipeConfiguration> implements Config<RestfulPipeConfiguration> {
+
+    /**
+     * The default number of items of a batch which are processed at once.
+     */
+    public static final int DEFAULT_BATCH_CONCURRENCY = 4;
+
     private URL url;
     private String name;
-    private Integer timeout = 60000;
+    private Integer timeout = Timeouts.DEFAULT_TIMEOUT;
+    private Integer connectTimeout = null;
+    private Integer readTimeout = null;
+    private long deadline = 0;
 
     private final List<PipeModule> modules = new ArrayList<PipeModule>();
     private PageConfig pageConfig;
     private RequestBuilder requestBuilder = new GsonRequestBuilder();
     private ResponseParser responseParser = new GsonResponseParser();
     private PipeHandler handler = null;
+    private HttpConnectionPool connectionPool = HttpConnectionPool.getDefault();
+    private boolean acceptCompressedResponses = false;
+    private int requestCompressionThreshold = -1;
+    private int revalidationCacheSize = RevalidationCache.DEFAULT_MAX_BYTES;
+    private File responseCacheDirectory = null;
+    private long responseCacheSize = DiskResponseCache.DEFAULT_MAX_BYTES;
+    private long responseCacheTtl = 0;
+    private Executor executor = PipeExecutor.getDefault();
+    private int batchConcurrency = DEFAULT_BATCH_CONCURRENCY;
+    private String bulkSaveEndpoint = null;
+    private File outboxFile = null;
+    private PipeMetrics metrics = null;
+    private CircuitBreakerRegistry circuitBreakers = null;
+    private final Map<RetryPolicy.Operation, RetryPolicy> retryPolicies = new EnumMap<RetryPolicy.Operation, RetryPolicy>(RetryPolicy.Operation.class);
 
     @Override
     public String getName() {
@@ -78,12 +110,87 @@ public class RestfulPipeConfiguration extends PipeConfiguration<RestfulPipeConfi
         return new ArrayList<PipeModule>(this.modules);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * This is the connect and the read timeout, unless they are set on their
+     * own.
+     */
     @Override
     public RestfulPipeConfiguration timeout(Integer timeout) {
         this.timeout = timeout;
         return this;
     }
 
+    /**
+     * @param connectTimeout the time in milliseconds to wait for a
+     *            connection, 0 to wait forever. Defaults to the
+     *            {@link #timeout(Integer) timeout}.
+     * @return this configuration
+     * @throws IllegalArgumentException if connectTimeout is negative
+     */
+    public RestfulPipeConfiguration connectTimeout(int connectTimeout) {
+        if (connectTimeout < 0) {
+            throw new IllegalArgumentException("connectTimeout may not be negative");
+        }
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout == null ? timeout : connectTimeout;
+    }
+
+    /**
+     * @param readTimeout the time in milliseconds a read waits for the next
+     *            bytes of a response, 0 to wait forever. Defaults to the
+     *            {@link #timeout(Integer) timeout}.
+     * @return this configuration
+     * @throws IllegalArgumentException if readTimeout is negative
+     */
+    public RestfulPipeConfiguration readTimeout(int readTimeout) {
+        if (readTimeout < 0) {
+            throw new IllegalArgumentException("readTimeout may not be negative");
+        }
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout == null ? timeout : readTimeout;
+    }
+
+    /**
+     * The time an operation may take as a whole, from the moment it is
+     * started, including the time it is queued, all its retries and the
+     * requests made after a module resolved an error. Once it passes the
+     * open connections of the operation are disconnected and it fails with a
+     * {@link org.jboss.aerogear.android.pipe.http.DeadlineExceededException}.
+     * Operations have no deadline by default.
+     *
+     * @param deadline the deadline in milliseconds, 0 for no deadline
+     * @return this configuration
+     * @throws IllegalArgumentException if deadline is negative
+     */
+    public RestfulPipeConfiguration deadline(long deadline) {
+        if (deadline < 0) {
+            throw new IllegalArgumentException("deadline may not be negative");
+        }
+        this.deadline = deadline;
+        return this;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @return the connect and read timeouts and the deadline of operations
+     */
+    public Timeouts getTimeouts() {
+        return new Timeouts(getConnectTimeout(), getReadTimeout(), deadline);
+    }
+
     @Override
     public RestfulPipeConfiguration pageConfig(PageConfig pageConfig) {
         this.pageConfig = pageConfig;
@@ -111,6 +218,302 @@ public class RestfulPipeConfiguration extends PipeConfiguration<RestfulPipeConfi
         return this.handler;
     }
 
+    /**
+     * The connection pool releases the connections of the pipe so the
+     * platform can keep them alive between requests, and counts them. By
+     * default every pipe uses {@link HttpConnectionPool#getDefault()}.
+     *
+     * @param connectionPool the pool to use, may not be null
+     * @return this configuration
+     * @throws IllegalArgumentException if connectionPool is null
+     */
+    public RestfulPipeConfiguration connectionPool(HttpConnectionPool connectionPool) {
+        if (connectionPool == null) {
+            throw new IllegalArgumentException("connectionPool may not be null");
+        }
+        this.connectionPool = connectionPool;
+        return this;
+    }
+
+    public HttpConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * If enabled the pipe asks the server for gzip or deflate encoded
+     * responses and decodes them itself. Disabled by default.
+     *
+     * @param acceptCompressedResponses true to request compressed responses
+     * @return this configuration
+     */
+    public RestfulPipeConfiguration acceptCompressedResponses(boolean acceptCompressedResponses) {
+        this.acceptCompressedResponses = acceptCompressedResponses;
+        return this;
+    }
+
+    public boolean isAcceptCompressedResponses() {
+        return acceptCompressedResponses;
+    }
+
+    /**
+     * Request bodies built by the {@link RequestBuilder} which are at least
+     * this many bytes long are sent gzip compressed with a Content-Encoding
+     * header. The server must accept compressed requests. A negative value,
+     * the default, disables request compression.
+     *
+     * @param requestCompressionThreshold the minimal size of a compressed body
+     * @return this configuration
+     */
+    public RestfulPipeConfiguration requestCompressionThreshold(int requestCompressionThreshold) {
+        this.requestCompressionThreshold = requestCompressionThreshold;
+        return this;
+    }
+
+    public int getRequestCompressionThreshold() {
+        return requestCompressionThreshold;
+    }
+
+    /**
+     * Reads remember the last body and the ETag and Last-Modified validators
+     * of each URL they request and revalidate them with a conditional GET.
+     * If the server answers 304 Not Modified the remembered body is returned.
+     *
+     * @param revalidationCacheSize the maximal total size in bytes of the
+     *            remembered bodies, 0 disables revalidation. Defaults to
+     *            {@link RevalidationCache#DEFAULT_MAX_BYTES}.
+     * @return this configuration
+     * @throws IllegalArgumentException if revalidationCacheSize is negative
+     */
+    public RestfulPipeConfiguration revalidationCacheSize(int revalidationCacheSize) {
+        if (revalidationCacheSize < 0) {
+            throw new IllegalArgumentException("revalidationCacheSize may not be negative");
+        }
+        this.revalidationCacheSize = revalidationCacheSize;
+        return this;
+    }
+
+    public int getRevalidationCacheSize() {
+        return revalidationCacheSize;
+    }
+
+    /**
+     * Reads keep their responses in a {@link DiskResponseCache} in
+     * directory. A read whose response is fresh is answered from the cache.
+     * A read of a collection whose response expired gets the cached items
+     * first, and the items of the network afterwards if they changed. Use a
+     * directory of its own for each pipe, below
+     * {@code Context.getCacheDir()} for example.
+     *
+     * @param directory the directory of the cache, or null to read from the
+     *            network only
+     * @param maxBytes the maximal total size of the cached responses
+     * @return this configuration
+     * @throws IllegalArgumentException if maxBytes is not positive
+     */
+    public RestfulPipeConfiguration responseCache(File directory, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.responseCacheDirectory = directory;
+        this.responseCacheSize = maxBytes;
+        return this;
+    }
+
+    public File getResponseCacheDirectory() {
+        return responseCacheDirectory;
+    }
+
+    public long getResponseCacheSize() {
+        return responseCacheSize;
+    }
+
+    /**
+     * How long cached responses without Cache-Control max-age or Expires are
+     * fresh. Defaults to 0, such responses are revalidated on every read.
+     *
+     * @param ttl the time to live in milliseconds
+     * @return this configuration
+     * @throws IllegalArgumentException if ttl is negative
+     */
+    public RestfulPipeConfiguration responseCacheTtl(long ttl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("ttl may not be negative");
+        }
+        this.responseCacheTtl = ttl;
+        return this;
+    }
+
+    public long getResponseCacheTtl() {
+        return responseCacheTtl;
+    }
+
+    /**
+     * The executor the requests of the pipe run on. By default every pipe
+     * uses {@link PipeExecutor#getDefault()}. A {@link PipeExecutor} bounds
+     * its queue and reports its queue depth and active threads; requests it
+     * rejects fail through their callback.
+     *
+     * @param executor the executor to use, may not be null
+     * @return this configuration
+     * @throws IllegalArgumentException if executor is null
+     */
+    public RestfulPipeConfiguration executor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor may not be null");
+        }
+        this.executor = executor;
+        return this;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * The maximal number of items of a {@link Pipe#saveAll} or
+     * {@link Pipe#removeAll} batch which are serialized and sent at once.
+     *
+     * @param batchConcurrency a positive number of concurrent items
+     * @return this configuration
+     * @throws IllegalArgumentException if batchConcurrency is not positive
+     */
+    public RestfulPipeConfiguration batchConcurrency(int batchConcurrency) {
+        if (batchConcurrency <= 0) {
+            throw new IllegalArgumentException("batchConcurrency must be positive");
+        }
+        this.batchConcurrency = batchConcurrency;
+        return this;
+    }
+
+    public int getBatchConcurrency() {
+        return batchConcurrency;
+    }
+
+    /**
+     * If set, {@link Pipe#saveAll} posts all items as a single JSON array to
+     * this endpoint instead of saving them one by one. The server is expected
+     * to answer with the array of saved items, in the order they were sent,
+     * or with an empty body. An array of another size fails the save.
+     *
+     * @param bulkSaveEndpoint a path relative to the url of the pipe, or null
+     *            to save items one by one
+     * @return this configuration
+     */
+    public RestfulPipeConfiguration bulkSaveEndpoint(String bulkSaveEndpoint) {
+        this.bulkSaveEndpoint = bulkSaveEndpoint;
+        return this;
+    }
+
+    public String getBulkSaveEndpoint() {
+        return bulkSaveEndpoint;
+    }
+
+    /**
+     * If set, {@link Pipe#save} and {@link Pipe#remove} go through an
+     * {@link Outbox} journaled in this file, which sends them once the server
+     * can be reached. Use a file in app storage, for example below
+     * {@code Context.getFilesDir()}, and a file of its own for each pipe.
+     * Their callbacks are held until the operation was sent, so they can
+     * outlive the caller.
+     *
+     * @param outboxFile the journal of the outbox, or null to send saves and
+     *            removes right away
+     * @return this configuration
+     */
+    public RestfulPipeConfiguration outbox(File outboxFile) {
+        this.outboxFile = outboxFile;
+        return this;
+    }
+
+    public File getOutboxFile() {
+        return outboxFile;
+    }
+
+    /**
+     * The metrics the pipe records its requests in. By default every
+     * configuration has metrics of its own, named after the pipe, which
+     * {@link PipeManager} registers when the pipe is created.
+     *
+     * @param metrics the metrics to use, may not be null
+     * @return this configuration
+     * @throws IllegalArgumentException if metrics is null
+     */
+    public RestfulPipeConfiguration metrics(PipeMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics may not be null");
+        }
+        this.metrics = metrics;
+        return this;
+    }
+
+    public synchronized PipeMetrics getMetrics() {
+        if (metrics == null) {
+            metrics = new PipeMetrics(name);
+        }
+        return metrics;
+    }
+
+    /**
+     * Uses policy to retry reads, saves and removes.
+     *
+     * @param policy the policy of every operation, may not be null
+     * @return this configuration
+     * @throws IllegalArgumentException if policy is null
+     */
+    public RestfulPipeConfiguration retryPolicy(RetryPolicy policy) {
+        for (RetryPolicy.Operation operation : RetryPolicy.Operation.values()) {
+            retryPolicy(operation, policy);
+        }
+        return this;
+    }
+
+    /**
+     * The policy failed requests of an operation are retried with. By
+     * default reads are retried with a {@link RetryPolicy#RetryPolicy() default policy}
+     * and saves and removes are not retried, because a save which failed
+     * after reaching the server may have been applied.
+     *
+     * @param operation the operation the policy applies to
+     * @param policy the policy, may not be null
+     * @return this configuration
+     * @throws IllegalArgumentException if policy is null
+     */
+    public RestfulPipeConfiguration retryPolicy(RetryPolicy.Operation operation, RetryPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy may not be null");
+        }
+        retryPolicies.put(operation, policy);
+        return this;
+    }
+
+    public synchronized RetryPolicy getRetryPolicy(RetryPolicy.Operation operation) {
+        RetryPolicy policy = retryPolicies.get(operation);
+        if (policy == null) {
+            policy = RetryPolicy.Operation.READ.equals(operation) ? new RetryPolicy() : RetryPolicy.none();
+            retryPolicies.put(operation, policy);
+        }
+        return policy;
+    }
+
+    /**
+     * Guards the requests of the pipe with circuit breakers, which fail
+     * requests at once while their host or pipe keeps failing or answering
+     * slowly. Pipes configured with the same registry share the breakers of
+     * a host. Requests are not guarded by default.
+     *
+     * @param circuitBreakers the registry breakers are taken from, or null
+     *            to not guard requests
+     * @return this configuration
+     */
+    public RestfulPipeConfiguration circuitBreakers(CircuitBreakerRegistry circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+        return this;
+    }
+
+    public CircuitBreakerRegistry getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
     public Integer getTimeout() {
         return timeout;
     }
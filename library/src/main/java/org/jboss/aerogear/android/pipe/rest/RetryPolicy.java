@@ -0,0 +1,421 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest;
+
+import java.io.EOFException;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.aerogear.android.pipe.http.DeadlineExceededException;
+import org.jboss.aerogear.android.pipe.http.HttpException;
+import org.jboss.aerogear.android.pipe.http.RequestCancellation;
+
+import android.util.Log;
+
+/**
+ * Decides whether and when a failed request is sent again.
+ *
+ * Failed attempts are retried up to a maximum number of attempts with
+ * exponential backoff and full jitter: before retry n a random delay between
+ * 0 and min(maxDelay, baseDelay * 2^(n-1)) is waited, so clients which failed
+ * together do not retry together. If the server sent a Retry-After header
+ * that delay is waited instead, unless it is longer than the configured
+ * maximum of 10 seconds by default, in which case the request is given up.
+ *
+ * Retries are limited by a budget shared by all requests using this policy.
+ * Every retry takes a token from it and every request which succeeds at the
+ * first attempt puts back a fraction of a token, so during an outage retries
+ * stop long before every request was sent maxAttempts times.
+ *
+ * A request is given up as well if its delay, Retry-After included, would
+ * not end before the deadline of its operation, and cancelled operations or
+ * operations which exceeded their deadline are never retried. The wait
+ * between attempts ends as soon as the operation is cancelled.
+ *
+ * A policy holds its budget and counters, configure it before passing it to
+ * a pipe and share it only between pipes which should share a budget.
+ */
+public final class RetryPolicy {
+
+    private static final String TAG = RetryPolicy.class.getSimpleName();
+
+    /**
+     * The operations of a pipe which have a retry policy each.
+     */
+    public enum Operation {
+        READ, SAVE, REMOVE
+    }
+
+    /**
+     * An attempt of a request.
+     *
+     * @param <V> the result of the request
+     */
+    public interface Call<V> {
+        V call();
+    }
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 250;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 10 * 1000;
+    public static final long DEFAULT_MAX_RETRY_AFTER_MILLIS = 10 * 1000;
+    public static final int DEFAULT_BUDGET_TOKENS = 10;
+    public static final double DEFAULT_TOKENS_PER_SUCCESS = 0.1;
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final long TOKEN = 1000;
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long baseDelayMillis = DEFAULT_BASE_DELAY_MILLIS;
+    private long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+    private long maxRetryAfterMillis = DEFAULT_MAX_RETRY_AFTER_MILLIS;
+    private final Set<Integer> retryableStatusCodes = new HashSet<Integer>(Arrays.asList(
+            HttpURLConnection.HTTP_CLIENT_TIMEOUT, TOO_MANY_REQUESTS, HttpURLConnection.HTTP_BAD_GATEWAY,
+            HttpURLConnection.HTTP_UNAVAILABLE, HttpURLConnection.HTTP_GATEWAY_TIMEOUT));
+    private final List<Class<? extends Exception>> retryableExceptions = new ArrayList<Class<? extends Exception>>(
+            Arrays.<Class<? extends Exception>>asList(SocketTimeoutException.class, SocketException.class,
+                    EOFException.class));
+
+    private long maxBudget = DEFAULT_BUDGET_TOKENS * TOKEN;
+    private long refillPerSuccess = (long) (DEFAULT_TOKENS_PER_SUCCESS * TOKEN);
+    private final AtomicLong budget = new AtomicLong(maxBudget);
+
+    private final Random random = new Random();
+
+    private final AtomicLong attemptCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong giveUpCount = new AtomicLong();
+
+    /**
+     * Creates a policy with the defaults: 3 attempts, a backoff from 250ms
+     * up to 10s, a budget of 10 retries which gains a retry for every 10
+     * successful requests, and retries of status codes 408, 429, 502, 503
+     * and 504 as well as of socket timeouts, socket errors and connections
+     * closed early.
+     */
+    public RetryPolicy() {
+    }
+
+    /**
+     * @return a policy which sends every request once
+     */
+    public static RetryPolicy none() {
+        return new RetryPolicy().maxAttempts(1);
+    }
+
+    /**
+     * @param maxAttempts how often a request is sent at most, including the
+     *            first attempt. 1 disables retries.
+     * @return this policy
+     * @throws IllegalArgumentException if maxAttempts is not positive
+     */
+    public RetryPolicy maxAttempts(int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * @param baseDelayMillis the upper bound of the delay before the first
+     *            retry, it doubles with every further retry
+     * @param maxDelayMillis the largest upper bound of a delay
+     * @return this policy
+     * @throws IllegalArgumentException if a delay is negative or the base
+     *             delay exceeds the maximum
+     */
+    public RetryPolicy backoff(long baseDelayMillis, long maxDelayMillis) {
+        if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("delays must satisfy 0 <= baseDelayMillis <= maxDelayMillis");
+        }
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    /**
+     * @param maxRetryAfterMillis the longest Retry-After delay which is
+     *            waited, requests asked to wait longer are given up
+     * @return this policy
+     */
+    public RetryPolicy maxRetryAfter(long maxRetryAfterMillis) {
+        this.maxRetryAfterMillis = maxRetryAfterMillis;
+        return this;
+    }
+
+    /**
+     * Replaces the status codes which are retried.
+     *
+     * @param statusCodes the status codes of responses which are retried
+     * @return this policy
+     */
+    public RetryPolicy retryOnStatus(int... statusCodes) {
+        retryableStatusCodes.clear();
+        for (int statusCode : statusCodes) {
+            retryableStatusCodes.add(statusCode);
+        }
+        return this;
+    }
+
+    /**
+     * Replaces the exceptions which are retried. A failure is retried if it,
+     * or one of its causes, is an instance of one of these classes.
+     *
+     * @param exceptionClasses the classes of exceptions which are retried
+     * @return this policy
+     */
+    public RetryPolicy retryOn(Class<? extends Exception>... exceptionClasses) {
+        retryableExceptions.clear();
+        retryableExceptions.addAll(Arrays.asList(exceptionClasses));
+        return this;
+    }
+
+    /**
+     * @param maxTokens the number of retries the budget holds at most, it
+     *            starts full
+     * @param tokensPerSuccess the fraction of a retry added to the budget
+     *            by every request which succeeds at the first attempt
+     * @return this policy
+     * @throws IllegalArgumentException if a value is negative
+     */
+    public RetryPolicy budget(int maxTokens, double tokensPerSuccess) {
+        if (maxTokens < 0 || tokensPerSuccess < 0) {
+            throw new IllegalArgumentException("the budget may not be negative");
+        }
+        this.maxBudget = maxTokens * TOKEN;
+        this.refillPerSuccess = (long) (tokensPerSuccess * TOKEN);
+        this.budget.set(maxBudget);
+        return this;
+    }
+
+    /**
+     * Runs call until it succeeds, fails with an error which is not retried
+     * or this policy gives up. The failure of the last attempt is thrown.
+     *
+     * @param <V> the result of the call
+     * @param call the request to run
+     * @return the result of the first successful attempt
+     */
+    public <V> V execute(Call<V> call) {
+        int attempt = 1;
+        while (true) {
+            attemptCount.incrementAndGet();
+            try {
+                V result = call.call();
+                if (attempt == 1) {
+                    refill();
+                }
+                return result;
+            } catch (RuntimeException failure) {
+                if (failure instanceof CancellationException || failure instanceof DeadlineExceededException
+                        || !isRetryable(failure)) {
+                    throw failure;
+                }
+
+                long delay = getDelay(failure, attempt);
+                if (attempt >= maxAttempts || delay < 0 || delay >= getRemainingMillis() || !takeToken()) {
+                    giveUpCount.incrementAndGet();
+                    throw failure;
+                }
+
+                retryCount.incrementAndGet();
+                Log.w(TAG, "Attempt " + attempt + " failed, retrying in " + delay + "ms", failure);
+                try {
+                    sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    giveUpCount.incrementAndGet();
+                    throw failure;
+                }
+                attempt++;
+            }
+        }
+    }
+
+    /**
+     * @param failure a failed attempt
+     * @return true if failure has a retryable status code or is caused by a
+     *         retryable exception
+     */
+    public boolean isRetryable(Exception failure) {
+        if (failure instanceof HttpException) {
+            return retryableStatusCodes.contains(((HttpException) failure).getStatusCode());
+        }
+
+        Throwable cause = failure;
+        while (cause != null) {
+            for (Class<? extends Exception> retryable : retryableExceptions) {
+                if (retryable.isInstance(cause)) {
+                    return true;
+                }
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * Waits delay milliseconds, or until the operation the current thread
+     * works on is cancelled or exceeds its deadline.
+     */
+    private static void sleep(long delay) throws InterruptedException {
+        RequestCancellation operation = RequestCancellation.current();
+        if (operation == null) {
+            Thread.sleep(delay);
+        } else {
+            operation.sleep(delay);
+        }
+    }
+
+    /**
+     * @return the time left until the deadline of the operation the current
+     *         thread works on
+     */
+    private static long getRemainingMillis() {
+        RequestCancellation operation = RequestCancellation.current();
+        return operation == null ? Long.MAX_VALUE : operation.getRemainingMillis();
+    }
+
+    /**
+     * @return the delay before the next attempt or -1 if the server asked to
+     *         wait longer than the maximum
+     */
+    private long getDelay(Exception failure, int attempt) {
+        if (failure instanceof HttpException) {
+            long retryAfter = getRetryAfterMillis(((HttpException) failure).getHeaders());
+            if (retryAfter > maxRetryAfterMillis) {
+                return -1;
+            } else if (retryAfter >= 0) {
+                return retryAfter;
+            }
+        }
+
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 30));
+        if (ceiling <= 0) {
+            return 0;
+        }
+        return (long) (random.nextDouble() * ceiling);
+    }
+
+    /**
+     * @return the delay of a Retry-After header in seconds or as a date, -1
+     *         if there is none
+     */
+    static long getRetryAfterMillis(Map<String, String> headers) {
+        String retryAfter = null;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if ("Retry-After".equalsIgnoreCase(header.getKey())) {
+                retryAfter = header.getValue();
+                break;
+            }
+        }
+        if (retryAfter == null) {
+            return -1;
+        }
+
+        retryAfter = retryAfter.trim();
+        try {
+            return Math.max(0, Long.parseLong(retryAfter) * 1000);
+        } catch (NumberFormatException notSeconds) {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                Date date = format.parse(retryAfter);
+                return Math.max(0, date.getTime() - System.currentTimeMillis());
+            } catch (ParseException notADate) {
+                Log.w(TAG, "Ignoring invalid Retry-After " + retryAfter);
+                return -1;
+            }
+        }
+    }
+
+    private boolean takeToken() {
+        long tokens;
+        do {
+            tokens = budget.get();
+            if (tokens < TOKEN) {
+                return false;
+            }
+        } while (!budget.compareAndSet(tokens, tokens - TOKEN));
+        return true;
+    }
+
+    private void refill() {
+        if (refillPerSuccess == 0) {
+            return;
+        }
+
+        long tokens;
+        do {
+            tokens = budget.get();
+            if (tokens >= maxBudget) {
+                return;
+            }
+        } while (!budget.compareAndSet(tokens, Math.min(maxBudget, tokens + refillPerSuccess)));
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return the number of retries the budget currently allows
+     */
+    public double getBudgetTokens() {
+        return (double) budget.get() / TOKEN;
+    }
+
+    /**
+     * @return the number of attempts made, including first attempts
+     */
+    public long getAttemptCount() {
+        return attemptCount.get();
+    }
+
+    /**
+     * @return the number of attempts which were retries
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * @return the number of requests which failed with a retryable error but
+     *         were not retried, because they ran out of attempts, the budget
+     *         was empty or the server asked to wait too long
+     */
+    public long getGiveUpCount() {
+        return giveUpCount.get();
+    }
+
+}
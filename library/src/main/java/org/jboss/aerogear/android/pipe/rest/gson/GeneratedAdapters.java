@@ -0,0 +1,190 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest.gson;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.internal.Excluder;
+import com.google.gson.internal.bind.ReflectiveTypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+import android.util.Log;
+
+/**
+ * Finds the TypeAdapters and RecordId readers generated for classes
+ * annotated with {@link GenerateTypeAdapter}. For a class
+ * {@code com.example.Outer.Car} they are {@code com.example.Outer_Car_GsonTypeAdapter}
+ * and its nested class {@code RecordId}. Lookups are cached per class,
+ * including the classes without generated code.
+ *
+ * The default {@link GsonRequestBuilder} and {@link GsonResponseParser}
+ * register {@link #FACTORY}; register it with your own Gson to use the
+ * generated adapters there too. The configuration of that Gson wins over
+ * the generated adapters, wherever the factory is registered: types with an
+ * adapter of their own are left to it, and a Gson with a field naming
+ * policy or exclusions binds every type by reflection.
+ *
+ * The generated classes are only found by name, the library ships the
+ * ProGuard rules which keep them in {@code consumer-proguard-rules.pro}.
+ */
+public final class GeneratedAdapters {
+
+    /**
+     * The suffix of the name of a generated TypeAdapter.
+     */
+    public static final String ADAPTER_SUFFIX = "_GsonTypeAdapter";
+
+    /**
+     * The simple name of the RecordId reader nested in a generated adapter.
+     */
+    public static final String RECORD_ID_READER = "RecordId";
+
+    private static final String TAG = GeneratedAdapters.class.getSimpleName();
+    private static final Object NONE = new Object();
+
+    private static final ConcurrentMap<Class<?>, Object> ADAPTER_CONSTRUCTORS = new ConcurrentHashMap<Class<?>, Object>();
+    private static final ConcurrentMap<Class<?>, Object> RECORD_ID_READERS = new ConcurrentHashMap<Class<?>, Object>();
+
+    /**
+     * Creates the generated adapter of a type, if it has one.
+     */
+    public static final TypeAdapterFactory FACTORY = new TypeAdapterFactory() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (!(type.getType() instanceof Class)) {
+                return null;
+            }
+
+            Constructor<?> constructor = getAdapterConstructor(type.getRawType());
+            if (constructor == null || !isBoundByReflection(gson, this, type)) {
+                return null;
+            }
+            try {
+                return (TypeAdapter<T>) constructor.newInstance(gson);
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not create " + constructor.getDeclaringClass().getName(), e);
+            }
+        }
+    };
+
+    private GeneratedAdapters() {
+    }
+
+    /**
+     * @param klass a model class
+     * @return the generated adapter class name of klass
+     */
+    public static String getAdapterName(Class<?> klass) {
+        String name = klass.getName();
+        int packageEnd = name.lastIndexOf('.') + 1;
+        return name.substring(0, packageEnd) + name.substring(packageEnd).replace('$', '_') + ADAPTER_SUFFIX;
+    }
+
+    /**
+     * @param klass a model class
+     * @return the generated reader of the RecordId of klass, or null if
+     *         klass has none
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> RecordIdReader<T> getRecordIdReader(Class<T> klass) {
+        Object reader = RECORD_ID_READERS.get(klass);
+        if (reader == null) {
+            reader = NONE;
+            Class<?> readerClass = findGenerated(klass, getAdapterName(klass) + "$" + RECORD_ID_READER);
+            if (readerClass != null) {
+                try {
+                    reader = readerClass.newInstance();
+                } catch (Exception e) {
+                    Log.w(TAG, "Could not create " + readerClass.getName(), e);
+                }
+            }
+            RECORD_ID_READERS.putIfAbsent(klass, reader);
+        }
+        return reader == NONE ? null : (RecordIdReader<T>) reader;
+    }
+
+    /**
+     * Generated adapters bind fields like a Gson with the default
+     * configuration does by reflection, so they only replace that.
+     *
+     * This relies on the internals of Gson, {@link Excluder#DEFAULT} and
+     * {@link ReflectiveTypeAdapterFactory.Adapter}, as of the Gson version
+     * the library depends on (2.8.1). If another version of Gson lacks them
+     * every type is bound by reflection.
+     *
+     * @return false if gson names or excludes fields differently, or if
+     *         another adapter is registered for type
+     */
+    private static boolean isBoundByReflection(Gson gson, TypeAdapterFactory factory, TypeToken<?> type) {
+        try {
+            if (gson.fieldNamingStrategy() != FieldNamingPolicy.IDENTITY || gson.excluder() != Excluder.DEFAULT) {
+                return false;
+            }
+            return gson.getDelegateAdapter(factory, type) instanceof ReflectiveTypeAdapterFactory.Adapter;
+        } catch (LinkageError e) {
+            Log.w(TAG, "The internals of Gson changed, " + type + " is bound by reflection", e);
+            return false;
+        }
+    }
+
+    private static Constructor<?> getAdapterConstructor(Class<?> klass) {
+        Object constructor = ADAPTER_CONSTRUCTORS.get(klass);
+        if (constructor == null) {
+            constructor = NONE;
+            if (!isPlatformClass(klass)) {
+                Class<?> adapterClass = findGenerated(klass, getAdapterName(klass));
+                if (adapterClass != null) {
+                    try {
+                        constructor = adapterClass.getConstructor(Gson.class);
+                    } catch (NoSuchMethodException e) {
+                        Log.w(TAG, adapterClass.getName() + " has no constructor taking a Gson", e);
+                    }
+                }
+            }
+            ADAPTER_CONSTRUCTORS.putIfAbsent(klass, constructor);
+        }
+        return constructor == NONE ? null : (Constructor<?>) constructor;
+    }
+
+    private static boolean isPlatformClass(Class<?> klass) {
+        if (klass.isPrimitive() || klass.isArray() || klass.isInterface() || klass.isEnum()) {
+            return true;
+        }
+        String name = klass.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("android.")
+                || name.startsWith("com.google.gson.");
+    }
+
+    private static Class<?> findGenerated(Class<?> klass, String name) {
+        try {
+            return Class.forName(name, true, klass.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (LinkageError e) {
+            Log.w(TAG, "Could not load " + name, e);
+            return null;
+        }
+    }
+
+}
@@ -20,6 +20,7 @@ import org.jboss.aerogear.android.pipe.MarshallingConfig;
 import org.jboss.aerogear.android.pipe.RequestBuilder;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 
 public class GsonRequestBuilder<T> implements RequestBuilder<T> {
 
@@ -28,8 +29,12 @@ public class GsonRequestBuilder<T> implements RequestBuilder<T> {
     private Gson gson;
     private MarshallingConfig marshallingConfig = new MarshallingConfig();
 
+    /**
+     * Uses a default Gson which writes classes annotated with
+     * {@link GenerateTypeAdapter} with their generated adapters.
+     */
     public GsonRequestBuilder() {
-        this.gson = new Gson();
+        this.gson = new GsonBuilder().registerTypeAdapterFactory(GeneratedAdapters.FACTORY).create();
     }
 
     public GsonRequestBuilder(Gson gson) {
@@ -20,8 +20,17 @@ import org.jboss.aerogear.android.pipe.MarshallingConfig;
 import org.jboss.aerogear.android.pipe.ResponseParser;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -32,9 +41,14 @@ public class GsonResponseParser<T> implements ResponseParser<T> {
 
     private Gson gson;
     private MarshallingConfig marshallingConfig = new MarshallingConfig();
+    private boolean streaming = true;
 
+    /**
+     * Uses a default Gson which reads classes annotated with
+     * {@link GenerateTypeAdapter} with their generated adapters.
+     */
     public GsonResponseParser() {
-        this.gson = new Gson();
+        this.gson = new GsonBuilder().registerTypeAdapterFactory(GeneratedAdapters.FACTORY).create();
     }
 
     public GsonResponseParser(Gson gson) {
@@ -43,7 +57,96 @@ public class GsonResponseParser<T> implements ResponseParser<T> {
 
     @Override
     public List<T> handleResponse(HeaderAndBody httpResponse, Class<T> responseType) {
-        byte[] responseBody = httpResponse.getBody();
+        if (streaming) {
+            List<T> result = handleStreamingResponse(httpResponse.getBodyAsStream(), responseType);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        return handleTreeResponse(httpResponse.getBody(), responseType);
+    }
+
+    /**
+     * Reads the response in a single pass with a {@link JsonReader}. The
+     * reader skips everything outside of the data root and binds the objects
+     * under it directly, without building a tree of the whole document.
+     *
+     * @return the parsed result or null if the data root could not be found,
+     *         in which case the document is read as a tree.
+     */
+    private List<T> handleStreamingResponse(InputStream responseBody, Class<T> responseType) {
+        JsonReader reader = new JsonReader(new InputStreamReader(responseBody, marshallingConfig.getEncoding()));
+        reader.setLenient(true);
+
+        try {
+            if (isEmpty(reader)) {
+                return new ArrayList<T>();
+            }
+
+            for (String identifier : marshallingConfig.getDataRoot().split("\\.")) {
+                if (identifier.equals("")) {
+                    break;
+                }
+                if (!moveToProperty(reader, identifier)) {
+                    return null;
+                }
+            }
+
+            TypeAdapter<T> adapter = gson.getAdapter(responseType);
+            List<T> result;
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                result = new ArrayList<T>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    result.add(adapter.read(reader));
+                }
+                reader.endArray();
+            } else {
+                result = new ArrayList<T>(1);
+                result.add(adapter.read(reader));
+            }
+            return result;
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private boolean isEmpty(JsonReader reader) throws IOException {
+        try {
+            return reader.peek() == JsonToken.END_DOCUMENT;
+        } catch (EOFException empty) {
+            return true;
+        }
+    }
+
+    /**
+     * Positions the reader on the value of the named property of the current
+     * object.
+     *
+     * @return false if the current value is not an object or does not have
+     *         the property
+     */
+    private boolean moveToProperty(JsonReader reader, String identifier) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return false;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (identifier.equals(reader.nextName())) {
+                return true;
+            }
+            reader.skipValue();
+        }
+        return false;
+    }
+
+    private List<T> handleTreeResponse(byte[] responseBody, Class<T> responseType) {
         List<T> result;
         String responseAsString = new String(responseBody, marshallingConfig.getEncoding());
         JsonParser parser = new JsonParser();
@@ -99,4 +202,26 @@ public class GsonResponseParser<T> implements ResponseParser<T> {
         this.marshallingConfig = marshallingConfig;
     }
 
+    /**
+     * When streaming is enabled (the default) responses are bound in a single
+     * pass while they are read. Otherwise the whole response is parsed into a
+     * tree of JsonElements first.
+     *
+     * @return if streaming is enabled
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * When streaming is enabled (the default) responses are bound in a single
+     * pass while they are read. Otherwise the whole response is parsed into a
+     * tree of JsonElements first.
+     *
+     * @param streaming true to enable streaming
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
 }
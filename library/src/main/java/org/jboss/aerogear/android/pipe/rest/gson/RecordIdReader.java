@@ -0,0 +1,34 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest.gson;
+
+/**
+ * Reads the {@link org.jboss.aerogear.android.core.RecordId} field of an
+ * item without reflection. Implementations are generated for classes
+ * annotated with {@link GenerateTypeAdapter}.
+ *
+ * @param <T> the type of the items
+ */
+public interface RecordIdReader<T> {
+
+    /**
+     * @param item an item
+     * @return the value of the RecordId field of item, may be null
+     */
+    Object getRecordId(T item);
+
+}
@@ -0,0 +1,130 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.rest.multipart;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.aerogear.android.pipe.http.RequestBody;
+
+/**
+ * A multipart body made of literal parts, such as boundaries, headers and
+ * fields, and content parts which are copied from their source in large
+ * blocks while the body is written. Files are read through a
+ * {@link FileChannel}.
+ */
+class MultipartBody implements RequestBody {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final List<Object> parts = new ArrayList<Object>();
+    private long contentLength = 0;
+    private boolean repeatable = true;
+
+    /**
+     * Adds literal text. Like {@link java.io.DataOutputStream#writeBytes(String)}
+     * only the low byte of each character is written.
+     */
+    void addText(String text) {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) text.charAt(i);
+        }
+        addBytes(bytes);
+    }
+
+    void addBytes(byte[] bytes) {
+        parts.add(bytes);
+        addLength(bytes.length);
+    }
+
+    void addFile(File file) {
+        parts.add(file);
+        addLength(file.length());
+    }
+
+    void addStream(InputStream stream) {
+        parts.add(stream);
+        contentLength = -1;
+        repeatable = false;
+    }
+
+    private void addLength(long length) {
+        if (contentLength >= 0) {
+            contentLength += length;
+        }
+    }
+
+    @Override
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return repeatable;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] block = null;
+        for (Object part : parts) {
+            if (part instanceof byte[]) {
+                out.write((byte[]) part);
+                continue;
+            }
+
+            if (block == null) {
+                block = new byte[BLOCK_SIZE];
+            }
+            if (part instanceof File) {
+                writeFile((File) part, out, block);
+            } else {
+                writeStream((InputStream) part, out, block);
+            }
+        }
+    }
+
+    private static void writeFile(File file, OutputStream out, byte[] block) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(block);
+            while (channel.read(buffer) != -1) {
+                out.write(block, 0, buffer.position());
+                buffer.clear();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeStream(InputStream in, OutputStream out, byte[] block) throws IOException {
+        int read;
+        while ((read = in.read(block)) != -1) {
+            out.write(block, 0, read);
+        }
+    }
+
+}
@@ -16,23 +16,19 @@
  */
 package org.jboss.aerogear.android.pipe.rest.multipart;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Field;
 import java.net.MalformedURLException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
-import org.jboss.aerogear.android.core.reflection.Property;
-import org.jboss.aerogear.android.pipe.RequestBuilder;
+import org.jboss.aerogear.android.pipe.StreamingRequestBuilder;
+import org.jboss.aerogear.android.pipe.http.RequestBody;
+import org.jboss.aerogear.android.pipe.util.ClassMetadata;
 
 import android.util.Log;
 import android.webkit.MimeTypeMap;
@@ -41,10 +37,12 @@ import org.jboss.aerogear.android.pipe.MarshallingConfig;
 /**
  * This class generates a Multipart request with the type multipart/form-data
  * 
- * It will load the entire contents of files into memory before it uploads them.
+ * {@link #getBody(Object)} loads the entire contents of files into memory,
+ * {@link #getStreamingBody(Object)} copies them to the connection while the
+ * request is sent.
  * 
  */
-public class MultipartRequestBuilder<T> implements RequestBuilder<T> {
+public class MultipartRequestBuilder<T> implements StreamingRequestBuilder<T> {
 
     private static final String TAG = MultipartRequestBuilder.class.getSimpleName();
     private static final String lineEnd = "\r\n";
@@ -56,17 +54,45 @@ public class MultipartRequestBuilder<T> implements RequestBuilder<T> {
 
     @Override
     public byte[] getBody(T data) {
+        MultipartBody body = createBody(data);
+        long contentLength = body.getContentLength();
+        ByteArrayOutputStream binaryStream = new ByteArrayOutputStream(
+                contentLength >= 0 && contentLength <= Integer.MAX_VALUE ? (int) contentLength : 32);
+        try {
+            body.writeTo(binaryStream);
+        } catch (IOException ex) {
+            Log.e(TAG, ex.getMessage(), ex);
+            throw new IllegalStateException(ex);
+        }
+        return binaryStream.toByteArray();
+    }
+
+    /**
+     * Creates a body which copies files and streams to the connection while
+     * it is sent instead of loading them into memory. If every part has a
+     * known size, which is the case for fields, byte arrays and files, the
+     * body has a known length and is sent with fixed length streaming.
+     * Parts read from streams can only be sent once.
+     *
+     * @param data an object to form a body out of.
+     *
+     * @return A request body which represents the data parameter
+     */
+    @Override
+    public RequestBody getStreamingBody(T data) {
+        return createBody(data);
+    }
 
-        ByteArrayOutputStream binaryStream = new ByteArrayOutputStream();
-        DataOutputStream dataOutputStream = new DataOutputStream(binaryStream);
+    private MultipartBody createBody(T data) {
+        MultipartBody body = new MultipartBody();
 
         try {
-            List<Property> properties = getProperties(data.getClass());
+            List<ClassMetadata.Accessor> properties = ClassMetadata.forClass(data.getClass()).getProperties();
 
             Map<String, String> fields = new HashMap<String, String>(properties.size());
-            Map<String, TypeAndStream> files = new HashMap<String, TypeAndStream>(properties.size());
+            Map<String, FilePart> files = new HashMap<String, FilePart>(properties.size());
 
-            for (Property propertyDescriptor : properties) {
+            for (ClassMetadata.Accessor propertyDescriptor : properties) {
 
                 Object value = propertyDescriptor.getValue(data);
                 if (value == null) {
@@ -77,22 +103,25 @@ public class MultipartRequestBuilder<T> implements RequestBuilder<T> {
                 } else {
                     if (value instanceof byte[]) {
                         files.put(propertyDescriptor.getFieldName(),
-                                new TypeAndStream(OCTECT_STREAM_MIME_TYPE,
+                                new FilePart(OCTECT_STREAM_MIME_TYPE,
                                         propertyDescriptor.getFieldName(),
-                                        new ByteArrayInputStream((byte[]) value)));
+                                        value));
                     } else if (value instanceof InputStream) {
                         files.put(propertyDescriptor.getFieldName(),
-                                new TypeAndStream(OCTECT_STREAM_MIME_TYPE,
+                                new FilePart(OCTECT_STREAM_MIME_TYPE,
                                         propertyDescriptor.getFieldName(),
-                                        (InputStream) value));
+                                        value));
                     } else if (value instanceof File) {
                         files.put(propertyDescriptor.getFieldName(),
-                                new TypeAndStream(getMimeType((File) value),
+                                new FilePart(getMimeType((File) value),
                                         ((File) value).getName(),
-                                        new FileInputStream((File) value)));
+                                        value));
                     } else if (value instanceof TypeAndStream) {
+                        TypeAndStream typeAndStream = (TypeAndStream) value;
                         files.put(propertyDescriptor.getFieldName(),
-                                (TypeAndStream) value);
+                                new FilePart(typeAndStream.getMimeType(),
+                                        typeAndStream.getFileName(),
+                                        typeAndStream.getInputStream()));
                     } else {
                         throw new IllegalArgumentException(propertyDescriptor.getFieldName() + " is not a supported type for Multipart uplaod");
                     }
@@ -100,47 +129,41 @@ public class MultipartRequestBuilder<T> implements RequestBuilder<T> {
             }
 
             for (Map.Entry<String, String> field : fields.entrySet()) {
-                setField(dataOutputStream, field.getKey(), field.getValue());
+                setField(body, field.getKey(), field.getValue());
             }
 
             if (files.size() == 1) {
-                Map.Entry<String, TypeAndStream> pair = files.entrySet().iterator().next();
-                TypeAndStream type = pair.getValue();
+                Map.Entry<String, FilePart> pair = files.entrySet().iterator().next();
+                FilePart type = pair.getValue();
                 String name = pair.getKey();
-                dataOutputStream.writeBytes(twoHyphens + boundary + lineEnd);
-                dataOutputStream.writeBytes("Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + type.getFileName() + "\"" + lineEnd);
-                dataOutputStream.writeBytes("Content-Type: " + type.getMimeType() + lineEnd);
-                dataOutputStream.writeBytes("Content-Transfer-Encoding: binary" + lineEnd);
-                dataOutputStream.writeBytes(lineEnd);
-                int b;
-                while ((b = type.getInputStream().read()) != -1) {
-                    dataOutputStream.write(b);
-                }
-                dataOutputStream.writeBytes(lineEnd);
+                body.addText(twoHyphens + boundary + lineEnd);
+                body.addText("Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + type.fileName + "\"" + lineEnd);
+                body.addText("Content-Type: " + type.mimeType + lineEnd);
+                body.addText("Content-Transfer-Encoding: binary" + lineEnd);
+                body.addText(lineEnd);
+                type.addContentTo(body);
+                body.addText(lineEnd);
             } else if (files.size() > 1) {
                 String newBoundary = UUID.randomUUID().toString();
-                dataOutputStream.writeBytes(twoHyphens + boundary + lineEnd);
-                dataOutputStream.writeBytes("Content-Disposition: form-data; name=\"files\"" + lineEnd);
-                dataOutputStream.writeBytes("Content-Type: multipart/mixed; boundary=" + newBoundary + lineEnd);
-                dataOutputStream.writeBytes(lineEnd);
-
-                for (Map.Entry<String, TypeAndStream> file : files.entrySet()) {
-                    TypeAndStream type = file.getValue();
-                    dataOutputStream.writeBytes(twoHyphens + newBoundary + lineEnd);
-                    dataOutputStream.writeBytes("Content-Disposition: file; filename=\"" + type.getFileName() + "\"" + lineEnd);
-                    dataOutputStream.writeBytes("Content-Type: " + type.getMimeType() + lineEnd);
-                    dataOutputStream.writeBytes("Content-Transfer-Encoding: binary" + lineEnd);
-                    dataOutputStream.writeBytes(lineEnd);
-                    int b;
-                    while ((b = type.getInputStream().read()) != -1) {
-                        dataOutputStream.write(b);
-                    }
-                    dataOutputStream.writeBytes(lineEnd);
+                body.addText(twoHyphens + boundary + lineEnd);
+                body.addText("Content-Disposition: form-data; name=\"files\"" + lineEnd);
+                body.addText("Content-Type: multipart/mixed; boundary=" + newBoundary + lineEnd);
+                body.addText(lineEnd);
+
+                for (Map.Entry<String, FilePart> file : files.entrySet()) {
+                    FilePart type = file.getValue();
+                    body.addText(twoHyphens + newBoundary + lineEnd);
+                    body.addText("Content-Disposition: file; filename=\"" + type.fileName + "\"" + lineEnd);
+                    body.addText("Content-Type: " + type.mimeType + lineEnd);
+                    body.addText("Content-Transfer-Encoding: binary" + lineEnd);
+                    body.addText(lineEnd);
+                    type.addContentTo(body);
+                    body.addText(lineEnd);
                 }
-                dataOutputStream.writeBytes(twoHyphens + newBoundary + twoHyphens + lineEnd);
+                body.addText(twoHyphens + newBoundary + twoHyphens + lineEnd);
             }
-            dataOutputStream.writeBytes(twoHyphens + boundary + twoHyphens + lineEnd);
-            return binaryStream.toByteArray();
+            body.addText(twoHyphens + boundary + twoHyphens + lineEnd);
+            return body;
         } catch (Exception ex) {
             Log.e(TAG, ex.getMessage(), ex);
             throw new IllegalStateException(ex);
@@ -148,35 +171,18 @@ public class MultipartRequestBuilder<T> implements RequestBuilder<T> {
 
     }
 
-    private List<Property> getProperties(Class<? extends Object> baseClass) {
-
-        ArrayList<Property> properties = new ArrayList<Property>();
-
-        for (Field field : baseClass.getDeclaredFields()) {
-            
-            if (!field.isSynthetic()) {
-                Property property = new Property(baseClass, field.getName());
-                properties.add(property);
-            }
-
-        }
-
-        return properties;
-
-    }
-
     @Override
     public String getContentType() {
         return CONTENT_TYPE;
     }
 
-    private void setField(DataOutputStream dataOutputStream, String name, Object value) throws IOException {
-        dataOutputStream.writeBytes(twoHyphens + boundary + lineEnd);
-        dataOutputStream.writeBytes("Content-Disposition: form-data; name=\"" + name + "\"" + lineEnd);
-        dataOutputStream.writeBytes("Content-Type: text/plain; charset=US-ASCII" + lineEnd);
-        dataOutputStream.writeBytes("Content-Transfer-Encoding: 8bit" + lineEnd);
-        dataOutputStream.writeBytes(lineEnd);
-        dataOutputStream.writeBytes(value.toString() + lineEnd);
+    private void setField(MultipartBody body, String name, Object value) {
+        body.addText(twoHyphens + boundary + lineEnd);
+        body.addText("Content-Disposition: form-data; name=\"" + name + "\"" + lineEnd);
+        body.addText("Content-Type: text/plain; charset=US-ASCII" + lineEnd);
+        body.addText("Content-Transfer-Encoding: 8bit" + lineEnd);
+        body.addText(lineEnd);
+        body.addText(value.toString() + lineEnd);
     }
 
     private String getMimeType(File file) throws MalformedURLException {
@@ -192,4 +198,31 @@ public class MultipartRequestBuilder<T> implements RequestBuilder<T> {
     public void setMarshallingConfig(MarshallingConfig marshallingConfig) {
         this.marshallingConfig = marshallingConfig;
     }
+
+    /**
+     * A file part whose content is a byte array, a file or a stream.
+     */
+    private static final class FilePart {
+
+        private final String mimeType;
+        private final String fileName;
+        private final Object content;
+
+        FilePart(String mimeType, String fileName, Object content) {
+            this.mimeType = mimeType;
+            this.fileName = fileName;
+            this.content = content;
+        }
+
+        void addContentTo(MultipartBody body) {
+            if (content instanceof byte[]) {
+                body.addBytes((byte[]) content);
+            } else if (content instanceof File) {
+                body.addFile((File) content);
+            } else {
+                body.addStream((InputStream) content);
+            }
+        }
+
+    }
 }
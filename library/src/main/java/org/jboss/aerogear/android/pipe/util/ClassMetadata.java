@@ -0,0 +1,212 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.aerogear.android.core.reflection.Scan;
+import org.jboss.aerogear.android.pipe.rest.gson.GeneratedAdapters;
+import org.jboss.aerogear.android.pipe.rest.gson.RecordIdReader;
+
+/**
+ * The reflective metadata of a class which travels on a pipe: the accessor
+ * of its {@link org.jboss.aerogear.android.core.RecordId} field and the
+ * accessors of its declared properties. The metadata of a class is computed
+ * once and shared, so saves do not scan the class again.
+ *
+ * Properties are read with their public getter, like
+ * {@link org.jboss.aerogear.android.core.reflection.Property} does, and with
+ * direct field access if they have none. Ids of classes with a generated
+ * {@link RecordIdReader} are read without reflection.
+ */
+public final class ClassMetadata {
+
+    private static final ConcurrentMap<Class<?>, ClassMetadata> CACHE = new ConcurrentHashMap<Class<?>, ClassMetadata>();
+
+    private final Class<?> klass;
+    private final List<Accessor> properties;
+    private volatile Accessor idAccessor;
+
+    private ClassMetadata(Class<?> klass) {
+        this.klass = klass;
+
+        List<Accessor> accessors = new ArrayList<Accessor>();
+        for (Field field : klass.getDeclaredFields()) {
+            if (!field.isSynthetic() && !Modifier.isStatic(field.getModifiers())) {
+                accessors.add(new Accessor(klass, field));
+            }
+        }
+        this.properties = Collections.unmodifiableList(accessors);
+    }
+
+    /**
+     * @param klass a class
+     * @return the metadata of klass
+     */
+    public static ClassMetadata forClass(Class<?> klass) {
+        ClassMetadata metadata = CACHE.get(klass);
+        if (metadata == null) {
+            metadata = new ClassMetadata(klass);
+            ClassMetadata existing = CACHE.putIfAbsent(klass, metadata);
+            if (existing != null) {
+                metadata = existing;
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * @return the accessors of the non static fields declared by the class
+     */
+    public List<Accessor> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @return the accessor of the RecordId field of the class, which may be
+     *         declared by a superclass
+     * @throws RuntimeException if the class has no RecordId field
+     */
+    public Accessor getIdAccessor() {
+        Accessor accessor = idAccessor;
+        if (accessor == null) {
+            String name = Scan.recordIdFieldNameIn(klass);
+            accessor = findProperty(name);
+            if (accessor == null) {
+                accessor = findInherited(name);
+            }
+            idAccessor = accessor;
+        }
+        return accessor;
+    }
+
+    /**
+     * @param item an instance of the class
+     * @return the id of item as a String, or null if it has none
+     */
+    @SuppressWarnings("unchecked")
+    public String getIdValue(Object item) {
+        RecordIdReader<Object> reader = (RecordIdReader<Object>) GeneratedAdapters.getRecordIdReader(klass);
+        Object id = reader == null ? getIdAccessor().getValue(item) : reader.getRecordId(item);
+        return id == null ? null : id.toString();
+    }
+
+    private Accessor findProperty(String name) {
+        for (Accessor accessor : properties) {
+            if (accessor.getFieldName().equals(name)) {
+                return accessor;
+            }
+        }
+        return null;
+    }
+
+    private Accessor findInherited(String name) {
+        for (Class<?> type = klass.getSuperclass(); type != null; type = type.getSuperclass()) {
+            try {
+                return new Accessor(klass, type.getDeclaredField(name));
+            } catch (NoSuchFieldException ignore) {
+                // declared further up
+            }
+        }
+
+        Method getter = Accessor.findMethod(klass, "get" + Accessor.capitalize(name));
+        if (getter == null) {
+            throw new IllegalStateException(name + " is not a field of " + klass.getName());
+        }
+        return new Accessor(name, getter);
+    }
+
+    /**
+     * Reads a property through its getter or its field.
+     */
+    public static final class Accessor {
+
+        private final String fieldName;
+        private final Method getter;
+        private final Field field;
+
+        Accessor(String fieldName, Method getter) {
+            this.fieldName = fieldName;
+            this.getter = getter;
+            this.field = null;
+        }
+
+        Accessor(Class<?> klass, Field field) {
+            this.fieldName = field.getName();
+            this.getter = findGetter(klass, field);
+            if (getter == null) {
+                field.setAccessible(true);
+                this.field = field;
+            } else {
+                this.field = null;
+            }
+        }
+
+        public String getFieldName() {
+            return fieldName;
+        }
+
+        /**
+         * @param instance the object to read the property of
+         * @return the value of the property
+         */
+        public Object getValue(Object instance) {
+            try {
+                if (getter != null) {
+                    return getter.invoke(instance);
+                }
+                return field.get(instance);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Can not read " + fieldName, e);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException("Can not read " + fieldName, e.getCause());
+            }
+        }
+
+        private static Method findGetter(Class<?> klass, Field field) {
+            String capitalized = capitalize(field.getName());
+
+            Method getter = findMethod(klass, "get" + capitalized);
+            if (getter == null && (field.getType() == boolean.class || field.getType() == Boolean.class)) {
+                getter = findMethod(klass, "is" + capitalized);
+            }
+            return getter;
+        }
+
+        private static String capitalize(String name) {
+            return name.isEmpty() ? name : Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        }
+
+        private static Method findMethod(Class<?> klass, String name) {
+            try {
+                return klass.getMethod(name);
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+    }
+
+}
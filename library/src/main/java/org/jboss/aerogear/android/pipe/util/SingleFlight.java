@@ -0,0 +1,163 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.aerogear.android.pipe.http.DeadlineExceededException;
+import org.jboss.aerogear.android.pipe.http.RequestCancellation;
+
+/**
+ * Coalesces concurrent calls for the same key. The first caller for a key
+ * runs the call, callers which arrive while it is running wait for it and
+ * receive its result or exception instead of running the call themselves.
+ *
+ * Results are shared between the callers of a flight, they should not be
+ * modified.
+ *
+ * A waiting caller stays bound to its own {@link RequestCancellation}: it
+ * stops waiting once its operation is cancelled or passes its deadline,
+ * while the running call goes on for the others.
+ *
+ * @param <V> the type of the result of a call
+ */
+public final class SingleFlight<V> {
+
+    /**
+     * The work of a flight.
+     *
+     * @param <V> the type of the result
+     */
+    public interface Call<V> {
+
+        V call();
+
+    }
+
+    /**
+     * How often a waiting caller checks whether its operation was cancelled.
+     */
+    private static final long CHECK_MILLIS = 100;
+
+    private final Map<String, Flight<V>> flights = new HashMap<String, Flight<V>>();
+    private final AtomicLong executionCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * Runs call unless a call for key is already running, in which case its
+     * result is awaited and returned.
+     *
+     * @param key identifies calls which have the same result
+     * @param call the call to run
+     * @return the result of the call
+     * @throws CancellationException if the operation of the current thread
+     *             was cancelled while waiting
+     * @throws DeadlineExceededException if the operation of the current
+     *             thread passed its deadline while waiting
+     * @throws RuntimeException if the call failed, or if the current thread
+     *             was interrupted while waiting
+     */
+    public V execute(String key, Call<V> call) {
+        Flight<V> flight;
+        boolean leader = false;
+        synchronized (flights) {
+            flight = flights.get(key);
+            if (flight == null) {
+                flight = new Flight<V>();
+                flights.put(key, flight);
+                leader = true;
+            }
+        }
+
+        if (leader) {
+            executionCount.incrementAndGet();
+            try {
+                flight.result = call.call();
+            } catch (RuntimeException e) {
+                flight.failure = e;
+            } catch (Error e) {
+                flight.failure = e;
+            } finally {
+                synchronized (flights) {
+                    flights.remove(key);
+                }
+                flight.done.countDown();
+            }
+        } else {
+            coalescedCount.incrementAndGet();
+            try {
+                await(flight);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        if (flight.failure instanceof RuntimeException) {
+            throw (RuntimeException) flight.failure;
+        } else if (flight.failure instanceof Error) {
+            throw (Error) flight.failure;
+        }
+        return flight.result;
+    }
+
+    /**
+     * Waits for flight to land, checking the operation of the current thread
+     * every {@link #CHECK_MILLIS} and when its deadline is reached.
+     */
+    private static void await(Flight<?> flight) throws InterruptedException {
+        RequestCancellation operation = RequestCancellation.current();
+        if (operation == null) {
+            flight.done.await();
+            return;
+        }
+
+        while (!flight.done.await(Math.min(CHECK_MILLIS, operation.getRemainingMillis()), TimeUnit.MILLISECONDS)) {
+            RequestCancellation.throwIfCancelled();
+            RequestCancellation.throwIfExpired();
+        }
+    }
+
+    /**
+     * @return the number of calls which were run
+     */
+    public long getExecutionCount() {
+        return executionCount.get();
+    }
+
+    /**
+     * @return the number of calls which were not run because they joined a
+     *         running call
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    private static final class Flight<V> {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile V result;
+        private volatile Throwable failure;
+
+    }
+
+}
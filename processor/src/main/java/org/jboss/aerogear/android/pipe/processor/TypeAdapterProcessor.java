@@ -0,0 +1,653 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.pipe.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a Gson TypeAdapter, and a RecordIdReader if the class has a
+ * RecordId field, for every class annotated with GenerateTypeAdapter. The
+ * adapters bind the fields like Gson's reflective binding does: static and
+ * transient fields are left out, SerializedName is honoured and null fields
+ * are only written if the writer serializes nulls.
+ *
+ * Classes whose fields can not be reached from generated code in the same
+ * package, directly or through getters and setters, are reported with a
+ * warning and left to reflective binding.
+ */
+public class TypeAdapterProcessor extends AbstractProcessor {
+
+    static final String GENERATE_TYPE_ADAPTER = "org.jboss.aerogear.android.pipe.rest.gson.GenerateTypeAdapter";
+    static final String RECORD_ID_READER = "org.jboss.aerogear.android.pipe.rest.gson.RecordIdReader";
+    static final String RECORD_ID = "org.jboss.aerogear.android.core.RecordId";
+    static final String SERIALIZED_NAME = "com.google.gson.annotations.SerializedName";
+    static final String ADAPTER_SUFFIX = "_GsonTypeAdapter";
+
+    private Elements elements;
+    private Types types;
+    private Messager messager;
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(GENERATE_TYPE_ADAPTER);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        messager = processingEnv.getMessager();
+
+        TypeElement annotation = elements.getTypeElement(GENERATE_TYPE_ADAPTER);
+        if (annotation == null) {
+            return false;
+        }
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "@GenerateTypeAdapter can only be used on classes", element);
+                continue;
+            }
+
+            TypeElement type = (TypeElement) element;
+            try {
+                Model model = new Model(type);
+                write(model);
+            } catch (Unsupported e) {
+                messager.printMessage(Diagnostic.Kind.WARNING, "No TypeAdapter is generated for " + type.getQualifiedName()
+                        + ", it is bound reflectively: " + e.getMessage(), e.element);
+            } catch (IOException e) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Could not write the TypeAdapter of " + type.getQualifiedName()
+                        + ": " + e.getMessage(), type);
+            }
+        }
+        return true;
+    }
+
+    private void write(Model model) throws IOException {
+        AdapterSource source = new AdapterSource(model);
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(model.getAdapterName(), model.type);
+        Writer writer = file.openWriter();
+        try {
+            writer.write(source.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Thrown when a class can not be bound by generated code.
+     */
+    static final class Unsupported extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        final transient Element element;
+
+        Unsupported(String message, Element element) {
+            super(message);
+            this.element = element;
+        }
+
+    }
+
+    /**
+     * A field as the generated code reads and writes it.
+     */
+    static final class Property {
+
+        String name;
+        List<String> jsonNames = new ArrayList<String>();
+        TypeMirror type;
+        /** the expression reading the property of "value" */
+        String getter;
+        /** the statement format setting the property of "value" to %s */
+        String setter;
+
+    }
+
+    /**
+     * The bound fields of a class.
+     */
+    final class Model {
+
+        final TypeElement type;
+        final String packageName;
+        final List<Property> properties = new ArrayList<Property>();
+        String recordIdGetter;
+
+        Model(TypeElement type) throws Unsupported {
+            this.type = type;
+            this.packageName = elements.getPackageOf(type).getQualifiedName().toString();
+
+            checkType();
+            collectProperties();
+            findRecordId();
+        }
+
+        String getAdapterSimpleName() {
+            StringBuilder name = new StringBuilder();
+            Element element = type;
+            while (element.getKind() != ElementKind.PACKAGE) {
+                if (name.length() > 0) {
+                    name.insert(0, '_');
+                }
+                name.insert(0, element.getSimpleName());
+                element = element.getEnclosingElement();
+            }
+            return name + ADAPTER_SUFFIX;
+        }
+
+        String getAdapterName() {
+            return packageName.isEmpty() ? getAdapterSimpleName() : packageName + "." + getAdapterSimpleName();
+        }
+
+        private void checkType() throws Unsupported {
+            if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+                throw new Unsupported("the class is abstract", type);
+            }
+            if (!type.getTypeParameters().isEmpty()) {
+                throw new Unsupported("the class has type parameters", type);
+            }
+
+            for (Element element = type; element.getKind() != ElementKind.PACKAGE; element = element.getEnclosingElement()) {
+                if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                    throw new Unsupported("the class is private", element);
+                }
+                if (element instanceof TypeElement && ((TypeElement) element).getNestingKind() == NestingKind.MEMBER
+                        && !element.getModifiers().contains(Modifier.STATIC)) {
+                    throw new Unsupported("the class is an inner class", element);
+                }
+            }
+
+            for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+                if (constructor.getParameters().isEmpty() && isAccessible(constructor)) {
+                    return;
+                }
+            }
+            throw new Unsupported("the class has no accessible constructor without parameters", type);
+        }
+
+        private void collectProperties() throws Unsupported {
+            Set<String> jsonNames = new LinkedHashSet<String>();
+            TypeMirror current = type.asType();
+            while (current.getKind() == TypeKind.DECLARED) {
+                TypeElement currentType = (TypeElement) types.asElement(current);
+                if (currentType.getQualifiedName().contentEquals("java.lang.Object")) {
+                    break;
+                }
+
+                for (VariableElement field : ElementFilter.fieldsIn(currentType.getEnclosedElements())) {
+                    Set<Modifier> modifiers = field.getModifiers();
+                    if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                        continue;
+                    }
+
+                    Property property = createProperty(field);
+                    for (String jsonName : property.jsonNames) {
+                        if (!jsonNames.add(jsonName)) {
+                            throw new Unsupported("more than one field is named " + jsonName, field);
+                        }
+                    }
+                    properties.add(property);
+                }
+                current = currentType.getSuperclass();
+            }
+        }
+
+        private Property createProperty(VariableElement field) throws Unsupported {
+            TypeMirror fieldType = types.asMemberOf((DeclaredType) type.asType(), field);
+            if (containsTypeVariable(fieldType)) {
+                throw new Unsupported("the type of " + field.getSimpleName() + " is a type variable", field);
+            }
+
+            Property property = new Property();
+            property.name = field.getSimpleName().toString();
+            property.type = fieldType;
+            addJsonNames(property, field);
+
+            ExecutableElement getter = findGetter(field, fieldType);
+            if (isAccessible(field)) {
+                property.getter = "value." + property.name;
+            } else if (getter != null) {
+                property.getter = "value." + getter.getSimpleName() + "()";
+            } else {
+                throw new Unsupported(property.name + " is private and has no getter", field);
+            }
+
+            ExecutableElement setter = findSetter(field, fieldType);
+            if (isAccessible(field) && !field.getModifiers().contains(Modifier.FINAL)) {
+                property.setter = "value." + property.name + " = %s;";
+            } else if (setter != null) {
+                property.setter = "value." + setter.getSimpleName() + "(%s);";
+            } else {
+                throw new Unsupported(property.name + " is private or final and has no setter", field);
+            }
+            return property;
+        }
+
+        private void addJsonNames(Property property, VariableElement field) {
+            AnnotationMirror serializedName = findAnnotation(field, SERIALIZED_NAME);
+            if (serializedName == null) {
+                property.jsonNames.add(property.name);
+                return;
+            }
+
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : serializedName.getElementValues().entrySet()) {
+                String key = entry.getKey().getSimpleName().toString();
+                if ("value".equals(key)) {
+                    property.jsonNames.add(0, (String) entry.getValue().getValue());
+                } else if ("alternate".equals(key)) {
+                    @SuppressWarnings("unchecked")
+                    List<? extends AnnotationValue> alternates = (List<? extends AnnotationValue>) entry.getValue().getValue();
+                    for (AnnotationValue alternate : alternates) {
+                        property.jsonNames.add((String) alternate.getValue());
+                    }
+                }
+            }
+        }
+
+        private void findRecordId() {
+            TypeMirror current = type.asType();
+            while (current.getKind() == TypeKind.DECLARED) {
+                TypeElement currentType = (TypeElement) types.asElement(current);
+                for (VariableElement field : ElementFilter.fieldsIn(currentType.getEnclosedElements())) {
+                    if (findAnnotation(field, RECORD_ID) == null) {
+                        continue;
+                    }
+
+                    // like Property, the getter is preferred to the field
+                    ExecutableElement getter = findGetter(field, types.asMemberOf((DeclaredType) type.asType(), field));
+                    if (getter != null && getter.getModifiers().contains(Modifier.PUBLIC)) {
+                        recordIdGetter = "item." + getter.getSimpleName() + "()";
+                    } else if (isAccessible(field)) {
+                        recordIdGetter = "item." + field.getSimpleName();
+                    } else {
+                        messager.printMessage(Diagnostic.Kind.WARNING, "The RecordId of " + type.getQualifiedName()
+                                + " is private and has no getter, it is read reflectively", field);
+                    }
+                    return;
+                }
+                current = currentType.getSuperclass();
+            }
+        }
+
+        private ExecutableElement findGetter(VariableElement field, TypeMirror fieldType) {
+            String capitalized = capitalize(field.getSimpleName().toString());
+            List<String> names = new ArrayList<String>();
+            names.add("get" + capitalized);
+            if (fieldType.getKind() == TypeKind.BOOLEAN
+                    || types.isSameType(fieldType, elements.getTypeElement("java.lang.Boolean").asType())) {
+                names.add("is" + capitalized);
+            }
+
+            for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+                if (names.contains(method.getSimpleName().toString()) && method.getParameters().isEmpty()
+                        && !method.getModifiers().contains(Modifier.STATIC) && isAccessible(method)
+                        && types.isAssignable(method.getReturnType(), fieldType)) {
+                    return method;
+                }
+            }
+            return null;
+        }
+
+        private ExecutableElement findSetter(VariableElement field, TypeMirror fieldType) {
+            String name = "set" + capitalize(field.getSimpleName().toString());
+            for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+                if (method.getSimpleName().contentEquals(name) && method.getParameters().size() == 1
+                        && !method.getModifiers().contains(Modifier.STATIC) && isAccessible(method)
+                        && types.isSameType(method.getParameters().get(0).asType(), fieldType)) {
+                    return method;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return true if the generated adapter, which is in the package of
+         *         the class, can access element
+         */
+        private boolean isAccessible(Element element) {
+            Set<Modifier> modifiers = element.getModifiers();
+            if (modifiers.contains(Modifier.PUBLIC)) {
+                return true;
+            }
+            if (modifiers.contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            PackageElement elementPackage = elements.getPackageOf(element);
+            return elementPackage.getQualifiedName().contentEquals(packageName);
+        }
+
+    }
+
+    private boolean containsTypeVariable(TypeMirror type) {
+        if (type.getKind() == TypeKind.TYPEVAR || type.getKind() == TypeKind.WILDCARD) {
+            return true;
+        }
+        if (type.getKind() == TypeKind.ARRAY) {
+            return containsTypeVariable(((ArrayType) type).getComponentType());
+        }
+        if (type.getKind() == TypeKind.DECLARED) {
+            for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+                if (containsTypeVariable(argument)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String name) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(name)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private static String capitalize(String name) {
+        if (name.isEmpty()) {
+            return name;
+        }
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    /**
+     * The source of a generated adapter.
+     */
+    final class AdapterSource {
+
+        private static final String GSON = "com.google.gson.Gson";
+        private static final String TYPE_ADAPTER = "com.google.gson.TypeAdapter";
+        private static final String JSON_WRITER = "com.google.gson.stream.JsonWriter";
+        private static final String JSON_READER = "com.google.gson.stream.JsonReader";
+        private static final String JSON_TOKEN = "com.google.gson.stream.JsonToken";
+        private static final String IO_EXCEPTION = "java.io.IOException";
+
+        private final Model model;
+        private final StringBuilder source = new StringBuilder();
+        private final List<String> adapterTypes = new ArrayList<String>();
+        /** where line() appends to */
+        private StringBuilder target = source;
+
+        AdapterSource(Model model) {
+            this.model = model;
+            String typeName = model.type.getQualifiedName().toString();
+
+            // the methods are written first, so the adapters they use are known
+            StringBuilder methods = new StringBuilder();
+            target = methods;
+            writeWrite(typeName);
+            line(0, "");
+            writeRead(typeName);
+            line(0, "");
+            writeReadString();
+            if (model.recordIdGetter != null) {
+                line(0, "");
+                writeRecordIdReader(typeName);
+            }
+            target = source;
+
+            if (!model.packageName.isEmpty()) {
+                line(0, "package " + model.packageName + ";");
+                line(0, "");
+            }
+            line(0, "/**");
+            line(0, " * Reads and writes {@link " + typeName + "}, generated by");
+            line(0, " * " + TypeAdapterProcessor.class.getName() + ". Do not edit.");
+            line(0, " */");
+            line(0, "@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+            line(0, "public final class " + model.getAdapterSimpleName() + " extends " + TYPE_ADAPTER + "<" + typeName + "> {");
+            line(0, "");
+            line(1, "private final " + GSON + " gson;");
+            for (int i = 0; i < adapterTypes.size(); i++) {
+                line(1, "private " + TYPE_ADAPTER + "<" + adapterTypes.get(i) + "> adapter" + i + ";");
+            }
+            line(0, "");
+            line(1, "public " + model.getAdapterSimpleName() + "(" + GSON + " gson) {");
+            line(2, "this.gson = gson;");
+            line(1, "}");
+            line(0, "");
+            source.append(methods);
+            for (int i = 0; i < adapterTypes.size(); i++) {
+                line(0, "");
+                writeAdapterGetter(i);
+            }
+            line(0, "");
+            line(0, "}");
+        }
+
+        private void line(int indent, String text) {
+            for (int i = 0; i < indent; i++) {
+                target.append("    ");
+            }
+            target.append(text).append('\n');
+        }
+
+        private void writeWrite(String typeName) {
+            line(1, "@Override");
+            line(1, "public void write(" + JSON_WRITER + " out, " + typeName + " value) throws " + IO_EXCEPTION + " {");
+            line(2, "if (value == null) {");
+            line(3, "out.nullValue();");
+            line(3, "return;");
+            line(2, "}");
+            line(2, "out.beginObject();");
+            for (Property property : model.properties) {
+                line(2, "out.name(" + quote(property.jsonNames.get(0)) + ");");
+                switch (property.type.getKind()) {
+                    case INT:
+                    case LONG:
+                    case DOUBLE:
+                    case BOOLEAN:
+                        line(2, "out.value(" + property.getter + ");");
+                        break;
+                    default:
+                        if (isString(property.type)) {
+                            line(2, "out.value(" + property.getter + ");");
+                        } else if (property.type.getKind().isPrimitive()) {
+                            line(2, adapter(property.type) + ".write(out, " + property.getter + ");");
+                        } else {
+                            line(2, "{");
+                            line(3, property.type + " propertyValue = " + property.getter + ";");
+                            line(3, "if (propertyValue == null) {");
+                            line(4, "out.nullValue();");
+                            line(3, "} else {");
+                            line(4, adapter(property.type) + ".write(out, propertyValue);");
+                            line(3, "}");
+                            line(2, "}");
+                        }
+                }
+            }
+            line(2, "out.endObject();");
+            line(1, "}");
+        }
+
+        private void writeRead(String typeName) {
+            line(1, "@Override");
+            line(1, "public " + typeName + " read(" + JSON_READER + " in) throws " + IO_EXCEPTION + " {");
+            line(2, "if (in.peek() == " + JSON_TOKEN + ".NULL) {");
+            line(3, "in.nextNull();");
+            line(3, "return null;");
+            line(2, "}");
+            line(2, typeName + " value = new " + typeName + "();");
+            line(2, "in.beginObject();");
+            line(2, "while (in.hasNext()) {");
+            line(3, "switch (in.nextName()) {");
+            for (Property property : model.properties) {
+                for (String jsonName : property.jsonNames) {
+                    line(4, "case " + quote(jsonName) + ":");
+                }
+                writeReadProperty(property);
+                line(5, "break;");
+            }
+            line(4, "default:");
+            line(5, "in.skipValue();");
+            line(3, "}");
+            line(2, "}");
+            line(2, "in.endObject();");
+            line(2, "return value;");
+            line(1, "}");
+        }
+
+        private void writeReadProperty(Property property) {
+            TypeKind kind = property.type.getKind();
+            if (kind == TypeKind.INT || kind == TypeKind.LONG || kind == TypeKind.DOUBLE || kind == TypeKind.BOOLEAN) {
+                String read;
+                if (kind == TypeKind.INT) {
+                    read = "in.nextInt()";
+                } else if (kind == TypeKind.LONG) {
+                    read = "in.nextLong()";
+                } else if (kind == TypeKind.DOUBLE) {
+                    read = "in.nextDouble()";
+                } else {
+                    read = "in.peek() == " + JSON_TOKEN + ".STRING ? Boolean.parseBoolean(in.nextString()) : in.nextBoolean()";
+                }
+                line(5, "if (in.peek() == " + JSON_TOKEN + ".NULL) {");
+                line(6, "in.nextNull();");
+                line(5, "} else {");
+                line(6, String.format(property.setter, read));
+                line(5, "}");
+            } else if (isString(property.type)) {
+                line(5, String.format(property.setter, "readString(in)"));
+            } else if (kind.isPrimitive()) {
+                String boxed = types.boxedClass((PrimitiveType) property.type).getQualifiedName().toString();
+                line(5, "{");
+                line(6, boxed + " propertyValue = " + adapter(property.type) + ".read(in);");
+                line(6, "if (propertyValue != null) {");
+                line(7, String.format(property.setter, "propertyValue"));
+                line(6, "}");
+                line(5, "}");
+            } else {
+                line(5, String.format(property.setter, adapter(property.type) + ".read(in)"));
+            }
+        }
+
+        private void writeReadString() {
+            line(1, "private static String readString(" + JSON_READER + " in) throws " + IO_EXCEPTION + " {");
+            line(2, "switch (in.peek()) {");
+            line(3, "case NULL:");
+            line(4, "in.nextNull();");
+            line(4, "return null;");
+            line(3, "case BOOLEAN:");
+            line(4, "return Boolean.toString(in.nextBoolean());");
+            line(3, "default:");
+            line(4, "return in.nextString();");
+            line(2, "}");
+            line(1, "}");
+        }
+
+        private void writeRecordIdReader(String typeName) {
+            line(1, "public static final class RecordId implements " + RECORD_ID_READER + "<" + typeName + "> {");
+            line(0, "");
+            line(2, "@Override");
+            line(2, "public Object getRecordId(" + typeName + " item) {");
+            line(3, "return " + model.recordIdGetter + ";");
+            line(2, "}");
+            line(0, "");
+            line(1, "}");
+        }
+
+        private void writeAdapterGetter(int index) {
+            String type = adapterTypes.get(index);
+            line(1, "private " + TYPE_ADAPTER + "<" + type + "> adapter" + index + "() {");
+            line(2, "if (adapter" + index + " == null) {");
+            if (type.contains("<")) {
+                line(3, "adapter" + index + " = gson.getAdapter(new com.google.gson.reflect.TypeToken<" + type + ">() {});");
+            } else {
+                line(3, "adapter" + index + " = gson.getAdapter(" + type + ".class);");
+            }
+            line(2, "}");
+            line(2, "return adapter" + index + ";");
+            line(1, "}");
+        }
+
+        /**
+         * @return the expression of the lazily created adapter of type
+         */
+        private String adapter(TypeMirror type) {
+            String typeName;
+            if (type.getKind().isPrimitive()) {
+                typeName = types.boxedClass((PrimitiveType) type).getQualifiedName().toString();
+            } else {
+                typeName = type.toString();
+            }
+
+            int index = adapterTypes.indexOf(typeName);
+            if (index < 0) {
+                index = adapterTypes.size();
+                adapterTypes.add(typeName);
+            }
+            return "adapter" + index + "()";
+        }
+
+        private boolean isString(TypeMirror type) {
+            return type.getKind() == TypeKind.DECLARED
+                    && ((TypeElement) types.asElement(type)).getQualifiedName().contentEquals("java.lang.String");
+        }
+
+        private String quote(String value) {
+            return elements.getConstantExpression(value);
+        }
+
+        @Override
+        public String toString() {
+            return source.toString();
+        }
+
+    }
+
+}